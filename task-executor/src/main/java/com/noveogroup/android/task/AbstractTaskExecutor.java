@@ -27,6 +27,8 @@
 package com.noveogroup.android.task;
 
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 /**
  * {@link AbstractTaskExecutor} is an abstract implementation of
@@ -39,7 +41,7 @@ abstract class AbstractTaskExecutor implements TaskExecutor {
     private final Object lock = new Object();
     private final Pack<Void, Void> args = new Pack<Void, Void>(lock);
     private volatile ErrorHandler errorHandler = null;
-    private final ArrayList<TaskListener> listeners = new ArrayList<TaskListener>(8);
+    private final CopyOnWriteArrayList<TaskListener> listeners = new CopyOnWriteArrayList<TaskListener>();
     private volatile boolean shutdown = false;
 
     @Override
@@ -77,21 +79,17 @@ abstract class AbstractTaskExecutor implements TaskExecutor {
 
     @Override
     public ErrorHandler getErrorHandler() {
-        synchronized (lock()) {
-            return errorHandler;
-        }
+        return errorHandler;
     }
 
     @Override
     public void setErrorHandler(ErrorHandler errorHandler) {
-        synchronized (lock()) {
-            this.errorHandler = errorHandler;
-        }
+        this.errorHandler = errorHandler;
     }
 
     @Override
     public void addTaskListener(TaskListener taskListener) {
-        synchronized (lock()) {
+        synchronized (listeners) {
             if (taskListener != null) {
                 listeners.add(listeners.size(), taskListener);
             }
@@ -100,7 +98,7 @@ abstract class AbstractTaskExecutor implements TaskExecutor {
 
     @Override
     public void removeTaskListener(TaskListener taskListener) {
-        synchronized (lock()) {
+        synchronized (listeners) {
             if (taskListener != null) {
                 int lastIndex = listeners.lastIndexOf(taskListener);
                 if (lastIndex != -1) {
@@ -118,12 +116,10 @@ abstract class AbstractTaskExecutor implements TaskExecutor {
      * @return a list containing all of listeners.
      */
     protected <Input, Output> List<TaskListener> copyTaskListeners(List<TaskListener<Input, Output>> addTaskListeners) {
-        synchronized (lock()) {
-            List<TaskListener> list = new ArrayList<TaskListener>(listeners.size() + addTaskListeners.size());
-            list.addAll(listeners);
-            list.addAll(addTaskListeners);
-            return list;
-        }
+        // copy-on-write list gives a consistent snapshot without locking
+        List<TaskListener> list = new ArrayList<TaskListener>(listeners);
+        list.addAll(addTaskListeners);
+        return list;
     }
 
     @Override
@@ -214,19 +210,70 @@ abstract class AbstractTaskExecutor implements TaskExecutor {
     @Override
     public abstract <Input, Output> TaskHandler<Input, Output> execute(Task<Input, Output> task, Pack<Input, Output> vars, List<TaskListener<Input, Output>> taskListeners, Collection<String> tags);
 
+    @Override
+    public <Input, Output> TaskHandler<Input, Output> executeDelayed(Task<Input, Output> task, long delay, TimeUnit unit, String... tags) {
+        return executeDelayed(task, new Pack<Input, Output>(), Collections.<TaskListener<Input, Output>>emptyList(), Arrays.asList(tags), delay, unit);
+    }
+
+    @Override
+    public <Input, Output> TaskHandler<Input, Output> executeDelayed(Task<Input, Output> task, Input input, long delay, TimeUnit unit, String... tags) {
+        return executeDelayed(task, new Pack<Input, Output>().setInput(input), Collections.<TaskListener<Input, Output>>emptyList(), Arrays.asList(tags), delay, unit);
+    }
+
+    @Override
+    public <Input, Output> TaskHandler<Input, Output> executeWithTimeout(Task<Input, Output> task, long timeout, TimeUnit unit, String... tags) {
+        return executeWithTimeout(task, new Pack<Input, Output>(), Collections.<TaskListener<Input, Output>>emptyList(), Arrays.asList(tags), timeout, unit);
+    }
+
+    @Override
+    public <Input, Output> TaskHandler<Input, Output> executeWithTimeout(Task<Input, Output> task, Input input, long timeout, TimeUnit unit, String... tags) {
+        return executeWithTimeout(task, new Pack<Input, Output>().setInput(input), Collections.<TaskListener<Input, Output>>emptyList(), Arrays.asList(tags), timeout, unit);
+    }
+
+    @Override
+    public <Input, Output> TaskHandler<Input, Output> executeCoalesced(Object key, Task<Input, Output> task, Input input, String... tags) {
+        return executeCoalesced(key, task, new Pack<Input, Output>().setInput(input), Collections.<TaskListener<Input, Output>>emptyList(), Arrays.asList(tags));
+    }
+
+    @Override
+    public <Input, Output> TaskHandler<Input, Output> executeCoalesced(Task<Input, Output> task, Input input, String... tags) {
+        return executeCoalesced(Arrays.asList(task, input), task, new Pack<Input, Output>().setInput(input), Collections.<TaskListener<Input, Output>>emptyList(), Arrays.asList(tags));
+    }
+
+    @Override
+    public <Input, Output> TaskHandler<Input, Output> executeCached(Object key, Task<Input, Output> task, Input input, String... tags) {
+        return executeCached(key, task, new Pack<Input, Output>().setInput(input), Collections.<TaskListener<Input, Output>>emptyList(), Arrays.asList(tags));
+    }
+
+    @Override
+    public <Input, Output> TaskHandler<Input, Output> executeAfter(TaskHandler<?, Input> previous, Task<Input, Output> task, String... tags) {
+        return executeAfter(previous, task, new Pack<Input, Output>(), Collections.<TaskListener<Input, Output>>emptyList(), Arrays.asList(tags));
+    }
+
+    @Override
+    public <Input, Output> TaskHandler<Input, Output> executeBatched(BatchTask<Input, Output> batchTask, Input input, String... tags) {
+        return executeBatched(batchTask, new Pack<Input, Output>().setInput(input), Collections.<TaskListener<Input, Output>>emptyList(), Arrays.asList(tags));
+    }
+
+    @Override
+    public <Input, Output> TaskHandler<Input, Output> executeAtFixedRate(Task<Input, Output> task, long initialDelay, long period, TimeUnit unit, String... tags) {
+        return executeAtFixedRate(task, new Pack<Input, Output>(), Collections.<TaskListener<Input, Output>>emptyList(), Arrays.asList(tags), initialDelay, period, unit);
+    }
+
+    @Override
+    public <Input, Output> TaskHandler<Input, Output> executeWithFixedDelay(Task<Input, Output> task, long initialDelay, long delay, TimeUnit unit, String... tags) {
+        return executeWithFixedDelay(task, new Pack<Input, Output>(), Collections.<TaskListener<Input, Output>>emptyList(), Arrays.asList(tags), initialDelay, delay, unit);
+    }
+
     @Override
     public void shutdown() {
-        synchronized (lock()) {
-            shutdown = true;
-            queue().interrupt();
-        }
+        shutdown = true;
+        queue().interrupt();
     }
 
     @Override
     public boolean isShutdown() {
-        synchronized (lock()) {
-            return shutdown;
-        }
+        return shutdown;
     }
 
 }
\ No newline at end of file
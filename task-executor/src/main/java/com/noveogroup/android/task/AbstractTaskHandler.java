@@ -27,25 +27,84 @@
 package com.noveogroup.android.task;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  * {@link AbstractTaskHandler} is an abstract implementation of
  * the {@link TaskHandler} interface. A subclass must implement the abstract
- * methods {@link #addToQueue()}, {@link #removeFromQueue()} and
- * {@link #createTaskEnvironment()}.
+ * methods {@link #addToQueue()}, {@link #updateInQueue()},
+ * {@link #removeFromQueue()} and {@link #createTaskEnvironment()}.
  *
  * @param <Input>  type of task input.
  * @param <Output> type of task output.
  */
 abstract class AbstractTaskHandler<Input, Output> implements TaskHandler<Input, Output> {
 
-    private final Object joinObject = new Object();
+    // state of the task and its interrupt flag are packed into a single word
+    private static final int STATE_MASK = 0x07;
+    private static final int INTERRUPTED = 0x08;
+    private static final State[] STATES = State.values();
+
+    private static int word(State state, boolean interrupted) {
+        return state.ordinal() | (interrupted ? INTERRUPTED : 0);
+    }
+
+    private static State state(int word) {
+        return STATES[word & STATE_MASK];
+    }
+
+    private static boolean interrupted(int word) {
+        return (word & INTERRUPTED) != 0;
+    }
+
+    /**
+     * Means that the task has no deadline.
+     */
+    static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    // the task which is being run by the current thread
+    private static final ThreadLocal<AbstractTaskHandler<?, ?>> CURRENT = new ThreadLocal<AbstractTaskHandler<?, ?>>();
+
+    /**
+     * Returns the handler of the task which is being run by the current
+     * thread.
+     *
+     * @return the task handler or {@code null} if the current thread doesn't
+     * run a task.
+     */
+    static AbstractTaskHandler<?, ?> current() {
+        return CURRENT.get();
+    }
+
+    private static final int NOT_DISPATCHED = 0;
+    private static final int DISPATCHED = 1;
+    private static final int CLAIMED = 2;
+
+    @SuppressWarnings("unchecked")
+    private static final AtomicIntegerFieldUpdater<AbstractTaskHandler> RUNNER =
+            AtomicIntegerFieldUpdater.newUpdater(AbstractTaskHandler.class, "runner");
+    @SuppressWarnings("unchecked")
+    private static final AtomicIntegerFieldUpdater<AbstractTaskHandler> FINISHER =
+            AtomicIntegerFieldUpdater.newUpdater(AbstractTaskHandler.class, "finisher");
+
+    private final CountDownLatch destroyed = new CountDownLatch(1);
+    // a dispatched task is run by the thread which claims it first
+    private volatile int runner = NOT_DISPATCHED;
+    // a started task is finished by the one who claims it first: its own
+    // thread, its completion or its hedged duplicate
+    private volatile int finisher = 0;
     private final ExecutorService executorService;
-    private volatile Future<Throwable> taskFuture;
-    private volatile boolean taskFutureCanBeInterrupted;
+    // the thread running the task while it can be interrupted, guarded by destroyed
+    private Thread taskThread = null;
 
     private final TaskExecutor executor;
     private final TaskSet owner;
@@ -53,9 +112,25 @@ abstract class AbstractTaskHandler<Input, Output> implements TaskHandler<Input,
     private final Pack<Input, Output> args;
     private final List<TaskListener> listeners;
 
-    private volatile State state;
+    private final PaddedAtomicInteger word;
     private volatile Throwable throwable;
-    private volatile boolean interrupted;
+    private volatile Throwable cancelReason;
+    private volatile boolean dropped = false;
+    private volatile long deadline = NO_DEADLINE;
+
+    // tasks deferring their completion are rare, so it is created on demand
+    private volatile Deferral deferral = null;
+    // the same for tasks observing their cancellation
+    private volatile Token token = null;
+
+    // callbacks are registered rarely, so the list is created on demand
+    private List<TaskCallback<Input, Output>> callbacks = null;
+    private boolean completed = false;
+
+    // tasks executed by this one are interrupted with it, guarded by destroyed
+    private volatile AbstractTaskHandler<?, ?> parent = null;
+    private Set<AbstractTaskHandler<?, ?>> children = null;
+    private List<TaskScope> scopes = null;
 
     /**
      * Creates new instance of {@link AbstractTaskHandler}.
@@ -69,22 +144,18 @@ abstract class AbstractTaskHandler<Input, Output> implements TaskHandler<Input,
      */
     public AbstractTaskHandler(ExecutorService executorService, Task<Input, Output> task, TaskExecutor executor, TaskSet owner, Pack<Input, Output> args, List<TaskListener> listeners) {
         this.executorService = executorService;
-        this.taskFuture = null;
-        this.taskFutureCanBeInterrupted = false;
 
         this.executor = executor;
         this.owner = owner;
         this.task = task;
-        this.args = args.lock() == owner.lock() ? args : new Pack<Input, Output>(owner.lock(), args);
+        // packs created by the executor are adopted, others get a lock of their own
+        this.args = args.lock() == executor.lock() ? args : new Pack<Input, Output>(new Object(), args);
         this.listeners = new ArrayList<TaskListener>(listeners.size());
         this.listeners.addAll(listeners);
 
-        this.state = null;
+        this.word = new PaddedAtomicInteger(word(State.CREATED, false));
         this.throwable = null;
-        this.interrupted = false;
-
-        // create task
-        createTask();
+        this.cancelReason = null;
     }
 
     /**
@@ -103,26 +174,569 @@ abstract class AbstractTaskHandler<Input, Output> implements TaskHandler<Input,
      */
     protected abstract void addToQueue();
 
+    /**
+     * Task handler will call this method when its state is changed while
+     * it is in task queue.
+     */
+    protected abstract void updateInQueue();
+
     /**
      * Task handler will call this method when it is needed to be removed from
      * task queue.
      */
     protected abstract void removeFromQueue();
 
-    private void createTask() {
-        synchronized (lock()) {
-            interrupted = false;
-            state = State.CREATED;
-            throwable = null;
+    /**
+     * Task handler will call this method when a running task has executed
+     * this task in its own thread instead of waiting for it.
+     */
+    protected void onJoinInline() {
+    }
 
-            addToQueue();
+    /**
+     * Task handler will call this method before a running task is blocked
+     * waiting for this task.
+     */
+    protected void onJoinBlocked() {
+    }
 
-            executorService.submit(new Runnable() {
-                @Override
-                public void run() {
+    /**
+     * Task handler will call this method when a running task blocked
+     * waiting for this task is resumed.
+     */
+    protected void onJoinResumed() {
+    }
+
+    /**
+     * Task handler will call this method when the task has been dispatched
+     * to a working thread.
+     */
+    protected void onDispatched() {
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} by which the task should be
+     * finished.
+     *
+     * @return the deadline or {@link #NO_DEADLINE}.
+     */
+    long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Sets the deadline of the task. It should be set before the task is
+     * added to the queue.
+     *
+     * @param deadline the deadline or {@link #NO_DEADLINE}.
+     */
+    void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Adds the task to the queue. The task waits there until it is
+     * dispatched by {@link #dispatch()}.
+     */
+    void enqueue() {
+        addToQueue();
+    }
+
+    /**
+     * Dispatches the queued task to a working thread.
+     */
+    void dispatch() {
+        runner = DISPATCHED;
+        executorService.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (RUNNER.compareAndSet(AbstractTaskHandler.this, DISPATCHED, CLAIMED)) {
                     prepareTask();
                 }
-            });
+            }
+        });
+        onDispatched();
+    }
+
+    /**
+     * Makes this task a child of the specified one. Interruption of
+     * the parent task is passed to its children until it is destroyed,
+     * a child of an interrupted parent is interrupted at once.
+     * It should be called before the task is added to the queue.
+     *
+     * @param parent the parent task.
+     */
+    void setParent(AbstractTaskHandler<?, ?> parent) {
+        synchronized (parent.destroyed) {
+            if (parent.completed) {
+                return;
+            }
+            if (parent.children == null) {
+                parent.children = new HashSet<AbstractTaskHandler<?, ?>>();
+            }
+            parent.children.add(this);
+            this.parent = parent;
+            if (parent.isInterrupted()) {
+                // the parent has already passed its interruption to children
+                interrupt();
+            }
+        }
+    }
+
+    /**
+     * Opens a scope of subtasks. Scopes left open are closed when the task
+     * returns.
+     *
+     * @param policy the policy of the scope.
+     * @param tags   additional tags of subtasks.
+     * @return the scope.
+     * @see TaskEnvironment#openScope(TaskScope.Policy, String...)
+     */
+    TaskScope openScope(TaskScope.Policy policy, String... tags) {
+        TaskScope scope = new TaskScope(owner.sub(tags), policy);
+        synchronized (destroyed) {
+            if (scopes == null) {
+                scopes = new ArrayList<TaskScope>(1);
+            }
+            scopes.add(scope);
+        }
+        return scope;
+    }
+
+    private void closeScopes() {
+        List<TaskScope> list;
+        synchronized (destroyed) {
+            list = scopes;
+            scopes = null;
+        }
+        if (list != null) {
+            // the subtasks are interrupted, so they are waited for even if
+            // the task has been interrupted too
+            boolean interrupted = Thread.interrupted();
+            for (TaskScope scope : list) {
+                while (true) {
+                    try {
+                        scope.close();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Makes the parent forget the task which is never going to be executed.
+     */
+    void detachFromParent() {
+        AbstractTaskHandler<?, ?> parent = this.parent;
+        if (parent != null) {
+            parent.removeChild(this);
+            this.parent = null;
+        }
+    }
+
+    private void removeChild(AbstractTaskHandler<?, ?> child) {
+        synchronized (destroyed) {
+            if (children != null) {
+                children.remove(child);
+            }
+        }
+    }
+
+    private void interruptChildren() {
+        List<AbstractTaskHandler<?, ?>> list;
+        synchronized (destroyed) {
+            if (children == null || children.isEmpty()) {
+                return;
+            }
+            list = new ArrayList<AbstractTaskHandler<?, ?>>(children);
+        }
+        for (AbstractTaskHandler<?, ?> child : list) {
+            child.interrupt();
+        }
+    }
+
+    private void setTaskThread(Thread thread) {
+        synchronized (destroyed) {
+            taskThread = thread;
+        }
+    }
+
+    /**
+     * Executes the dispatched task in the current thread if no working
+     * thread has taken it yet. The working thread skips the task then.
+     *
+     * @return {@code true} if the task has been executed.
+     */
+    boolean runDispatched() {
+        if (RUNNER.compareAndSet(this, DISPATCHED, CLAIMED)) {
+            prepareTask();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Executes the queued task in the current thread instead of dispatching
+     * it to a working thread.
+     */
+    void runQueued() {
+        prepareTask();
+    }
+
+    /**
+     * Adds the task to the queue and executes it in the current thread.
+     */
+    void runInline() {
+        addToQueue();
+        prepareTask();
+    }
+
+    /**
+     * Cancels the task instead of adding it to the queue. Listeners are
+     * called in the current thread.
+     *
+     * @param reason the reason to report by {@link #getThrowable()}.
+     */
+    void reject(Throwable reason) {
+        cancelReason = reason;
+        word.set(word(State.CANCELED, true));
+        prepareTask();
+    }
+
+    /**
+     * Finishes the task with the known output instead of running it. The task
+     * is never queued, its listeners are called in the current thread.
+     *
+     * @param output the output of the task.
+     */
+    void complete(Output output) {
+        args.setOutput(output);
+        word.set(word(State.SUCCEED, false));
+
+        // call listeners
+        callOnCreate();
+        callOnSucceed();
+        callOnDestroy();
+
+        // release joining threads and call callbacks
+        destroy();
+    }
+
+    /**
+     * Cancels the task if it is still waiting in the queue. Unlike
+     * {@link #interrupt()} a task which has been already started is left
+     * untouched.
+     *
+     * @param reason the reason to report by {@link #getThrowable()}.
+     * @return {@code true} if the task has been canceled.
+     */
+    boolean drop(Throwable reason) {
+        if (word.get() != word(State.CREATED, false)) {
+            return false;
+        }
+        cancelReason = reason;
+        if (word.compareAndSet(word(State.CREATED, false), word(State.CANCELED, true))) {
+            dropped = true;
+            removeFromQueue();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks if the task has been canceled by {@link #drop(Throwable)}, so
+     * work started on its behalf should be left running.
+     *
+     * @return {@code true} if the task has been dropped.
+     */
+    boolean isDropped() {
+        return dropped;
+    }
+
+    /**
+     * Moves the task from {@link State#STARTED} to the specified final state
+     * keeping the interrupt flag.
+     */
+    private void finishTask(State state) {
+        while (true) {
+            int current = word.get();
+            if (word.compareAndSet(current, word(state, interrupted(current)))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * The deferred completion of the task.
+     */
+    private final class Deferral implements Completion<Output> {
+
+        private boolean returned = false;
+        private boolean completed = false;
+        private Output output = null;
+        private Throwable failure = null;
+        private Interruptible interruptible = null;
+
+        /**
+         * Marks the task as returned from its run method.
+         *
+         * @return {@code true} if the completion is still pending.
+         */
+        public synchronized boolean markReturned() {
+            returned = true;
+            return !completed;
+        }
+
+        /**
+         * Ignores any further completion because the task has failed.
+         */
+        public synchronized void abandon() {
+            completed = true;
+        }
+
+        /**
+         * Notifies the interruptible set by the task if the completion is
+         * still pending.
+         */
+        public void interrupt() {
+            Interruptible interruptible;
+            synchronized (this) {
+                interruptible = completed ? null : this.interruptible;
+            }
+            if (interruptible != null) {
+                interruptible.interrupt();
+            }
+        }
+
+        public synchronized Output output() {
+            return output;
+        }
+
+        public synchronized Throwable failure() {
+            return failure;
+        }
+
+        private boolean complete(Output output, Throwable failure) {
+            synchronized (this) {
+                if (completed) {
+                    return false;
+                }
+                completed = true;
+                this.output = output;
+                this.failure = failure;
+                if (!returned) {
+                    // the task will be finished when its run method returns
+                    return true;
+                }
+            }
+            finishExecution(output, failure);
+            return true;
+        }
+
+        @Override
+        public boolean succeed(Output output) {
+            return complete(output, null);
+        }
+
+        @Override
+        public boolean fail(Throwable throwable) {
+            if (throwable == null) {
+                throw new NullPointerException();
+            }
+            return complete(null, throwable);
+        }
+
+        @Override
+        public void setInterruptible(Interruptible interruptible) {
+            synchronized (this) {
+                this.interruptible = interruptible;
+            }
+            if (isInterrupted()) {
+                interrupt();
+            }
+        }
+
+    }
+
+    /**
+     * The cancellation token of the task.
+     */
+    private final class Token implements CancellationToken {
+
+        // null when the callbacks have been called or forgotten
+        private List<Interruptible> callbacks = new ArrayList<Interruptible>(2);
+
+        @Override
+        public boolean isCancelled() {
+            return isInterrupted();
+        }
+
+        @Override
+        public void register(Interruptible callback) {
+            if (callback == null) {
+                throw new NullPointerException();
+            }
+            synchronized (this) {
+                if (callbacks != null && !isInterrupted()) {
+                    callbacks.add(callback);
+                    return;
+                }
+            }
+            // the task has been already interrupted or destroyed
+            if (isInterrupted()) {
+                callback.interrupt();
+            }
+        }
+
+        @Override
+        public synchronized boolean unregister(Interruptible callback) {
+            return callbacks != null && callbacks.remove(callback);
+        }
+
+        /**
+         * Calls the callbacks. Should be called once the task is interrupted.
+         */
+        public void cancel() {
+            List<Interruptible> list;
+            synchronized (this) {
+                list = callbacks;
+                callbacks = null;
+            }
+            if (list != null) {
+                for (Interruptible callback : list) {
+                    try {
+                        callback.interrupt();
+                    } catch (RuntimeException e) {
+                        Thread thread = Thread.currentThread();
+                        thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Forgets the callbacks. Should be called once the task is destroyed.
+         */
+        public synchronized void clear() {
+            callbacks = null;
+        }
+
+    }
+
+    /**
+     * Returns the cancellation token of the task.
+     *
+     * @return the token.
+     * @see TaskEnvironment#cancellationToken()
+     */
+    CancellationToken cancellationToken() {
+        Token token = this.token;
+        if (token == null) {
+            synchronized (destroyed) {
+                token = this.token;
+                if (token == null) {
+                    token = new Token();
+                    if (completed) {
+                        token.clear();
+                    }
+                    this.token = token;
+                }
+            }
+        }
+        return token;
+    }
+
+    /**
+     * Defers the completion of the task.
+     *
+     * @return the completion.
+     * @see TaskEnvironment#defer()
+     */
+    Completion<Output> defer() {
+        if (getState() != State.STARTED) {
+            throw new IllegalStateException("only a running task can defer its completion");
+        }
+        Deferral deferral = this.deferral;
+        if (deferral == null) {
+            deferral = new Deferral();
+            this.deferral = deferral;
+        }
+        return deferral;
+    }
+
+    /**
+     * Runs the action in the current thread as if it was a part of
+     * the task, so tasks executed by the action inherit the deadline of
+     * the task.
+     *
+     * @param action the action.
+     */
+    void runOnBehalf(Runnable action) {
+        AbstractTaskHandler<?, ?> outer = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            action.run();
+        } finally {
+            CURRENT.set(outer);
+        }
+    }
+
+    /**
+     * Finishes the running task with the output of its duplicate which
+     * has succeeded first. The task is interrupted and the outcome of its
+     * own execution is ignored.
+     *
+     * @param output the output of the duplicate.
+     * @return {@code true} if the task has been finished by this call.
+     */
+    boolean finishHedged(Output output) {
+        if (getState() != State.STARTED || !FINISHER.compareAndSet(this, 0, 1)) {
+            return false;
+        }
+        // the task is interrupted before its state is changed
+        // so its working thread and its subtasks are stopped
+        interrupt();
+        completeExecution(output, null);
+        return true;
+    }
+
+    private void destroy() {
+        destroyed.countDown();
+
+        List<TaskCallback<Input, Output>> list;
+        synchronized (destroyed) {
+            completed = true;
+            list = callbacks;
+            callbacks = null;
+            children = null;
+        }
+        Token token = this.token;
+        if (token != null) {
+            token.clear();
+        }
+        AbstractTaskHandler<?, ?> parent = this.parent;
+        if (parent != null) {
+            parent.removeChild(this);
+        }
+        if (list != null) {
+            for (TaskCallback<Input, Output> callback : list) {
+                callCallback(callback);
+            }
+        }
+    }
+
+    private void callCallback(TaskCallback<Input, Output> callback) {
+        try {
+            callback.onComplete(this);
+        } catch (RuntimeException e) {
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
         }
     }
 
@@ -133,97 +747,125 @@ abstract class AbstractTaskHandler<Input, Output> implements TaskHandler<Input,
             callOnCanceled();
             callOnDestroy();
 
-            // notify join object
-            synchronized (joinObject) {
-                joinObject.notifyAll();
-            }
+            // release joining threads and call callbacks
+            destroy();
         } else {
             callOnCreate();
             callOnQueueInsert();
 
-            executorService.submit(new Runnable() {
-                @Override
-                public void run() {
-                    executeTask();
-                }
-            });
+            // the task is executed by the same working thread right after
+            // it has been prepared, so it is dispatched only once
+            executeTask();
         }
     }
 
     private void executeTask() {
-        if (isInterrupted()) {
+        // only a task which is neither interrupted nor canceled can be started
+        if (!word.compareAndSet(word(State.CREATED, false), word(State.STARTED, false))) {
             // call listeners
             callOnCanceled();
             callOnQueueRemove();
             callOnDestroy();
 
-            // notify join object
-            synchronized (joinObject) {
-                joinObject.notifyAll();
-            }
+            // release joining threads and call callbacks
+            destroy();
         } else {
-            // change state
-            synchronized (lock()) {
-                state = State.STARTED;
-                throwable = null;
-            }
+            updateInQueue();
 
             // call listeners
             callOnStart();
 
             // create task environment
-            TaskEnvironment<Input, Output> env;
-            synchronized (lock()) {
-                env = createTaskEnvironment();
-            }
+            TaskEnvironment<Input, Output> env = createTaskEnvironment();
 
             // execute task
+            Output output = null;
             Throwable t = null;
+            boolean pending = false;
+            AbstractTaskHandler<?, ?> outer = CURRENT.get();
+            CURRENT.set(this);
+            // the interrupt flag of the thread belongs to the task run by it
+            boolean threadInterrupted = Thread.interrupted();
             try {
-                synchronized (lock()) {
-                    // allow interruption
-                    taskFutureCanBeInterrupted = true;
+                // allow interruption
+                setTaskThread(Thread.currentThread());
 
-                    // check if the task has already been interrupted
-                    if (isInterrupted()) {
-                        throw new InterruptedException();
-                    }
+                // check if the task has already been interrupted
+                if (isInterrupted()) {
+                    throw new InterruptedException();
                 }
+
                 // run task
                 Input input = env.vars().input();
-                Output output = task.run(input, env);
-                env.vars().setOutput(output);
+                try {
+                    output = task.run(input, env);
+                } finally {
+                    // subtasks of scopes left open don't outlive the task
+                    closeScopes();
+                }
+                Deferral deferral = this.deferral;
+                if (deferral != null) {
+                    if (deferral.markReturned()) {
+                        // the task will be finished by its completion
+                        pending = true;
+                    } else {
+                        output = deferral.output();
+                        t = deferral.failure();
+                    }
+                }
             } catch (Throwable throwable) {
                 t = throwable;
+                Deferral deferral = this.deferral;
+                if (deferral != null) {
+                    deferral.abandon();
+                }
             } finally {
-                synchronized (lock()) {
-                    // deny interruption
-                    taskFutureCanBeInterrupted = false;
+                // deny interruption
+                setTaskThread(null);
+                // the thread is reused by other tasks, so an interruption
+                // of this task is cleared and the former flag is restored
+                Thread.interrupted();
+                if (threadInterrupted) {
+                    Thread.currentThread().interrupt();
                 }
+                // a task could be run inline by another task
+                CURRENT.set(outer);
             }
 
-            // change task state and remove task from queue
-            synchronized (lock()) {
-                state = t == null ? State.SUCCEED : State.FAILED;
-                throwable = t;
-                removeFromQueue();
+            if (!pending) {
+                finishExecution(output, t);
             }
+        }
+    }
 
-            // call listeners
-            callOnFinish();
-            if (t == null) {
-                callOnSucceed();
-            } else {
-                callOnFailed();
-            }
-            callOnQueueRemove();
-            callOnDestroy();
+    private void finishExecution(Output output, Throwable t) {
+        // the task could be finished by its duplicate
+        if (FINISHER.compareAndSet(this, 0, 1)) {
+            completeExecution(output, t);
+        }
+    }
 
-            // notify join object
-            synchronized (joinObject) {
-                joinObject.notifyAll();
-            }
+    private void completeExecution(Output output, Throwable t) {
+        // change task state and remove task from queue
+        if (t == null) {
+            args.setOutput(output);
         }
+        throwable = t;
+        finishTask(t == null ? State.SUCCEED : State.FAILED);
+        removeFromQueue();
+
+        // call listeners
+        callOnFinish();
+        if (t == null) {
+            callOnSucceed();
+        } else {
+            callOnFailed();
+        }
+        callOnQueueRemove();
+        callOnDestroy();
+
+        // release joining threads and call callbacks
+        destroy();
     }
 
     @Override
@@ -238,7 +880,7 @@ abstract class AbstractTaskHandler<Input, Output> implements TaskHandler<Input,
 
     @Override
     public Object lock() {
-        return owner.lock();
+        return args.lock();
     }
 
     @Override
@@ -253,51 +895,83 @@ abstract class AbstractTaskHandler<Input, Output> implements TaskHandler<Input,
 
     @Override
     public State getState() {
-        synchronized (lock()) {
-            return state;
-        }
+        return state(word.get());
     }
 
     @Override
     public Throwable getThrowable() {
-        synchronized (lock()) {
+        if (getState() == State.CANCELED) {
+            return cancelReason;
+        } else {
             return throwable;
         }
     }
 
     @Override
     public boolean isInterrupted() {
-        synchronized (lock()) {
-            return interrupted;
-        }
+        return interrupted(word.get());
     }
 
     @Override
     public void interrupt() {
-        synchronized (lock()) {
-            interrupted = true;
+        while (true) {
+            int current = word.get();
+            if (interrupted(current)) {
+                // the task has been already interrupted
+                return;
+            }
+
+            State state = state(current);
+            State newState = state == State.CREATED ? State.CANCELED : state;
+            if (!word.compareAndSet(current, word(newState, true))) {
+                // the word was changed concurrently - try again
+                continue;
+            }
+
+            if (state != State.CREATED && state != State.STARTED) {
+                // in other states there are no need to do anything else,
+                // children of a finished task are left running
+                return;
+            }
+
+            // tasks executed by this one are interrupted first, the task
+            // forgets them as soon as it finishes after its thread is interrupted
+            interruptChildren();
 
             switch (state) {
                 case CREATED:
-                    // remove from queue and set state to CANCELED
-                    state = State.CANCELED;
-                    throwable = null;
+                    // the task is CANCELED now so remove it from queue
                     removeFromQueue();
                     break;
                 case STARTED:
-                    // try to interrupt working thread if it exists and interruption is allowed
-                    if (taskFuture != null && taskFutureCanBeInterrupted) {
-                        if (task instanceof Interruptible) {
-                            Interruptible interruptible = (Interruptible) task;
-                            interruptible.interrupt();
+                    // try to interrupt the task and its working thread if interruption is allowed
+                    boolean running;
+                    synchronized (destroyed) {
+                        running = taskThread != null;
+                        // a task interrupting itself sets the flag only
+                        if (running && taskThread != Thread.currentThread()) {
+                            taskThread.interrupt();
                         }
-                        taskFuture.cancel(true);
+                    }
+                    // release resources registered by the task
+                    Token token = this.token;
+                    if (token != null) {
+                        token.cancel();
+                    }
+                    if (running && task instanceof Interruptible) {
+                        Interruptible interruptible = (Interruptible) task;
+                        interruptible.interrupt();
+                    }
+                    // notify the task which has deferred its completion
+                    Deferral deferral = this.deferral;
+                    if (deferral != null) {
+                        deferral.interrupt();
                     }
                     break;
                 default:
-                    // in other states there are no need to do anything else
                     break;
             }
+            return;
         }
     }
 
@@ -308,26 +982,55 @@ abstract class AbstractTaskHandler<Input, Output> implements TaskHandler<Input,
 
     @Override
     public boolean join(long timeout) throws InterruptedException {
-        synchronized (joinObject) {
-            if (timeout < 0) {
-                throw new IllegalArgumentException();
-            }
+        if (timeout < 0) {
+            throw new IllegalArgumentException();
+        }
 
-            while (!getState().isDestroyed()) {
-                if (timeout == 0) {
-                    joinObject.wait();
-                } else {
-                    long time = System.nanoTime();
-                    joinObject.wait(timeout);
-                    timeout -= (System.nanoTime() - time) / 1000000;
+        if (getState().isDestroyed()) {
+            return true;
+        }
 
-                    if (timeout <= 0) {
-                        return false;
-                    }
-                }
+        return await(destroyed, timeout) || getState().isDestroyed();
+    }
+
+    /**
+     * Waits for the latch which is released not earlier than this task is
+     * finished. A running task waiting this way helps this task to progress
+     * the same way as {@link #join(long)} does.
+     *
+     * @param latch   the latch.
+     * @param timeout the maximum time to wait in milliseconds or zero to wait
+     *                forever.
+     * @return {@code true} if the latch has been released.
+     * @throws InterruptedException if the current thread is interrupted.
+     */
+    boolean await(CountDownLatch latch, long timeout) throws InterruptedException {
+        // a running task waiting for this one would hold its working thread,
+        // so it executes this task by itself if no other thread has taken it
+        boolean nested = CURRENT.get() != null;
+        if (nested && runDispatched()) {
+            onJoinInline();
+            if (latch.getCount() == 0) {
+                return true;
             }
+        }
 
-            return true;
+        // joining threads are parked without holding a monitor
+        // so a virtual thread doesn't pin its carrier thread
+        if (nested) {
+            onJoinBlocked();
+        }
+        try {
+            if (timeout == 0) {
+                latch.await();
+                return true;
+            } else {
+                return latch.await(timeout, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            if (nested) {
+                onJoinResumed();
+            }
         }
     }
 
@@ -341,13 +1044,35 @@ abstract class AbstractTaskHandler<Input, Output> implements TaskHandler<Input,
         }
     }
 
-    private void handleListenerError(TaskListener listener, Throwable throwable) {
-        synchronized (executor().lock()) {
-            ErrorHandler errorHandler = executor().getErrorHandler();
-            if (errorHandler != null) {
-                errorHandler.listenerError(listener, throwable);
+    @Override
+    public void onComplete(TaskCallback<Input, Output> callback) {
+        synchronized (destroyed) {
+            if (!completed) {
+                if (callbacks == null) {
+                    callbacks = new ArrayList<TaskCallback<Input, Output>>(1);
+                }
+                callbacks.add(callback);
+                return;
             }
         }
+        callCallback(callback);
+    }
+
+    @Override
+    public <T> TaskHandler<Output, T> thenExecute(Task<Output, T> task, String... tags) {
+        return thenExecute(task, Collections.<TaskListener<Output, T>>emptyList(), Arrays.asList(tags));
+    }
+
+    @Override
+    public <T> TaskHandler<Output, T> thenExecute(Task<Output, T> task, List<TaskListener<Output, T>> taskListeners, Collection<String> tags) {
+        return executor.executeAfter(this, task, new Pack<Output, T>(), taskListeners, tags);
+    }
+
+    private void handleListenerError(TaskListener listener, Throwable throwable) {
+        ErrorHandler errorHandler = executor().getErrorHandler();
+        if (errorHandler != null) {
+            errorHandler.listenerError(listener, throwable);
+        }
     }
 
     @SuppressWarnings("unchecked")
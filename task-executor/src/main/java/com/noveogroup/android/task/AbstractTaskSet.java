@@ -27,11 +27,21 @@
 package com.noveogroup.android.task;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 /**
  * {@link AbstractTaskSet} is an abstract implementation of
  * the {@link TaskSet} interface. A subclass must implement the abstract
- * methods {@link #iterator()} and {@link #interrupt()}}.
+ * methods {@link #iterator()} and {@link #interrupt()}.
+ * <p/>
+ * Limits and policies of a task set are kept by its executor, so a subclass
+ * must also implement the methods configuring them:
+ * {@link #getMaxRunning()}, {@link #setMaxRunning(int)},
+ * {@link #getReservedSlots()}, {@link #setReservedSlots(int)},
+ * {@link #setRateLimit(double, int)}, {@link #removeRateLimit()},
+ * {@link #getRateLimitDelay()}, {@link #setHedging(double)},
+ * {@link #removeHedging()}, {@link #getHedgingDelay()} and
+ * {@link #invalidateResults()}.
  */
 abstract class AbstractTaskSet implements TaskSet {
 
@@ -187,4 +197,82 @@ abstract class AbstractTaskSet implements TaskSet {
         }
     }
 
+    /**
+     * Waits for the first succeeded task of a number of tasks.
+     */
+    private static final class FirstSucceeded {
+
+        private int remaining;
+        private TaskHandler<?, ?> winner = null;
+
+        public FirstSucceeded(int count) {
+            this.remaining = count;
+        }
+
+        public <Input, Output> void watch(TaskHandler<Input, Output> handler) {
+            handler.onComplete(new TaskCallback<Input, Output>() {
+                @Override
+                public void onComplete(TaskHandler<Input, Output> handler) {
+                    onTaskComplete(handler);
+                }
+            });
+        }
+
+        private synchronized void onTaskComplete(TaskHandler<?, ?> handler) {
+            remaining--;
+            if (winner == null && handler.getState() == TaskHandler.State.SUCCEED) {
+                winner = handler;
+            }
+            if (winner != null || remaining == 0) {
+                notifyAll();
+            }
+        }
+
+        public synchronized TaskHandler<?, ?> await(long timeout) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            while (winner == null && remaining > 0) {
+                if (timeout == 0) {
+                    wait();
+                } else {
+                    long millis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (millis <= 0) {
+                        break;
+                    }
+                    wait(millis);
+                }
+            }
+            return winner;
+        }
+
+    }
+
+    @Override
+    public TaskHandler<?, ?> awaitAny(long timeout) throws InterruptedException {
+        if (timeout < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        List<TaskHandler<?, ?>> handlers = new ArrayList<TaskHandler<?, ?>>();
+        for (TaskHandler<?, ?> handler : this) {
+            handlers.add(handler);
+        }
+        if (handlers.isEmpty()) {
+            return null;
+        }
+
+        FirstSucceeded first = new FirstSucceeded(handlers.size());
+        for (TaskHandler<?, ?> handler : handlers) {
+            first.watch(handler);
+        }
+        TaskHandler<?, ?> winner = first.await(timeout);
+        if (winner != null) {
+            for (TaskHandler<?, ?> handler : handlers) {
+                if (handler != winner) {
+                    handler.interrupt();
+                }
+            }
+        }
+        return winner;
+    }
+
 }
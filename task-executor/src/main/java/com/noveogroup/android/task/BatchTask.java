@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2013 Noveo Group
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * Except as contained in this notice, the name(s) of the above copyright holders
+ * shall not be used in advertising or otherwise to promote the sale, use or
+ * other dealings in this Software without prior written authorization.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.noveogroup.android.task;
+
+import java.util.List;
+
+/**
+ * Represents a task processing inputs of many small tasks at once.
+ * <p/>
+ * Tasks executed by {@link TaskExecutor#executeBatched(BatchTask, Object, String...)}
+ * are accumulated until there are {@link #getMaxBatchSize()} of them or
+ * the first of them has waited for {@link #getMaxBatchDelay()} milliseconds,
+ * then their inputs are processed by one run of the batch task and
+ * the outputs are returned by the handlers of the individual tasks.
+ *
+ * @param <Input>  type of input of a single task.
+ * @param <Output> type of output of a single task.
+ */
+public interface BatchTask<Input, Output> {
+
+    /**
+     * Returns the maximum number of inputs processed at once.
+     *
+     * @return the maximum size of a batch.
+     */
+    public int getMaxBatchSize();
+
+    /**
+     * Returns the maximum time a task waits for its batch to be filled.
+     *
+     * @return the delay in milliseconds.
+     */
+    public long getMaxBatchDelay();
+
+    /**
+     * Processes the batch of inputs. The batch is run as a part of one of
+     * its tasks, so the environment of that task is given.
+     * <p/>
+     * If an exception is thrown all the tasks of the batch fail with it.
+     *
+     * @param inputs the inputs of the tasks.
+     * @param env    the environment of the task running the batch.
+     * @return the outputs of the tasks in the same order as the inputs.
+     * @throws Throwable the throwable object.
+     */
+    public List<Output> run(List<Input> inputs, TaskEnvironment<Input, Output> env) throws Throwable;
+
+}
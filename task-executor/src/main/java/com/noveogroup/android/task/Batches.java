@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2013 Noveo Group
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * Except as contained in this notice, the name(s) of the above copyright holders
+ * shall not be used in advertising or otherwise to promote the sale, use or
+ * other dealings in this Software without prior written authorization.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.noveogroup.android.task;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Batches} accumulates queued tasks of a {@link BatchTask} and runs
+ * them in batches.
+ * <p/>
+ * Each task has its own handler running an {@link Item}. Tasks of the same
+ * batch task having the same tags are collected into an open batch until
+ * it is full or its delay expires. Then the whole batch is run by one
+ * working thread: the first task which is still alive runs the batch task
+ * with inputs of all alive tasks and hands the outputs out, the other tasks
+ * just return them. All the tasks pass through their usual life cycle
+ * in that thread, so the batch looks like ordinary tasks to listeners.
+ * <p/>
+ * A task canceled while its batch is open is removed from the batch.
+ * A task running alone (for example, executed in the caller thread when
+ * the executor is full) runs the batch task with its own input only.
+ */
+final class Batches {
+
+    /**
+     * A task of a batch.
+     */
+    static final class Item<Input, Output> implements Task<Input, Output>, Interruptible {
+
+        private final BatchTask<Input, Output> batchTask;
+        private volatile List<AbstractTaskHandler<?, ?>> batch = null;
+        private volatile boolean running = false;
+        private volatile boolean done = false;
+        private volatile Output output = null;
+        private volatile Throwable failure = null;
+
+        public Item(BatchTask<Input, Output> batchTask) {
+            this.batchTask = batchTask;
+        }
+
+        private void complete(Output output, Throwable failure) {
+            this.output = output;
+            this.failure = failure;
+            this.done = true;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Output run(Input input, TaskEnvironment<Input, Output> env) throws Throwable {
+            if (!done) {
+                // this task runs the batch for all alive tasks of it
+                List<Item<Input, Output>> items = new ArrayList<Item<Input, Output>>();
+                List<Input> inputs = new ArrayList<Input>();
+                items.add(this);
+                inputs.add(input);
+                if (batch != null) {
+                    for (AbstractTaskHandler<?, ?> handler : batch) {
+                        if (handler.task() != this && !handler.isInterrupted() && handler.getState() == TaskHandler.State.CREATED) {
+                            items.add((Item<Input, Output>) handler.task());
+                            inputs.add((Input) handler.vars().input());
+                        }
+                    }
+                }
+
+                List<Output> outputs = null;
+                Throwable throwable = null;
+                running = true;
+                try {
+                    outputs = batchTask.run(Collections.unmodifiableList(inputs), env);
+                    if (outputs == null || outputs.size() != inputs.size()) {
+                        throw new IllegalStateException("the batch task returned " + (outputs == null ? "no" : outputs.size()) + " outputs for " + inputs.size() + " inputs");
+                    }
+                } catch (Throwable t) {
+                    throwable = t;
+                } finally {
+                    running = false;
+                }
+
+                for (int i = 0; i < items.size(); i++) {
+                    items.get(i).complete(throwable == null ? outputs.get(i) : null, throwable);
+                }
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+            return output;
+        }
+
+        @Override
+        public void interrupt() {
+            // only the task running the batch task passes the interruption
+            if (running && batchTask instanceof Interruptible) {
+                ((Interruptible) batchTask).interrupt();
+            }
+        }
+
+    }
+
+    /**
+     * Tasks of a batch task having the same tags.
+     */
+    private static final class Key {
+
+        private final BatchTask<?, ?> batchTask;
+        private final Set<String> tags;
+
+        public Key(BatchTask<?, ?> batchTask, Set<String> tags) {
+            this.batchTask = batchTask;
+            this.tags = tags;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return batchTask == key.batchTask && tags.equals(key.tags);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(batchTask) + tags.hashCode();
+        }
+
+    }
+
+    /**
+     * A batch which is open while tasks are added to it.
+     */
+    private final class Batch implements Runnable {
+
+        private final Key key;
+        private final List<AbstractTaskHandler<?, ?>> handlers = new ArrayList<AbstractTaskHandler<?, ?>>();
+        private TimingWheel.Timeout timeout = null;
+        private boolean closed = false;
+
+        public Batch(Key key) {
+            this.key = key;
+        }
+
+        /**
+         * Adds the task to this batch and dispatches the batch if it is full.
+         *
+         * @return {@code false} if the batch has been already closed.
+         */
+        public boolean add(AbstractTaskHandler<?, ?> handler) {
+            boolean full;
+            synchronized (this) {
+                if (closed) {
+                    return false;
+                }
+                handlers.add(handler);
+                index.put(handler, this);
+                full = handlers.size() >= Math.max(key.batchTask.getMaxBatchSize(), 1);
+                if (full) {
+                    close();
+                } else if (timeout == null) {
+                    timeout = timer.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            flush();
+                        }
+                    }, key.batchTask.getMaxBatchDelay(), TimeUnit.MILLISECONDS);
+                }
+            }
+            if (full) {
+                executorService.execute(this);
+            }
+            return true;
+        }
+
+        public synchronized boolean remove(AbstractTaskHandler<?, ?> handler) {
+            return !closed && handlers.remove(handler);
+        }
+
+        private void close() {
+            closed = true;
+            open.remove(key, this);
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+
+        private void flush() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                close();
+            }
+            executorService.execute(this);
+        }
+
+        @Override
+        public void run() {
+            List<AbstractTaskHandler<?, ?>> batch;
+            synchronized (this) {
+                batch = new ArrayList<AbstractTaskHandler<?, ?>>(handlers);
+            }
+            for (AbstractTaskHandler<?, ?> handler : batch) {
+                index.remove(handler);
+                ((Item<?, ?>) handler.task()).batch = batch;
+            }
+            // the first task which is started runs the batch task
+            for (AbstractTaskHandler<?, ?> handler : batch) {
+                handler.runQueued();
+            }
+        }
+
+    }
+
+    private final ExecutorService executorService;
+    private final TimingWheel timer;
+    private final ConcurrentHashMap<Key, Batch> open = new ConcurrentHashMap<Key, Batch>();
+    private final ConcurrentHashMap<AbstractTaskHandler<?, ?>, Batch> index = new ConcurrentHashMap<AbstractTaskHandler<?, ?>, Batch>();
+
+    /**
+     * Creates new instance of {@link Batches}.
+     *
+     * @param executorService the working threads to run batches.
+     * @param timer           the timer to flush batches which are not full.
+     */
+    public Batches(ExecutorService executorService, TimingWheel timer) {
+        this.executorService = executorService;
+        this.timer = timer;
+    }
+
+    /**
+     * Adds the queued task to an open batch.
+     *
+     * @param handler   the task handler running an {@link Item}.
+     * @param batchTask the batch task.
+     */
+    public void add(AbstractTaskHandler<?, ?> handler, BatchTask<?, ?> batchTask) {
+        Key key = new Key(batchTask, handler.owner().tags());
+        while (true) {
+            Batch batch = open.get(key);
+            if (batch == null) {
+                Batch created = new Batch(key);
+                batch = open.putIfAbsent(key, created);
+                if (batch == null) {
+                    batch = created;
+                }
+            }
+            if (batch.add(handler)) {
+                return;
+            }
+            // the batch has been just closed
+            open.remove(key, batch);
+        }
+    }
+
+    /**
+     * Removes the canceled task from its open batch.
+     *
+     * @param handler the task handler.
+     * @return {@code true} if the task has been removed, {@code false} if
+     * it is not in an open batch.
+     */
+    public boolean remove(AbstractTaskHandler<?, ?> handler) {
+        Batch batch = index.remove(handler);
+        return batch != null && batch.remove(handler);
+    }
+
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2013 Noveo Group
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * Except as contained in this notice, the name(s) of the above copyright holders
+ * shall not be used in advertising or otherwise to promote the sale, use or
+ * other dealings in this Software without prior written authorization.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.noveogroup.android.task;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link Bulkheads} limits the number of tasks dispatched to working threads
+ * of a {@link TaskExecutor} at once.
+ * <p/>
+ * A bulkhead is attached to a set of tags and covers every task labeled by
+ * all of them. It can cap the number of running tasks it covers and it can
+ * reserve a number of slots of the executor-wide limit, so tasks it doesn't
+ * cover can't take them. A task which cannot be dispatched stays
+ * {@link TaskHandler.State#CREATED} and waits without holding a working
+ * thread until some dispatched task is finished.
+ * <p/>
+ * Waiting tasks are dispatched in FIFO order, skipping ones whose bulkheads
+ * are full. When no limits are set tasks are dispatched right away without
+ * any locking.
+ */
+final class Bulkheads {
+
+    private static final Bulkhead[] EMPTY = new Bulkhead[0];
+
+    /**
+     * Limits of tasks labeled by a set of tags.
+     */
+    private static final class Bulkhead {
+
+        private final Set<String> tags;
+        private int maxRunning = Integer.MAX_VALUE;
+        private int reserved = 0;
+        private int running = 0;
+
+        public Bulkhead(Set<String> tags) {
+            this.tags = tags;
+        }
+
+        public boolean covers(Collection<String> taskTags) {
+            return taskTags.containsAll(tags);
+        }
+
+        public int unusedReserved() {
+            return Math.max(reserved - running, 0);
+        }
+
+    }
+
+    private final Object lock = new Object();
+    private volatile boolean enabled = false;
+    private volatile int outstanding = 0;
+    private int maxRunning = Integer.MAX_VALUE;
+    private int running = 0;
+    private Bulkhead[] bulkheads = EMPTY;
+    private final Map<TaskHandler<?, ?>, Bulkhead[]> permits = new HashMap<TaskHandler<?, ?>, Bulkhead[]>();
+    private final Set<AbstractTaskHandler<?, ?>> pending = new LinkedHashSet<AbstractTaskHandler<?, ?>>();
+
+    /**
+     * Returns the maximum number of tasks dispatched at once.
+     *
+     * @return the limit.
+     */
+    public int getMaxRunning() {
+        synchronized (lock) {
+            return maxRunning;
+        }
+    }
+
+    /**
+     * Sets the maximum number of tasks dispatched at once. Reserved slots
+     * are taken from this limit.
+     *
+     * @param maxRunning the limit.
+     */
+    public void setMaxRunning(int maxRunning) {
+        if (maxRunning <= 0) {
+            throw new IllegalArgumentException();
+        }
+        List<AbstractTaskHandler<?, ?>> ready;
+        synchronized (lock) {
+            this.maxRunning = maxRunning;
+            updateEnabled();
+            ready = drain();
+            updateOutstanding();
+        }
+        dispatch(ready);
+    }
+
+    public int getMaxRunning(Set<String> tags) {
+        synchronized (lock) {
+            Bulkhead bulkhead = find(tags);
+            return bulkhead == null ? Integer.MAX_VALUE : bulkhead.maxRunning;
+        }
+    }
+
+    /**
+     * Caps the number of running tasks labeled by all of the specified tags.
+     *
+     * @param tags       the tags.
+     * @param maxRunning the limit or {@link Integer#MAX_VALUE} to remove it.
+     */
+    public void setMaxRunning(Set<String> tags, int maxRunning) {
+        if (maxRunning <= 0) {
+            throw new IllegalArgumentException();
+        }
+        List<AbstractTaskHandler<?, ?>> ready;
+        synchronized (lock) {
+            obtain(tags).maxRunning = maxRunning;
+            cleanUp();
+            ready = drain();
+            updateOutstanding();
+        }
+        dispatch(ready);
+    }
+
+    public int getReserved(Set<String> tags) {
+        synchronized (lock) {
+            Bulkhead bulkhead = find(tags);
+            return bulkhead == null ? 0 : bulkhead.reserved;
+        }
+    }
+
+    /**
+     * Reserves slots of the executor-wide limit for tasks labeled by all of
+     * the specified tags.
+     *
+     * @param tags     the tags.
+     * @param reserved the number of slots or zero to remove the reservation.
+     */
+    public void setReserved(Set<String> tags, int reserved) {
+        if (reserved < 0) {
+            throw new IllegalArgumentException();
+        }
+        List<AbstractTaskHandler<?, ?>> ready;
+        synchronized (lock) {
+            obtain(tags).reserved = reserved;
+            cleanUp();
+            ready = drain();
+            updateOutstanding();
+        }
+        dispatch(ready);
+    }
+
+    /**
+     * Dispatches the queued task to a working thread if the limits allow it,
+     * otherwise keeps it waiting.
+     *
+     * @param handler the task handler.
+     */
+    public void schedule(AbstractTaskHandler<?, ?> handler) {
+        if (enabled) {
+            synchronized (lock) {
+                // an interrupted task is dispatched to call its listeners
+                if (enabled && !handler.isInterrupted() && !tryAcquire(handler)) {
+                    pending.add(handler);
+                    updateOutstanding();
+                    return;
+                }
+                updateOutstanding();
+            }
+        }
+        handler.dispatch();
+    }
+
+    /**
+     * Releases a slot of the task removed from the queue and dispatches
+     * waiting tasks which can take it.
+     *
+     * @param handler the task handler.
+     */
+    public void release(AbstractTaskHandler<?, ?> handler) {
+        if (!enabled && outstanding == 0) {
+            return;
+        }
+        List<AbstractTaskHandler<?, ?>> ready;
+        synchronized (lock) {
+            if (pending.remove(handler)) {
+                // the task is canceled while waiting
+                ready = Collections.<AbstractTaskHandler<?, ?>>singletonList(handler);
+            } else {
+                Bulkhead[] taken = permits.remove(handler);
+                if (taken == null) {
+                    return;
+                }
+                running--;
+                for (Bulkhead bulkhead : taken) {
+                    bulkhead.running--;
+                }
+                ready = drain();
+            }
+            updateOutstanding();
+        }
+        dispatch(ready);
+    }
+
+    private boolean tryAcquire(AbstractTaskHandler<?, ?> handler) {
+        Set<String> tags = handler.owner().tags();
+        int free = maxRunning - running;
+        List<Bulkhead> covering = new ArrayList<Bulkhead>(bulkheads.length);
+        for (Bulkhead bulkhead : bulkheads) {
+            if (bulkhead.covers(tags)) {
+                if (bulkhead.running >= bulkhead.maxRunning) {
+                    return false;
+                }
+                covering.add(bulkhead);
+            } else {
+                // slots reserved for other tasks can't be taken
+                free -= bulkhead.unusedReserved();
+            }
+        }
+        if (free <= 0) {
+            return false;
+        }
+
+        running++;
+        for (Bulkhead bulkhead : covering) {
+            bulkhead.running++;
+        }
+        permits.put(handler, covering.toArray(new Bulkhead[covering.size()]));
+        return true;
+    }
+
+    private List<AbstractTaskHandler<?, ?>> drain() {
+        List<AbstractTaskHandler<?, ?>> ready = new ArrayList<AbstractTaskHandler<?, ?>>();
+        for (Iterator<AbstractTaskHandler<?, ?>> iterator = pending.iterator(); iterator.hasNext(); ) {
+            if (running >= maxRunning) {
+                break;
+            }
+            AbstractTaskHandler<?, ?> handler = iterator.next();
+            if (handler.isInterrupted() || tryAcquire(handler)) {
+                iterator.remove();
+                ready.add(handler);
+            }
+        }
+        return ready;
+    }
+
+    private void dispatch(List<AbstractTaskHandler<?, ?>> ready) {
+        for (AbstractTaskHandler<?, ?> handler : ready) {
+            handler.dispatch();
+        }
+    }
+
+    private Bulkhead find(Set<String> tags) {
+        for (Bulkhead bulkhead : bulkheads) {
+            if (bulkhead.tags.equals(tags)) {
+                return bulkhead;
+            }
+        }
+        return null;
+    }
+
+    private Bulkhead obtain(Set<String> tags) {
+        Bulkhead bulkhead = find(tags);
+        if (bulkhead == null) {
+            bulkhead = new Bulkhead(Collections.unmodifiableSet(new HashSet<String>(tags)));
+            bulkheads = Arrays.copyOf(bulkheads, bulkheads.length + 1);
+            bulkheads[bulkheads.length - 1] = bulkhead;
+        }
+        return bulkhead;
+    }
+
+    private void cleanUp() {
+        // bulkheads without limits are removed unless they have running tasks
+        List<Bulkhead> list = new ArrayList<Bulkhead>(bulkheads.length);
+        for (Bulkhead bulkhead : bulkheads) {
+            if (bulkhead.maxRunning != Integer.MAX_VALUE || bulkhead.reserved != 0 || bulkhead.running != 0) {
+                list.add(bulkhead);
+            }
+        }
+        bulkheads = list.toArray(new Bulkhead[list.size()]);
+        updateEnabled();
+    }
+
+    private void updateOutstanding() {
+        outstanding = permits.size() + pending.size();
+    }
+
+    private void updateEnabled() {
+        enabled = maxRunning != Integer.MAX_VALUE || bulkheads.length > 0;
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2013 Noveo Group
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * Except as contained in this notice, the name(s) of the above copyright holders
+ * shall not be used in advertising or otherwise to promote the sale, use or
+ * other dealings in this Software without prior written authorization.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.noveogroup.android.task;
+
+/**
+ * A token to observe cancellation of a running task, see
+ * {@link TaskEnvironment#cancellationToken()}.
+ * <p/>
+ * A task blocked in I/O can register callbacks releasing its resources,
+ * for example closing a socket or interrupting a sub-request. The callbacks
+ * are called by the thread interrupting the task right after
+ * {@link TaskHandler#interrupt()} is called, each of them once. A callback
+ * registered after the task has been interrupted is called at once by
+ * the registering thread. Callbacks are forgotten when the task is
+ * destroyed.
+ */
+public interface CancellationToken {
+
+    /**
+     * Checks if the task has been interrupted. The check doesn't take any
+     * lock, so it can be used in tight loops.
+     *
+     * @return {@code true} if the task has been interrupted.
+     */
+    public boolean isCancelled();
+
+    /**
+     * Registers a callback to be called when the task is interrupted.
+     *
+     * @param callback the callback.
+     */
+    public void register(Interruptible callback);
+
+    /**
+     * Unregisters the callback, for example when the resource it releases
+     * is not used anymore.
+     *
+     * @param callback the callback.
+     * @return {@code true} if the callback has been registered and not
+     * called yet.
+     */
+    public boolean unregister(Interruptible callback);
+
+}
@@ -0,0 +1,494 @@
+/*
+ * Copyright (c) 2013 Noveo Group
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * Except as contained in this notice, the name(s) of the above copyright holders
+ * shall not be used in advertising or otherwise to promote the sale, use or
+ * other dealings in this Software without prior written authorization.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.noveogroup.android.task;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * {@link CoalescedExecution} shares one execution of a task between all
+ * requests having the same key while the execution is in flight.
+ * <p/>
+ * The execution is listened by this object, which records the callbacks
+ * and replays them to subscribers. Each subscriber has its own handler and
+ * listeners, it receives all the callbacks in the same order even if it
+ * subscribes in the middle of the execution. When the execution is destroyed
+ * it is removed from the map of in-flight executions, so the next request
+ * having the same key starts a new one.
+ * <p/>
+ * Subscribers are counted. An interrupted subscriber is detached from the
+ * execution and canceled by itself, the execution is interrupted only when
+ * the last of its subscribers is. Such an execution is left to the next
+ * request having the same key, which starts a new one.
+ *
+ * @param <Input>  type of task input.
+ * @param <Output> type of task output.
+ */
+final class CoalescedExecution<Input, Output> extends TaskListener.Default<Input, Output> {
+
+    private enum Event {
+        CREATE, QUEUE_INSERT, START, FINISH, CANCELED, FAILED, SUCCEED, QUEUE_REMOVE, DESTROY
+    }
+
+    private final ConcurrentMap<Object, CoalescedExecution<?, ?>> executions;
+    private final Object key;
+    private final List<Event> events = new ArrayList<Event>();
+    private final List<Subscriber> subscribers = new ArrayList<Subscriber>();
+    private volatile AbstractTaskHandler<Input, Output> handler;
+    private int remaining = 0;
+    private boolean abandoned = false;
+    private boolean finished = false;
+    private boolean closed = false;
+
+    /**
+     * Creates new execution. It should be bound to the handler of the task
+     * before it is put into the map of in-flight executions.
+     *
+     * @param executions the map of in-flight executions.
+     * @param key        the key of the execution.
+     */
+    public CoalescedExecution(ConcurrentMap<Object, CoalescedExecution<?, ?>> executions, Object key) {
+        this.executions = executions;
+        this.key = key;
+    }
+
+    public void bind(AbstractTaskHandler<Input, Output> handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Subscribes to the execution.
+     *
+     * @param owner         the owner task set of the subscriber.
+     * @param taskListeners the listeners of the subscriber.
+     * @return the handler of the subscriber or {@code null} if the execution
+     * has been already destroyed or abandoned by its subscribers.
+     */
+    public TaskHandler<Input, Output> subscribe(TaskSet owner, List<TaskListener<Input, Output>> taskListeners) {
+        Subscriber subscriber;
+        int count;
+        synchronized (this) {
+            if (closed || abandoned) {
+                return null;
+            }
+            subscriber = new Subscriber(owner, taskListeners);
+            subscribers.add(subscriber);
+            remaining++;
+            count = events.size();
+        }
+        subscriber.deliver(count);
+        return subscriber;
+    }
+
+    /**
+     * Interrupts the subscriber. The last subscriber interrupts the execution,
+     * any other one is detached and canceled.
+     */
+    private void unsubscribe(Subscriber subscriber) {
+        int count;
+        List<Event> tail;
+        synchronized (this) {
+            if (subscriber.interrupted || finished) {
+                // the execution can't be canceled any more
+                return;
+            }
+            subscriber.interrupted = true;
+            if (--remaining == 0) {
+                abandoned = true;
+                count = 0;
+                tail = null;
+            } else {
+                subscribers.remove(subscriber);
+                count = events.size();
+                tail = cancelEvents(count == 0 ? null : events.get(count - 1));
+            }
+        }
+        if (tail == null) {
+            handler.interrupt();
+        } else {
+            subscriber.detach(count, tail);
+        }
+    }
+
+    /**
+     * Returns the events completing a canceled task the same way as
+     * {@link AbstractTaskHandler} does.
+     */
+    private static List<Event> cancelEvents(Event last) {
+        if (last == null) {
+            return new LinkedList<Event>(Arrays.asList(Event.CREATE, Event.CANCELED, Event.DESTROY));
+        }
+        switch (last) {
+            case CREATE:
+                return new LinkedList<Event>(Arrays.asList(Event.CANCELED, Event.DESTROY));
+            case QUEUE_INSERT:
+                return new LinkedList<Event>(Arrays.asList(Event.CANCELED, Event.QUEUE_REMOVE, Event.DESTROY));
+            case START:
+                return new LinkedList<Event>(Arrays.asList(Event.FINISH, Event.CANCELED, Event.QUEUE_REMOVE, Event.DESTROY));
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
+    private synchronized Event event(int index) {
+        return events.get(index);
+    }
+
+    private void fire(Event event) {
+        List<Subscriber> list;
+        int count;
+        synchronized (this) {
+            events.add(event);
+            count = events.size();
+            if (event == Event.FINISH || event == Event.CANCELED) {
+                finished = true;
+            }
+            if (event == Event.DESTROY) {
+                closed = true;
+                executions.remove(key, this);
+            }
+            list = new ArrayList<Subscriber>(subscribers);
+        }
+        for (Subscriber subscriber : list) {
+            subscriber.deliver(count);
+        }
+    }
+
+    @Override
+    public void onCreate(TaskHandler<Input, Output> handler) {
+        fire(Event.CREATE);
+    }
+
+    @Override
+    public void onQueueInsert(TaskHandler<Input, Output> handler) {
+        fire(Event.QUEUE_INSERT);
+    }
+
+    @Override
+    public void onStart(TaskHandler<Input, Output> handler) {
+        fire(Event.START);
+    }
+
+    @Override
+    public void onFinish(TaskHandler<Input, Output> handler) {
+        fire(Event.FINISH);
+    }
+
+    @Override
+    public void onCanceled(TaskHandler<Input, Output> handler) {
+        fire(Event.CANCELED);
+    }
+
+    @Override
+    public void onFailed(TaskHandler<Input, Output> handler) {
+        fire(Event.FAILED);
+    }
+
+    @Override
+    public void onSucceed(TaskHandler<Input, Output> handler) {
+        fire(Event.SUCCEED);
+    }
+
+    @Override
+    public void onQueueRemove(TaskHandler<Input, Output> handler) {
+        fire(Event.QUEUE_REMOVE);
+    }
+
+    @Override
+    public void onDestroy(TaskHandler<Input, Output> handler) {
+        fire(Event.DESTROY);
+    }
+
+    /**
+     * A handler bound to the shared execution. Everything but listeners and
+     * the owner task set is delegated to the handler of the execution until
+     * the subscriber is detached.
+     * <p/>
+     * Subscribers aren't put to the queue of the executor, so they can't be
+     * found by {@link TaskSet} queries. The owner task set contains the shared
+     * execution instead.
+     */
+    private final class Subscriber implements TaskHandler<Input, Output> {
+
+        private final TaskSet owner;
+        private final List<TaskListener<Input, Output>> listeners;
+        private final CountDownLatch destroyed = new CountDownLatch(1);
+        private boolean interrupted = false; // guarded by the execution
+        private volatile boolean detached = false;
+        private int delivered = 0;
+        private int available = 0;
+        private List<Event> tail = null;
+        private boolean delivering = false;
+        private List<TaskCallback<Input, Output>> callbacks = null;
+        private boolean completed = false;
+
+        public Subscriber(TaskSet owner, List<TaskListener<Input, Output>> listeners) {
+            this.owner = owner;
+            this.listeners = new ArrayList<TaskListener<Input, Output>>(listeners);
+        }
+
+        /**
+         * Calls listeners for the events which haven't been delivered yet.
+         * Events are delivered one by one even if they are recorded by one
+         * thread and replayed by another.
+         */
+        public void deliver(int count) {
+            synchronized (this) {
+                // a detached subscriber doesn't follow the execution
+                if (!detached && available < count) {
+                    available = count;
+                }
+                if (delivering) {
+                    return;
+                }
+                delivering = true;
+            }
+            drain();
+        }
+
+        /**
+         * Detaches the subscriber from the execution and cancels it.
+         */
+        public void detach(int count, List<Event> events) {
+            synchronized (this) {
+                detached = true;
+                if (available < count) {
+                    available = count;
+                }
+                tail = events;
+                if (delivering) {
+                    return;
+                }
+                delivering = true;
+            }
+            drain();
+        }
+
+        private void drain() {
+            // listeners are called without holding the monitor,
+            // the thread having started delivery delivers all the events
+            while (true) {
+                Event event;
+                synchronized (this) {
+                    if (delivered < available) {
+                        event = event(delivered++);
+                    } else if (tail != null && !tail.isEmpty()) {
+                        event = tail.remove(0);
+                    } else {
+                        delivering = false;
+                        return;
+                    }
+                }
+                call(event);
+                if (event == Event.DESTROY) {
+                    complete();
+                }
+            }
+        }
+
+        private void complete() {
+            destroyed.countDown();
+
+            List<TaskCallback<Input, Output>> list;
+            synchronized (this) {
+                completed = true;
+                list = callbacks;
+                callbacks = null;
+            }
+            if (list != null) {
+                for (TaskCallback<Input, Output> callback : list) {
+                    callCallback(callback);
+                }
+            }
+        }
+
+        private void callCallback(TaskCallback<Input, Output> callback) {
+            try {
+                callback.onComplete(this);
+            } catch (RuntimeException e) {
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+
+        private void call(Event event) {
+            boolean direct = event == Event.CREATE || event == Event.QUEUE_INSERT || event == Event.START;
+            for (int i = 0; i < listeners.size(); i++) {
+                TaskListener<Input, Output> listener = listeners.get(direct ? i : listeners.size() - 1 - i);
+                try {
+                    call(listener, event);
+                } catch (Throwable throwable) {
+                    ErrorHandler errorHandler = executor().getErrorHandler();
+                    if (errorHandler != null) {
+                        errorHandler.listenerError(listener, throwable);
+                    }
+                }
+            }
+        }
+
+        private void call(TaskListener<Input, Output> listener, Event event) {
+            switch (event) {
+                case CREATE:
+                    listener.onCreate(this);
+                    break;
+                case QUEUE_INSERT:
+                    listener.onQueueInsert(this);
+                    break;
+                case START:
+                    listener.onStart(this);
+                    break;
+                case FINISH:
+                    listener.onFinish(this);
+                    break;
+                case CANCELED:
+                    listener.onCanceled(this);
+                    break;
+                case FAILED:
+                    listener.onFailed(this);
+                    break;
+                case SUCCEED:
+                    listener.onSucceed(this);
+                    break;
+                case QUEUE_REMOVE:
+                    listener.onQueueRemove(this);
+                    break;
+                case DESTROY:
+                    listener.onDestroy(this);
+                    break;
+                default:
+                    throw new IllegalStateException();
+            }
+        }
+
+        @Override
+        public TaskExecutor executor() {
+            return handler.executor();
+        }
+
+        @Override
+        public TaskSet owner() {
+            return owner;
+        }
+
+        @Override
+        public Object lock() {
+            return handler.lock();
+        }
+
+        @Override
+        public Task<Input, Output> task() {
+            return handler.task();
+        }
+
+        @Override
+        public Pack<Input, Output> vars() {
+            return handler.vars();
+        }
+
+        @Override
+        public State getState() {
+            return detached ? State.CANCELED : handler.getState();
+        }
+
+        @Override
+        public Throwable getThrowable() {
+            return detached ? null : handler.getThrowable();
+        }
+
+        @Override
+        public boolean isInterrupted() {
+            return detached || handler.isInterrupted();
+        }
+
+        @Override
+        public void interrupt() {
+            unsubscribe(this);
+        }
+
+        @Override
+        public void join() throws InterruptedException {
+            join(0);
+        }
+
+        @Override
+        public boolean join(long timeout) throws InterruptedException {
+            if (timeout < 0) {
+                throw new IllegalArgumentException();
+            }
+
+            if (destroyed.getCount() == 0) {
+                return true;
+            }
+
+            // the subscriber is destroyed after the execution or earlier
+            // if it is detached, a running task waits for it the same way
+            return handler.await(destroyed, timeout);
+        }
+
+        @Override
+        public Output get() throws Throwable {
+            join();
+            if (getState() == State.FAILED) {
+                throw getThrowable();
+            } else {
+                return detached ? null : handler.vars().output();
+            }
+        }
+
+        @Override
+        public void onComplete(TaskCallback<Input, Output> callback) {
+            synchronized (this) {
+                if (!completed) {
+                    if (callbacks == null) {
+                        callbacks = new ArrayList<TaskCallback<Input, Output>>(1);
+                    }
+                    callbacks.add(callback);
+                    return;
+                }
+            }
+            callCallback(callback);
+        }
+
+        @Override
+        public <T> TaskHandler<Output, T> thenExecute(Task<Output, T> task, String... tags) {
+            return thenExecute(task, Collections.<TaskListener<Output, T>>emptyList(), Arrays.asList(tags));
+        }
+
+        @Override
+        public <T> TaskHandler<Output, T> thenExecute(Task<Output, T> task, List<TaskListener<Output, T>> taskListeners, Collection<String> tags) {
+            return executor().executeAfter(this, task, new Pack<Output, T>(), taskListeners, tags);
+        }
+
+    }
+
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2013 Noveo Group
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * Except as contained in this notice, the name(s) of the above copyright holders
+ * shall not be used in advertising or otherwise to promote the sale, use or
+ * other dealings in this Software without prior written authorization.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.noveogroup.android.task;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link Compensation} keeps a bounded pool of working threads progressing
+ * while some of its threads are blocked by running tasks waiting for other
+ * tasks.
+ * <p/>
+ * A running task joining a task which has been dispatched but not taken by
+ * any working thread yet executes it by itself. If the joined task cannot
+ * be executed this way the joining thread is blocked and a temporary
+ * compensation thread is created by the thread factory instead of it.
+ * A compensation thread takes the tasks dispatched before it has started
+ * from the queue of the executor once and then waits for the tasks
+ * dispatched while it works. It exits as soon as blocked threads are
+ * resumed. The number of compensation threads is bounded.
+ */
+final class Compensation {
+
+    private static final Collection<TaskHandler.State> CREATED_ONLY = Collections.singleton(TaskHandler.State.CREATED);
+    private static final Collection<String> ALL_TAGS = Collections.emptySet();
+
+    private final TaskRegistry queue;
+    private final ThreadFactory threadFactory;
+    private volatile int maxThreads;
+
+    private final Queue<AbstractTaskHandler<?, ?>> dispatched = new ConcurrentLinkedQueue<AbstractTaskHandler<?, ?>>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private volatile int idleCount = 0;
+
+    private final AtomicInteger blocked = new AtomicInteger(0);
+    private final AtomicInteger active = new AtomicInteger(0);
+    private final AtomicLong inlineCount = new AtomicLong();
+    private final AtomicLong blockedCount = new AtomicLong();
+    private final AtomicLong compensationCount = new AtomicLong();
+
+    public Compensation(TaskRegistry queue, ThreadFactory threadFactory, int maxThreads) {
+        this.queue = queue;
+        this.threadFactory = threadFactory;
+        this.maxThreads = maxThreads;
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    public void setMaxThreads(int maxThreads) {
+        if (maxThreads < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.maxThreads = maxThreads;
+    }
+
+    public long getInlineCount() {
+        return inlineCount.get();
+    }
+
+    public long getBlockedCount() {
+        return blockedCount.get();
+    }
+
+    public long getCompensationCount() {
+        return compensationCount.get();
+    }
+
+    /**
+     * Called when a running task executes the joined task by itself.
+     */
+    public void onJoinInline() {
+        inlineCount.incrementAndGet();
+    }
+
+    /**
+     * Called before a running task blocks waiting for another task.
+     */
+    public void onJoinBlocked() {
+        blockedCount.incrementAndGet();
+        int count = blocked.incrementAndGet();
+        while (true) {
+            int current = active.get();
+            if (current >= count || current >= maxThreads) {
+                return;
+            }
+            if (active.compareAndSet(current, current + 1)) {
+                compensationCount.incrementAndGet();
+                startThread();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Called when a blocked task is resumed.
+     */
+    public void onJoinResumed() {
+        blocked.decrementAndGet();
+        // idle compensation threads should check if they are still needed
+        signal(true);
+    }
+
+    /**
+     * Called when a task is dispatched to a working thread.
+     *
+     * @param handler the dispatched task.
+     */
+    public void onDispatched(AbstractTaskHandler<?, ?> handler) {
+        // tasks are tracked only while compensation threads are working
+        if (active.get() > 0) {
+            dispatched.offer(handler);
+            signal(false);
+        }
+    }
+
+    private void signal(boolean all) {
+        // compensation threads wait rarely so don't take the lock in vain
+        if (idleCount > 0) {
+            lock.lock();
+            try {
+                if (all) {
+                    changed.signalAll();
+                } else {
+                    changed.signal();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void startThread() {
+        Thread thread = null;
+        try {
+            thread = threadFactory.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    work();
+                }
+            });
+        } finally {
+            if (thread == null) {
+                exit();
+            }
+        }
+        if (thread != null) {
+            thread.start();
+        }
+    }
+
+    private void work() {
+        boolean exited = false;
+        try {
+            // the tasks dispatched before are taken from the queue of the executor
+            Iterator<TaskHandler<?, ?>> iterator = queue.select(ALL_TAGS, CREATED_ONLY);
+            while (iterator.hasNext() && !isRedundant()) {
+                TaskHandler<?, ?> handler = iterator.next();
+                if (handler instanceof AbstractTaskHandler) {
+                    runDispatched((AbstractTaskHandler<?, ?>) handler);
+                }
+            }
+            while (!(exited = tryExit())) {
+                AbstractTaskHandler<?, ?> handler = dispatched.poll();
+                if (handler != null) {
+                    runDispatched(handler);
+                } else {
+                    await();
+                }
+            }
+        } finally {
+            if (!exited) {
+                exit();
+            }
+        }
+    }
+
+    private boolean isRedundant() {
+        // the blocked threads are resumed, so this one is not needed any more
+        return active.get() > blocked.get();
+    }
+
+    private boolean tryExit() {
+        while (true) {
+            int current = active.get();
+            if (current <= blocked.get()) {
+                return false;
+            }
+            if (active.compareAndSet(current, current - 1)) {
+                if (current == 1) {
+                    // nobody takes the tracked tasks, the working threads do it
+                    dispatched.clear();
+                }
+                return true;
+            }
+        }
+    }
+
+    private void exit() {
+        if (active.decrementAndGet() == 0) {
+            dispatched.clear();
+        }
+    }
+
+    private void await() {
+        lock.lock();
+        try {
+            idleCount++;
+            try {
+                while (dispatched.isEmpty() && !isRedundant()) {
+                    changed.awaitUninterruptibly();
+                }
+            } finally {
+                idleCount--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void runDispatched(AbstractTaskHandler<?, ?> handler) {
+        try {
+            handler.runDispatched();
+        } catch (RuntimeException e) {
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+        }
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2013 Noveo Group
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * Except as contained in this notice, the name(s) of the above copyright holders
+ * shall not be used in advertising or otherwise to promote the sale, use or
+ * other dealings in this Software without prior written authorization.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.noveogroup.android.task;
+
+/**
+ * Completes a task which has deferred its completion by
+ * {@link TaskEnvironment#defer()}. The task stays
+ * {@link TaskHandler.State#STARTED} without holding a working thread until
+ * one of the methods of its completion is called.
+ * <p/>
+ * The methods can be called by any thread and only the first call takes
+ * effect. Listeners of the task are called by the completing thread.
+ *
+ * @param <Output> type of task output.
+ */
+public interface Completion<Output> {
+
+    /**
+     * Completes the task successfully.
+     *
+     * @param output the output of the task.
+     * @return {@code true} if the task has been completed by this call.
+     */
+    public boolean succeed(Output output);
+
+    /**
+     * Completes the task with a failure.
+     *
+     * @param throwable the failure.
+     * @return {@code true} if the task has been completed by this call.
+     */
+    public boolean fail(Throwable throwable);
+
+    /**
+     * Sets an object to notify when the task is interrupted while its
+     * completion is pending. If the task has been already interrupted
+     * the object is notified at once.
+     *
+     * @param interruptible the object to notify.
+     */
+    public void setInterruptible(Interruptible interruptible);
+
+}
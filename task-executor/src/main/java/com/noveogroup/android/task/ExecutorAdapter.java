@@ -3,16 +3,18 @@ package com.noveogroup.android.task;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 public class ExecutorAdapter extends AbstractExecutorService {
 
-    private static class TaskRunnable implements Task<Object, Object> {
+    static class TaskRunnable implements Task<Object, Object> {
 
         private final Runnable runnable;
 
-        private TaskRunnable(Runnable runnable) {
+        TaskRunnable(Runnable runnable) {
             this.runnable = runnable;
         }
 
@@ -28,6 +30,29 @@ public class ExecutorAdapter extends AbstractExecutorService {
 
     }
 
+    static class TaskCallable<V> implements Task<Object, V> {
+
+        private final Callable<V> callable;
+
+        TaskCallable(Callable<V> callable) {
+            this.callable = callable;
+        }
+
+        /**
+         * Returns a runnable calling the callable, so the callable can be
+         * returned by {@link #shutdownNow()}.
+         */
+        public Runnable getRunnable() {
+            return new FutureTask<V>(callable);
+        }
+
+        @Override
+        public V run(Object input, TaskEnvironment<Object, V> env) throws Throwable {
+            return callable.call();
+        }
+
+    }
+
     private final TaskExecutor executor;
     private volatile boolean shutdown = false;
 
@@ -58,10 +83,14 @@ public class ExecutorAdapter extends AbstractExecutorService {
         synchronized (executor.lock()) {
             List<Runnable> list = new ArrayList<Runnable>();
             for (TaskHandler<?, ?> handler : executor.queue()) {
-                if (handler.getState() != TaskHandler.State.STARTED) {
+                if (handler.getState() != TaskHandler.State.STARTED && handler.task() instanceof TaskRunnable) {
                     TaskRunnable task = (TaskRunnable) handler.task();
                     list.add(task.getRunnable());
                     handler.interrupt();
+                } else if (handler.getState() != TaskHandler.State.STARTED && handler.task() instanceof TaskCallable) {
+                    TaskCallable<?> task = (TaskCallable<?>) handler.task();
+                    list.add(task.getRunnable());
+                    handler.interrupt();
                 }
             }
             shutdown = true;
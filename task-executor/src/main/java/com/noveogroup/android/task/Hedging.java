@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2013 Noveo Group
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * Except as contained in this notice, the name(s) of the above copyright holders
+ * shall not be used in advertising or otherwise to promote the sale, use or
+ * other dealings in this Software without prior written authorization.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.noveogroup.android.task;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * {@link Hedging} keeps policies of hedged execution of tasks of
+ * a {@link TaskExecutor}.
+ * <p/>
+ * A policy is attached to a set of tags and covers every task labeled by
+ * all of them. It observes run times of the tasks it covers and estimates
+ * the given percentile of them. A task still running after that time is
+ * hedged: its duplicate is executed and the first one to succeed wins.
+ * <p/>
+ * When no policies are attached tasks are executed without any locking.
+ */
+final class Hedging {
+
+    private static final Policy[] EMPTY = new Policy[0];
+
+    /**
+     * The number of run times kept by a policy.
+     */
+    static final int SAMPLES = 128;
+
+    /**
+     * The number of run times a policy should observe before tasks are
+     * hedged.
+     */
+    static final int MIN_SAMPLES = 16;
+
+    /**
+     * A policy of hedged execution of tasks labeled by a set of tags.
+     */
+    static final class Policy {
+
+        private final Set<String> tags;
+        private final double percentile;
+        // the latest run times in nanoseconds in a ring buffer
+        private final long[] samples = new long[SAMPLES];
+        private int count = 0;
+
+        public Policy(Set<String> tags, double percentile) {
+            this.tags = tags;
+            this.percentile = percentile;
+        }
+
+        public boolean covers(Collection<String> taskTags) {
+            return taskTags.containsAll(tags);
+        }
+
+        /**
+         * Records the run time of a task.
+         *
+         * @param time the run time in nanoseconds.
+         */
+        public synchronized void record(long time) {
+            samples[count % SAMPLES] = time;
+            count++;
+        }
+
+        /**
+         * Returns the time after which a running task should be hedged.
+         *
+         * @return the time in nanoseconds or {@code -1} if too few run times
+         * have been observed.
+         */
+        public long getDelay() {
+            long[] sorted;
+            synchronized (this) {
+                if (count < MIN_SAMPLES) {
+                    return -1;
+                }
+                sorted = Arrays.copyOf(samples, Math.min(count, SAMPLES));
+            }
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+        }
+
+    }
+
+    private final Object lock = new Object();
+    private volatile Policy[] policies = EMPTY;
+
+    /**
+     * Attaches a policy to the specified tags replacing the previous one.
+     * The policy observes no run times when it is attached.
+     *
+     * @param tags       the tags.
+     * @param percentile the percentile of run times, greater than 0 and
+     *                   not greater than 1.
+     */
+    public void setHedging(Set<String> tags, double percentile) {
+        if (!(percentile > 0 && percentile <= 1)) {
+            throw new IllegalArgumentException();
+        }
+        Policy policy = new Policy(Collections.unmodifiableSet(new HashSet<String>(tags)), percentile);
+        synchronized (lock) {
+            List<Policy> list = without(tags);
+            list.add(policy);
+            policies = list.toArray(new Policy[list.size()]);
+        }
+    }
+
+    /**
+     * Detaches a policy from the specified tags.
+     *
+     * @param tags the tags.
+     */
+    public void removeHedging(Set<String> tags) {
+        synchronized (lock) {
+            List<Policy> list = without(tags);
+            policies = list.toArray(new Policy[list.size()]);
+        }
+    }
+
+    /**
+     * Returns the policy attached to the specified tags.
+     *
+     * @param tags the tags.
+     * @return the policy or {@code null} if there is no policy.
+     */
+    public Policy get(Set<String> tags) {
+        for (Policy policy : policies) {
+            if (policy.tags.equals(tags)) {
+                return policy;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds a policy covering a task labeled by the specified tags. If there
+     * are several ones the most recently attached policy is used.
+     *
+     * @param tags the tags of the task.
+     * @return the policy or {@code null} if the task is not hedged.
+     */
+    public Policy find(Collection<String> tags) {
+        Policy[] policies = this.policies;
+        for (int i = policies.length - 1; i >= 0; i--) {
+            if (policies[i].covers(tags)) {
+                return policies[i];
+            }
+        }
+        return null;
+    }
+
+    private List<Policy> without(Set<String> tags) {
+        List<Policy> list = new ArrayList<Policy>(Arrays.asList(policies));
+        for (int i = list.size() - 1; i >= 0; i--) {
+            if (list.get(i).tags.equals(tags)) {
+                list.remove(i);
+            }
+        }
+        return list;
+    }
+
+}
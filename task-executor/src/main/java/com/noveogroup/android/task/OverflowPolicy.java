@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2013 Noveo Group
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * Except as contained in this notice, the name(s) of the above copyright holders
+ * shall not be used in advertising or otherwise to promote the sale, use or
+ * other dealings in this Software without prior written authorization.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.noveogroup.android.task;
+
+/**
+ * Defines what {@link SimpleTaskExecutor} does with a new task when
+ * the number of its queued and running tasks has reached the capacity.
+ *
+ * @see SimpleTaskExecutor#setCapacity(int)
+ * @see SimpleTaskExecutor#setOverflowPolicy(OverflowPolicy)
+ */
+public enum OverflowPolicy {
+
+    /**
+     * The thread executing a new task is blocked until some task is
+     * finished. If it is waiting longer than the timeout
+     * (see {@link SimpleTaskExecutor#setBlockTimeout(long)}) the task is
+     * rejected with {@link TaskRejectedException}.
+     * <p/>
+     * Tasks shouldn't execute sub-tasks with this policy: if all of running
+     * tasks wait for capacity no one of them can release it.
+     */
+    BLOCK,
+
+    /**
+     * A new task is rejected with {@link TaskRejectedException}.
+     */
+    REJECT,
+
+    /**
+     * A new task is executed in the thread which has requested
+     * the execution. The task is counted against the capacity, but it
+     * can exceed it.
+     */
+    CALLER_RUNS,
+
+    /**
+     * The oldest task which is labeled by all of the tags of a new task
+     * and hasn't been started yet is canceled to free capacity. Its
+     * {@link TaskHandler#getThrowable()} returns
+     * {@link TaskRejectedException}. If there is no such task the new one
+     * is rejected.
+     */
+    DROP_OLDEST
+
+}
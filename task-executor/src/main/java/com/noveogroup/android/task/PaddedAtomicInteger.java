@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2013 Noveo Group
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * Except as contained in this notice, the name(s) of the above copyright holders
+ * shall not be used in advertising or otherwise to promote the sale, use or
+ * other dealings in this Software without prior written authorization.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.noveogroup.android.task;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * The padding preceding the value of {@link PaddedAtomicInteger}.
+ */
+abstract class LeftIntegerPadding {
+
+    @SuppressWarnings("unused")
+    protected long p1, p2, p3, p4, p5, p6, p7;
+
+}
+
+/**
+ * The value of {@link PaddedAtomicInteger}. Fields of a superclass are laid
+ * out before fields of its subclasses, so the value lies between paddings.
+ */
+abstract class IntegerValue extends LeftIntegerPadding {
+
+    protected volatile int value;
+
+}
+
+/**
+ * {@link PaddedAtomicInteger} is an atomic integer padded on both sides up to
+ * the size of a cache line.
+ * <p/>
+ * Frequently updated atomic values allocated one after another may share
+ * a cache line, so a write to one of them invalidates reads of the others
+ * (false sharing). The padding keeps the value alone on its line.
+ */
+final class PaddedAtomicInteger extends IntegerValue {
+
+    private static final AtomicIntegerFieldUpdater<IntegerValue> VALUE =
+            AtomicIntegerFieldUpdater.newUpdater(IntegerValue.class, "value");
+
+    @SuppressWarnings("unused")
+    private long q1, q2, q3, q4, q5, q6, q7;
+
+    /**
+     * Creates a new padded atomic integer with the given initial value.
+     *
+     * @param initialValue the initial value.
+     */
+    public PaddedAtomicInteger(int initialValue) {
+        value = initialValue;
+    }
+
+    public int get() {
+        return value;
+    }
+
+    public void set(int newValue) {
+        value = newValue;
+    }
+
+    public boolean compareAndSet(int expect, int update) {
+        return VALUE.compareAndSet(this, expect, update);
+    }
+
+    public int incrementAndGet() {
+        return VALUE.incrementAndGet(this);
+    }
+
+    public int decrementAndGet() {
+        return VALUE.decrementAndGet(this);
+    }
+
+    @Override
+    public String toString() {
+        return Integer.toString(value);
+    }
+
+}
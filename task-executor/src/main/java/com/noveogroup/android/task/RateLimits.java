@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2013 Noveo Group
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * Except as contained in this notice, the name(s) of the above copyright holders
+ * shall not be used in advertising or otherwise to promote the sale, use or
+ * other dealings in this Software without prior written authorization.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.noveogroup.android.task;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RateLimits} keeps token buckets limiting how often tasks can be
+ * dispatched to working threads of a {@link TaskExecutor}.
+ * <p/>
+ * A token bucket is attached to a set of tags and covers every task labeled
+ * by all of them. The bucket is refilled with the given number of tokens per
+ * second up to its burst capacity. Dispatching a task takes a token. If there
+ * are no tokens the task reserves the next one to come and is dispatched
+ * when it comes, so tasks are delayed in FIFO order and no thread waits for
+ * tokens. A task canceled while it is delayed gives its tokens back.
+ * <p/>
+ * When no buckets are attached tasks are dispatched without any locking.
+ */
+final class RateLimits {
+
+    private static final TokenBucket[] EMPTY = new TokenBucket[0];
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * A token bucket of tasks labeled by a set of tags.
+     */
+    private static final class TokenBucket {
+
+        private final Set<String> tags;
+        private final double permitsPerSecond;
+        private final int burst;
+        // the number of tokens can be negative if there are reservations
+        private double tokens;
+        private long time;
+
+        public TokenBucket(Set<String> tags, double permitsPerSecond, int burst, long now) {
+            this.tags = tags;
+            this.permitsPerSecond = permitsPerSecond;
+            this.burst = burst;
+            this.tokens = burst;
+            this.time = now;
+        }
+
+        public boolean covers(Collection<String> taskTags) {
+            return taskTags.containsAll(tags);
+        }
+
+        private void refill(long now) {
+            if (now > time) {
+                tokens = Math.min(burst, tokens + (now - time) * permitsPerSecond / NANOS_PER_SECOND);
+                time = now;
+            }
+        }
+
+        private long delay(double tokens) {
+            return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) * NANOS_PER_SECOND / permitsPerSecond);
+        }
+
+        public synchronized long acquire(long now) {
+            refill(now);
+            long delay = delay(tokens);
+            tokens -= 1;
+            return delay;
+        }
+
+        public synchronized long getDelay(long now) {
+            refill(now);
+            return delay(tokens);
+        }
+
+        public synchronized void refund(long now) {
+            refill(now);
+            tokens = Math.min(burst, tokens + 1);
+        }
+
+    }
+
+    /**
+     * The tokens taken for a task.
+     */
+    public static final class Reservation {
+
+        private static final Reservation NONE = new Reservation(EMPTY, 0);
+
+        private final TokenBucket[] buckets;
+        private final long delay;
+
+        private Reservation(TokenBucket[] buckets, long delay) {
+            this.buckets = buckets;
+            this.delay = delay;
+        }
+
+        /**
+         * Returns the time to delay dispatching of the task.
+         *
+         * @return the time in nanoseconds.
+         */
+        public long getDelay() {
+            return delay;
+        }
+
+        /**
+         * Gives the tokens back to the buckets they were taken from. It
+         * should be called only if the task is not dispatched.
+         */
+        public void cancel() {
+            long now = System.nanoTime();
+            for (TokenBucket bucket : buckets) {
+                bucket.refund(now);
+            }
+        }
+
+    }
+
+    private final Object lock = new Object();
+    private volatile TokenBucket[] buckets = EMPTY;
+
+    /**
+     * Attaches a token bucket to the specified tags replacing the previous
+     * one. The bucket is full when it is attached.
+     *
+     * @param tags             the tags.
+     * @param permitsPerSecond the number of tokens coming per second.
+     * @param burst            the maximum number of tokens.
+     */
+    public void setRateLimit(Set<String> tags, double permitsPerSecond, int burst) {
+        if (!(permitsPerSecond > 0) || burst <= 0) {
+            throw new IllegalArgumentException();
+        }
+        TokenBucket bucket = new TokenBucket(Collections.unmodifiableSet(new HashSet<String>(tags)), permitsPerSecond, burst, System.nanoTime());
+        synchronized (lock) {
+            List<TokenBucket> list = without(tags);
+            list.add(bucket);
+            buckets = list.toArray(new TokenBucket[list.size()]);
+        }
+    }
+
+    /**
+     * Detaches a token bucket from the specified tags.
+     *
+     * @param tags the tags.
+     */
+    public void removeRateLimit(Set<String> tags) {
+        synchronized (lock) {
+            List<TokenBucket> list = without(tags);
+            buckets = list.toArray(new TokenBucket[list.size()]);
+        }
+    }
+
+    /**
+     * Takes a token from each bucket covering a task labeled by the specified
+     * tags.
+     *
+     * @param tags the tags of the task.
+     * @return the reservation of the tokens.
+     */
+    public Reservation acquire(Set<String> tags) {
+        TokenBucket[] buckets = this.buckets;
+        if (buckets.length == 0) {
+            return Reservation.NONE;
+        }
+        long now = System.nanoTime();
+        long delay = 0;
+        List<TokenBucket> covering = new ArrayList<TokenBucket>(buckets.length);
+        for (TokenBucket bucket : buckets) {
+            if (bucket.covers(tags)) {
+                delay = Math.max(delay, bucket.acquire(now));
+                covering.add(bucket);
+            }
+        }
+        return covering.isEmpty() ? Reservation.NONE : new Reservation(covering.toArray(new TokenBucket[covering.size()]), delay);
+    }
+
+    /**
+     * Returns the time a task labeled by the specified tags would be delayed
+     * if it was executed now.
+     *
+     * @param tags the tags of the task.
+     * @return the time in nanoseconds.
+     */
+    public long getDelay(Set<String> tags) {
+        long now = System.nanoTime();
+        long delay = 0;
+        for (TokenBucket bucket : buckets) {
+            if (bucket.covers(tags)) {
+                delay = Math.max(delay, bucket.getDelay(now));
+            }
+        }
+        return delay;
+    }
+
+    private List<TokenBucket> without(Set<String> tags) {
+        List<TokenBucket> list = new ArrayList<TokenBucket>(Arrays.asList(buckets));
+        for (int i = list.size() - 1; i >= 0; i--) {
+            if (list.get(i).tags.equals(tags)) {
+                list.remove(i);
+            }
+        }
+        return list;
+    }
+
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright (c) 2013 Noveo Group
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * Except as contained in this notice, the name(s) of the above copyright holders
+ * shall not be used in advertising or otherwise to promote the sale, use or
+ * other dealings in this Software without prior written authorization.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.noveogroup.android.task;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ResultCache} keeps outputs of succeeded tasks executed by
+ * {@link TaskExecutor#executeCached(Object, Task, Pack, List, Collection)}
+ * so tasks with the same key are not executed again while their outputs
+ * are valid.
+ * <p/>
+ * The cache is bounded by the total weight of its results and evicts least
+ * recently used ones first. By default each result weighs one, so the bound
+ * is the number of results. Results may also expire after a time to live.
+ * <p/>
+ * Each result is labeled by tags of its task, so results can be invalidated
+ * by tags the same way as tasks are selected by {@link TaskSet}.
+ * <p/>
+ * Cached outputs are shared by all tasks reading them, so they should be
+ * immutable.
+ */
+public final class ResultCache {
+
+    /**
+     * Calculates weights of cached results.
+     */
+    public interface Weigher {
+
+        /**
+         * Returns the weight of the result.
+         *
+         * @param key    the key of the result.
+         * @param output the output of the task.
+         * @return the non-negative weight.
+         */
+        public int weigh(Object key, Object output);
+
+    }
+
+    /**
+     * A cached result.
+     */
+    static final class Entry {
+
+        private final Object key;
+        private final Set<String> tags;
+        private final Object output;
+        private final int weight;
+        private final long expiration;
+
+        private Entry(Object key, Set<String> tags, Object output, int weight, long expiration) {
+            this.key = key;
+            this.tags = tags;
+            this.output = output;
+            this.weight = weight;
+            this.expiration = expiration;
+        }
+
+        public Object output() {
+            return output;
+        }
+
+    }
+
+    private final long maxWeight;
+    private final Weigher weigher;
+    private final long ttl;
+
+    private static final int KEY_STRIPES = 64;
+
+    // entries in access order, the eldest one is evicted first
+    private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<Object, Entry>(16, 0.75f, true);
+    // entries by tags, looking an entry up here doesn't change the order
+    private final Map<String, Map<Object, Entry>> entriesByTag = new HashMap<String, Map<Object, Entry>>();
+    private long weight = 0;
+
+    // invalidations are counted by tags and by stripes of keys,
+    // the generation of a result is the sum of the counters it depends on
+    private long generation = 0;
+    private final Map<String, Long> tagGenerations = new HashMap<String, Long>();
+    private final long[] keyGenerations = new long[KEY_STRIPES];
+
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    /**
+     * Creates a cache holding up to the specified number of results which
+     * never expire.
+     *
+     * @param maxSize the maximum number of results.
+     */
+    public ResultCache(int maxSize) {
+        this(maxSize, null, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxWeight the maximum total weight of results.
+     * @param weigher   the weigher of results or {@code null} if each result
+     *                  weighs one.
+     * @param ttl       the time to live of results or zero if they never
+     *                  expire.
+     * @param unit      the time unit of the time to live.
+     */
+    public ResultCache(long maxWeight, Weigher weigher, long ttl, TimeUnit unit) {
+        if (maxWeight < 0 || ttl < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.ttl = unit.toNanos(ttl);
+    }
+
+    /**
+     * Returns the number of requests served from this cache.
+     *
+     * @return the number of hits.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of requests not found in this cache.
+     *
+     * @return the number of misses.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the number of results evicted to respect the maximum weight
+     * or because they have expired. Invalidated results are not counted.
+     *
+     * @return the number of evictions.
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Returns the number of cached results including expired ones which
+     * haven't been evicted yet.
+     *
+     * @return the number of results.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the total weight of cached results.
+     *
+     * @return the weight.
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    /**
+     * Returns the result cached for the key and counts a hit or a miss.
+     *
+     * @param key the key.
+     * @return the result or {@code null} if there is no valid result.
+     */
+    synchronized Entry get(Object key) {
+        Entry entry = entries.get(key);
+        if (entry != null && isExpired(entry, System.nanoTime())) {
+            remove(entry);
+            evictionCount++;
+            entry = null;
+        }
+        if (entry == null) {
+            missCount++;
+        } else {
+            hitCount++;
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the number of invalidations which could remove the result
+     * done so far. A result of a task started before such an invalidation
+     * may be outdated, so it is put only if there were no such invalidations
+     * since the task was started. Invalidations of other keys and tags
+     * don't matter.
+     *
+     * @param key  the key of the result.
+     * @param tags the tags of the task.
+     * @return the generation of the result.
+     */
+    synchronized long generation(Object key, Collection<String> tags) {
+        long sum = generation + keyGenerations[stripe(key)];
+        for (String tag : tags) {
+            Long tagGeneration = tagGenerations.get(tag);
+            if (tagGeneration != null) {
+                sum += tagGeneration;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Puts the result to the cache.
+     *
+     * @param key        the key.
+     * @param tags       the tags of the task.
+     * @param output     the output of the task.
+     * @param generation the generation of the result when the task was
+     *                   started.
+     */
+    void put(Object key, Collection<String> tags, Object output, long generation) {
+        int entryWeight = weigher == null ? 1 : weigher.weigh(key, output);
+        if (entryWeight < 0) {
+            throw new IllegalStateException("negative weight");
+        }
+        long now = System.nanoTime();
+        Entry entry = new Entry(key, new HashSet<String>(tags), output, entryWeight, now + ttl);
+
+        synchronized (this) {
+            if (generation(key, tags) != generation || entryWeight > maxWeight) {
+                return;
+            }
+
+            Entry oldEntry = entries.remove(key);
+            if (oldEntry != null) {
+                unindex(oldEntry);
+            }
+            entries.put(key, entry);
+            weight += entryWeight;
+            for (String tag : entry.tags) {
+                Map<Object, Entry> tagEntries = entriesByTag.get(tag);
+                if (tagEntries == null) {
+                    tagEntries = new HashMap<Object, Entry>();
+                    entriesByTag.put(tag, tagEntries);
+                }
+                tagEntries.put(key, entry);
+            }
+
+            // evict expired results at the head first, then least recently used ones
+            for (Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext(); ) {
+                Entry eldest = iterator.next();
+                if (!isExpired(eldest, now)) {
+                    break;
+                }
+                iterator.remove();
+                unindex(eldest);
+                evictionCount++;
+            }
+            for (Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext() && weight > maxWeight; ) {
+                Entry eldest = iterator.next();
+                iterator.remove();
+                unindex(eldest);
+                evictionCount++;
+            }
+        }
+    }
+
+    /**
+     * Removes the result cached for the key.
+     *
+     * @param key the key.
+     */
+    public synchronized void invalidate(Object key) {
+        keyGenerations[stripe(key)]++;
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            unindex(entry);
+        }
+    }
+
+    /**
+     * Removes results of tasks labeled by all of the specified tags.
+     *
+     * @param tags the tags.
+     */
+    public synchronized void invalidate(Collection<String> tags) {
+        if (tags.isEmpty()) {
+            invalidateAll();
+            return;
+        }
+
+        // a task labeled by all of the tags is labeled by any of them,
+        // so counting the invalidation by one tag is enough
+        String first = tags.iterator().next();
+        Long tagGeneration = tagGenerations.get(first);
+        tagGenerations.put(first, tagGeneration == null ? 1 : tagGeneration + 1);
+
+        // the smallest set of entries labeled by one of the tags is walked through
+        Map<Object, Entry> smallest = null;
+        for (String tag : tags) {
+            Map<Object, Entry> tagEntries = entriesByTag.get(tag);
+            if (tagEntries == null) {
+                return;
+            }
+            if (smallest == null || tagEntries.size() < smallest.size()) {
+                smallest = tagEntries;
+            }
+        }
+        for (Entry entry : new ArrayList<Entry>(smallest.values())) {
+            if (entry.tags.containsAll(tags)) {
+                remove(entry);
+            }
+        }
+    }
+
+    /**
+     * Removes all cached results.
+     */
+    public synchronized void invalidateAll() {
+        // counters of tags are folded into the common one, so generations
+        // of all results grow while the counters of tags are forgotten
+        long sum = 1;
+        for (Long tagGeneration : tagGenerations.values()) {
+            sum += tagGeneration;
+        }
+        generation += sum;
+        tagGenerations.clear();
+        entries.clear();
+        entriesByTag.clear();
+        weight = 0;
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return ttl != 0 && now - entry.expiration >= 0;
+    }
+
+    private void remove(Entry entry) {
+        entries.remove(entry.key);
+        unindex(entry);
+    }
+
+    private void unindex(Entry entry) {
+        weight -= entry.weight;
+        for (String tag : entry.tags) {
+            Map<Object, Entry> tagEntries = entriesByTag.get(tag);
+            tagEntries.remove(entry.key);
+            if (tagEntries.isEmpty()) {
+                entriesByTag.remove(tag);
+            }
+        }
+    }
+
+    private static int stripe(Object key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return hash & (KEY_STRIPES - 1);
+    }
+
+}
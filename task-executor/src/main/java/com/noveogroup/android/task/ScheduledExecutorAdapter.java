@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2013 Noveo Group
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * Except as contained in this notice, the name(s) of the above copyright holders
+ * shall not be used in advertising or otherwise to promote the sale, use or
+ * other dealings in this Software without prior written authorization.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.noveogroup.android.task;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link ScheduledExecutorAdapter} is a {@link ScheduledExecutorService} view
+ * of a {@link TaskExecutor}. Scheduled tasks are executed by
+ * {@link TaskExecutor#executeDelayed(Task, Pack, List, Collection, long, TimeUnit)},
+ * {@link TaskExecutor#executeAtFixedRate(Task, Pack, List, Collection, long, long, TimeUnit)}
+ * and {@link TaskExecutor#executeWithFixedDelay(Task, Pack, List, Collection, long, long, TimeUnit)}.
+ * <p/>
+ * Periodic tasks are canceled when the adapter is shut down, delayed ones
+ * are still executed.
+ */
+public class ScheduledExecutorAdapter extends ExecutorAdapter implements ScheduledExecutorService {
+
+    private static class HandlerFuture<V> implements ScheduledFuture<V> {
+
+        private final TaskHandler<?, V> handler;
+        private final AtomicLong deadline;
+
+        private HandlerFuture(TaskHandler<?, V> handler, AtomicLong deadline) {
+            this.handler = handler;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadline.get() - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            long delay = getDelay(TimeUnit.NANOSECONDS);
+            long otherDelay = other.getDelay(TimeUnit.NANOSECONDS);
+            return delay < otherDelay ? -1 : (delay == otherDelay ? 0 : 1);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (isDone() || (!mayInterruptIfRunning && handler.getState() == TaskHandler.State.STARTED)) {
+                return false;
+            }
+            if (!mayInterruptIfRunning && handler instanceof AbstractTaskHandler) {
+                // a running execution of a periodic task is left running
+                return ((AbstractTaskHandler<?, ?>) handler).drop(null);
+            }
+            handler.interrupt();
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return handler.getState() == TaskHandler.State.CANCELED && handler.getThrowable() == null;
+        }
+
+        @Override
+        public boolean isDone() {
+            return handler.getState().isDestroyed();
+        }
+
+        @Override
+        public V get() throws InterruptedException, ExecutionException {
+            handler.join();
+            return report();
+        }
+
+        @Override
+        public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            if (!handler.join(Math.max(unit.toMillis(timeout), 1))) {
+                throw new TimeoutException();
+            }
+            return report();
+        }
+
+        private V report() throws ExecutionException {
+            switch (handler.getState()) {
+                case SUCCEED:
+                    return handler.vars().output();
+                case FAILED:
+                    throw new ExecutionException(handler.getThrowable());
+                default:
+                    if (handler.getThrowable() != null) {
+                        throw new ExecutionException(handler.getThrowable());
+                    }
+                    throw new CancellationException();
+            }
+        }
+
+    }
+
+    private final TaskExecutor executor;
+    private final Set<TaskHandler<?, ?>> periodic = Collections.newSetFromMap(new ConcurrentHashMap<TaskHandler<?, ?>, Boolean>());
+
+    public ScheduledExecutorAdapter() {
+        this(new SimpleTaskExecutor());
+    }
+
+    public ScheduledExecutorAdapter(TaskExecutor executor) {
+        super(executor);
+        this.executor = executor;
+    }
+
+    private void checkShutdown() {
+        if (isShutdown()) {
+            throw new RejectedExecutionException("executor service is shut down");
+        }
+    }
+
+    private static AtomicLong deadline(long delay, TimeUnit unit) {
+        return new AtomicLong(System.nanoTime() + unit.toNanos(delay));
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        checkShutdown();
+        AtomicLong deadline = deadline(delay, unit);
+        TaskHandler<Object, Object> handler = executor.executeDelayed(new TaskRunnable(command), delay, unit);
+        return new HandlerFuture<Object>(handler, deadline);
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        checkShutdown();
+        AtomicLong deadline = deadline(delay, unit);
+        TaskHandler<Object, V> handler = executor.executeDelayed(new TaskCallable<V>(callable), delay, unit);
+        return new HandlerFuture<V>(handler, deadline);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, final long period, final TimeUnit unit) {
+        checkShutdown();
+        final AtomicLong deadline = deadline(initialDelay, unit);
+        TaskHandler<Object, Object> handler = executor.executeAtFixedRate(new TaskRunnable(command), new Pack<Object, Object>(),
+                Collections.<TaskListener<Object, Object>>singletonList(new TaskListener.Default<Object, Object>() {
+                    @Override
+                    public void onStart(TaskHandler<Object, Object> handler) {
+                        deadline.addAndGet(unit.toNanos(period));
+                    }
+                }), Collections.<String>emptySet(), initialDelay, period, unit);
+        return registerPeriodic(handler, deadline);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, final long delay, final TimeUnit unit) {
+        checkShutdown();
+        final AtomicLong deadline = deadline(initialDelay, unit);
+        TaskHandler<Object, Object> handler = executor.executeWithFixedDelay(new TaskRunnable(command), new Pack<Object, Object>(),
+                Collections.<TaskListener<Object, Object>>singletonList(new TaskListener.Default<Object, Object>() {
+                    @Override
+                    public void onFinish(TaskHandler<Object, Object> handler) {
+                        deadline.set(System.nanoTime() + unit.toNanos(delay));
+                    }
+                }), Collections.<String>emptySet(), initialDelay, delay, unit);
+        return registerPeriodic(handler, deadline);
+    }
+
+    private ScheduledFuture<?> registerPeriodic(TaskHandler<Object, Object> handler, AtomicLong deadline) {
+        // forget periodic tasks which are already finished
+        for (Iterator<TaskHandler<?, ?>> iterator = periodic.iterator(); iterator.hasNext(); ) {
+            if (iterator.next().getState().isDestroyed()) {
+                iterator.remove();
+            }
+        }
+        periodic.add(handler);
+        if (isShutdown()) {
+            handler.interrupt();
+        }
+        return new HandlerFuture<Object>(handler, deadline);
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        for (TaskHandler<?, ?> handler : periodic) {
+            handler.interrupt();
+        }
+        periodic.clear();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> list = super.shutdownNow();
+        periodic.clear();
+        return list;
+    }
+
+}
@@ -26,6 +26,8 @@
 
 package com.noveogroup.android.task;
 
+import java.util.ArrayDeque;
+
 /**
  * {@link SimpleTaskEnvironment} is an default implementation of
  * the {@link TaskEnvironment} interface. A subclass may implement
@@ -41,6 +43,9 @@ public class SimpleTaskEnvironment<Input, Output> implements TaskEnvironment<Inp
      */
     protected final TaskHandler<Input, Output> handler;
 
+    // pending subtasks, the latest one is on the top
+    private ArrayDeque<TaskHandler<?, ?>> forks = null;
+
     /**
      * Creates new instance of {@link SimpleTaskEnvironment}.
      *
@@ -75,6 +80,66 @@ public class SimpleTaskEnvironment<Input, Output> implements TaskEnvironment<Inp
         return handler.vars();
     }
 
+    @Override
+    public Completion<Output> defer() {
+        if (handler instanceof AbstractTaskHandler) {
+            return ((AbstractTaskHandler<Input, Output>) handler).defer();
+        }
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CancellationToken cancellationToken() {
+        if (handler instanceof AbstractTaskHandler) {
+            return ((AbstractTaskHandler<Input, Output>) handler).cancellationToken();
+        }
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public TaskScope openScope(TaskScope.Policy policy, String... tags) {
+        if (handler instanceof AbstractTaskHandler) {
+            return ((AbstractTaskHandler<Input, Output>) handler).openScope(policy, tags);
+        }
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <I, O> TaskHandler<I, O> fork(Task<I, O> task, I input) {
+        TaskHandler<I, O> forked = owner().execute(task, input);
+        synchronized (this) {
+            if (forks == null) {
+                forks = new ArrayDeque<TaskHandler<?, ?>>();
+            }
+            forks.push(forked);
+        }
+        return forked;
+    }
+
+    @Override
+    public <I, O> O join(TaskHandler<I, O> forked) throws Throwable {
+        // help instead of waiting while there are pending subtasks
+        while (!forked.getState().isDestroyed()) {
+            if (!runDispatched(forked)) {
+                TaskHandler<?, ?> next = pollFork();
+                if (next == null) {
+                    forked.join();
+                } else {
+                    runDispatched(next);
+                }
+            }
+        }
+        return forked.get();
+    }
+
+    private synchronized TaskHandler<?, ?> pollFork() {
+        return forks == null ? null : forks.poll();
+    }
+
+    private static boolean runDispatched(TaskHandler<?, ?> handler) {
+        return handler instanceof AbstractTaskHandler && ((AbstractTaskHandler<?, ?>) handler).runDispatched();
+    }
+
     @Override
     public void interruptSelf() {
         handler.interrupt();
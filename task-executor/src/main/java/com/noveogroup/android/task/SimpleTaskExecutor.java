@@ -26,30 +26,93 @@
 
 package com.noveogroup.android.task;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * {@link SimpleTaskEnvironment} is an default implementation of
  * the {@link TaskExecutor} interface. A subclass  must implement the abstract
  * method {@link #createTaskEnvironment(TaskHandler)}.
+ * <p/>
+ * By default the executor accepts any number of tasks. The number of queued
+ * and running tasks can be limited by {@link #setCapacity(int)}, in this case
+ * {@link OverflowPolicy} defines what to do with tasks exceeding it.
+ * <p/>
+ * The number of tasks running at once can be limited by
+ * {@link #setMaxRunning(int)} and by {@link TaskSet#setMaxRunning(int)} for
+ * tasks labeled by some tags. Tasks exceeding these limits stay
+ * {@link TaskHandler.State#CREATED} without holding working threads.
+ * <p/>
+ * Rate of dispatching tasks labeled by some tags can be limited by
+ * {@link TaskSet#setRateLimit(double, int)}.
+ * <p/>
+ * Delayed and periodic tasks as well as rate limited ones wait on a hashed
+ * timing wheel served by a single timer thread, no working thread waits
+ * for them.
+ * <p/>
+ * Tasks executed by {@link #executeWithTimeout(Task, Pack, List, Collection, long, TimeUnit)}
+ * are canceled or interrupted when they miss their deadlines. Tasks executed
+ * by a running task inherit its deadline, so the whole tree of tasks is
+ * stopped at the deadline of the root one.
+ * <p/>
+ * Concurrent requests of the same computation can share one execution,
+ * see {@link #executeCoalesced(Object, Task, Pack, List, Collection)}, and
+ * their outputs can be cached, see {@link #setResultCache(ResultCache)}.
+ * Small tasks can be processed in batches, see {@link BatchTask}.
+ * <p/>
+ * Running tasks waiting for other tasks don't starve a bounded pool of
+ * working threads, see {@link #setMaxCompensationThreads(int)}.
+ * <p/>
+ * Slow tasks can be hedged by their duplicates, see
+ * {@link TaskSet#setHedging(double)}.
  */
 public class SimpleTaskExecutor extends AbstractTaskExecutor {
 
-    private static Set<TaskHandler<?, ?>> getAssociated(Set<TaskHandler<?, ?>> queue,
-                                                        Collection<String> tags, Collection<TaskHandler.State> states) {
-        Set<TaskHandler<?, ?>> set = new HashSet<TaskHandler<?, ?>>();
-        for (TaskHandler<?, ?> taskHandler : queue) {
-            if (taskHandler.owner().tags().containsAll(tags) && states.contains(taskHandler.getState())) {
-                set.add(taskHandler);
-            }
-        }
-        return Collections.unmodifiableSet(set);
-    }
+    private static final Collection<TaskHandler.State> CREATED_ONLY = Collections.singleton(TaskHandler.State.CREATED);
 
     private final ExecutorService executorService;
-    private final Set<TaskHandler<?, ?>> queue = new HashSet<TaskHandler<?, ?>>();
+    private final TaskRegistry queue = new TaskRegistry();
+    private final Bulkheads bulkheads = new Bulkheads();
+    private final Compensation compensation;
+    private final RateLimits rateLimits = new RateLimits();
+    private final Hedging hedging = new Hedging();
+    private final AtomicLong hedgedCount = new AtomicLong();
+    private final AtomicLong hedgeWinCount = new AtomicLong();
+    private final TimingWheel timer = new TimingWheel("task-executor-timer", 10, TimeUnit.MILLISECONDS, 512);
+    private final ConcurrentHashMap<TaskHandler<?, ?>, Delay> delayed = new ConcurrentHashMap<TaskHandler<?, ?>, Delay>();
+    private final ConcurrentHashMap<TaskHandler<?, ?>, TimingWheel.Timeout> deadlines = new ConcurrentHashMap<TaskHandler<?, ?>, TimingWheel.Timeout>();
+    private final Batches batches;
+    private final ConcurrentHashMap<Object, CoalescedExecution<?, ?>> coalesced = new ConcurrentHashMap<Object, CoalescedExecution<?, ?>>();
+    // cached executions are coalesced apart, their keys are keys of results
+    private final ConcurrentHashMap<Object, CoalescedExecution<?, ?>> cached = new ConcurrentHashMap<Object, CoalescedExecution<?, ?>>();
+    private final ConcurrentHashMap<TaskHandler<?, ?>, Boolean> waiting = new ConcurrentHashMap<TaskHandler<?, ?>, Boolean>();
+    private final ConcurrentHashMap<TaskHandler<?, ?>, Periodic<?, ?>> periodic = new ConcurrentHashMap<TaskHandler<?, ?>, Periodic<?, ?>>();
+
+    private volatile ResultCache resultCache = null;
+
+    private final PaddedAtomicInteger load = new PaddedAtomicInteger(0);
+    private volatile int capacity = Integer.MAX_VALUE;
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.REJECT;
+    private volatile long blockTimeout = 0;
+    private final ReentrantLock capacityLock = new ReentrantLock();
+    private final Condition capacityReleased = capacityLock.newCondition();
+    private volatile int blockedCount = 0;
+    private final AtomicLong[] overflowCounts = new AtomicLong[OverflowPolicy.values().length];
+    private final AtomicLong rejectedCount = new AtomicLong();
 
     public SimpleTaskExecutor() {
         this(Executors.newCachedThreadPool());
@@ -57,6 +120,448 @@ public class SimpleTaskExecutor extends AbstractTaskExecutor {
 
     public SimpleTaskExecutor(ExecutorService executorService) {
         this.executorService = executorService;
+        this.batches = new Batches(executorService, timer);
+        this.compensation = new Compensation(queue, compensationThreadFactory(executorService), defaultCompensationThreads(executorService));
+        for (int i = 0; i < overflowCounts.length; i++) {
+            overflowCounts[i] = new AtomicLong();
+        }
+    }
+
+    /**
+     * Returns the maximum number of queued and running tasks.
+     *
+     * @return the capacity.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Sets the maximum number of queued and running tasks. Tasks exceeding
+     * the capacity are processed according to the overflow policy.
+     *
+     * @param capacity the capacity.
+     * @see #setOverflowPolicy(OverflowPolicy)
+     */
+    public void setCapacity(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.capacity = capacity;
+        signalCapacity(true);
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Sets what to do with tasks exceeding the capacity.
+     * {@link OverflowPolicy#REJECT} is used by default.
+     *
+     * @param overflowPolicy the overflow policy.
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        if (overflowPolicy == null) {
+            throw new NullPointerException();
+        }
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public long getBlockTimeout() {
+        return blockTimeout;
+    }
+
+    /**
+     * Sets the time to wait for capacity using {@link OverflowPolicy#BLOCK}
+     * policy. A timeout of zero means to wait forever.
+     *
+     * @param blockTimeout the timeout in milliseconds.
+     */
+    public void setBlockTimeout(long blockTimeout) {
+        if (blockTimeout < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.blockTimeout = blockTimeout;
+    }
+
+    /**
+     * Returns the maximum number of tasks running at once.
+     *
+     * @return the limit.
+     */
+    public int getMaxRunning() {
+        return bulkheads.getMaxRunning();
+    }
+
+    /**
+     * Sets the maximum number of tasks running at once. Slots reserved by
+     * {@link TaskSet#setReservedSlots(int)} are taken from this limit.
+     * <p/>
+     * There is no limit by default. The limit is expected to be not
+     * greater than the number of working threads.
+     *
+     * @param maxRunning the limit.
+     */
+    public void setMaxRunning(int maxRunning) {
+        bulkheads.setMaxRunning(maxRunning);
+    }
+
+    private static ThreadFactory compensationThreadFactory(ExecutorService executorService) {
+        // compensation threads replace the working threads, so they are alike
+        if (executorService instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executorService).getThreadFactory();
+        }
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "task-executor-compensation");
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    private static int defaultCompensationThreads(ExecutorService executorService) {
+        if (executorService instanceof ThreadPoolExecutor) {
+            int maximumPoolSize = ((ThreadPoolExecutor) executorService).getMaximumPoolSize();
+            if (maximumPoolSize < Integer.MAX_VALUE) {
+                return maximumPoolSize;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the maximum number of compensation threads.
+     *
+     * @return the limit.
+     */
+    public int getMaxCompensationThreads() {
+        return compensation.getMaxThreads();
+    }
+
+    /**
+     * Sets the maximum number of temporary threads executing tasks while
+     * working threads are blocked by running tasks waiting for other tasks
+     * by {@link TaskHandler#join()} or {@link TaskHandler#get()}.
+     * <p/>
+     * A waiting task executes the joined task by itself if it has been
+     * dispatched and not taken by any working thread yet. Otherwise its
+     * thread is blocked and a compensation thread is started if the limit
+     * allows it. Compensation threads execute dispatched tasks from
+     * the queue and exit as soon as the blocked threads are resumed.
+     * <p/>
+     * The limit is equal to the maximum pool size of a bounded
+     * {@link ThreadPoolExecutor} and zero for other executor services
+     * by default.
+     *
+     * @param maxCompensationThreads the limit or zero to disable
+     *                               compensation.
+     */
+    public void setMaxCompensationThreads(int maxCompensationThreads) {
+        compensation.setMaxThreads(maxCompensationThreads);
+    }
+
+    /**
+     * Returns how many times running tasks have executed joined tasks in
+     * their own threads instead of waiting for them.
+     *
+     * @return the number of times.
+     */
+    public long getInlineJoinCount() {
+        return compensation.getInlineCount();
+    }
+
+    /**
+     * Returns how many times running tasks have been blocked waiting for
+     * other tasks.
+     *
+     * @return the number of times.
+     */
+    public long getBlockedJoinCount() {
+        return compensation.getBlockedCount();
+    }
+
+    /**
+     * Returns the number of compensation threads started so far.
+     *
+     * @return the number of threads.
+     * @see #setMaxCompensationThreads(int)
+     */
+    public long getCompensationCount() {
+        return compensation.getCompensationCount();
+    }
+
+    /**
+     * Returns the number of duplicates executed to hedge slow tasks.
+     *
+     * @return the number of duplicates.
+     * @see TaskSet#setHedging(double)
+     */
+    public long getHedgedCount() {
+        return hedgedCount.get();
+    }
+
+    /**
+     * Returns the number of hedged tasks finished by their duplicates.
+     *
+     * @return the number of tasks.
+     * @see TaskSet#setHedging(double)
+     */
+    public long getHedgeWinCount() {
+        return hedgeWinCount.get();
+    }
+
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Sets the cache of results used by
+     * {@link #executeCached(Object, Task, Pack, List, Collection)}.
+     * There is no cache by default.
+     *
+     * @param resultCache the cache or {@code null} to execute tasks
+     *                    without caching.
+     */
+    public void setResultCache(ResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    /**
+     * Returns how many times the specified policy has been applied to tasks
+     * exceeding the capacity.
+     *
+     * @param overflowPolicy the overflow policy.
+     * @return the number of times.
+     */
+    public long getOverflowCount(OverflowPolicy overflowPolicy) {
+        return overflowCounts[overflowPolicy.ordinal()].get();
+    }
+
+    /**
+     * Returns the number of tasks rejected or dropped because of
+     * exceeding the capacity.
+     *
+     * @return the number of tasks.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    private boolean tryAcquire() {
+        while (true) {
+            int current = load.get();
+            if (current >= capacity) {
+                return false;
+            }
+            if (load.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean acquire(long timeout) {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+        capacityLock.lock();
+        try {
+            blockedCount++;
+            while (!tryAcquire()) {
+                if (timeout == 0) {
+                    capacityReleased.await();
+                } else if (nanos > 0) {
+                    nanos = capacityReleased.awaitNanos(nanos);
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            blockedCount--;
+            capacityLock.unlock();
+        }
+    }
+
+    private void release() {
+        load.decrementAndGet();
+        signalCapacity(false);
+    }
+
+    private void signalCapacity(boolean all) {
+        // producers are blocked rarely so don't take the lock in vain
+        if (blockedCount > 0) {
+            capacityLock.lock();
+            try {
+                if (all) {
+                    capacityReleased.signalAll();
+                } else {
+                    capacityReleased.signal();
+                }
+            } finally {
+                capacityLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Dispatches the queued task after the delay, then applying rate limits
+     * and bulkheads.
+     */
+    private void schedule(AbstractTaskHandler<?, ?> handler, long delay) {
+        if (handler.isInterrupted()) {
+            // an interrupted task is dispatched to call its listeners
+            handler.dispatch();
+        } else if (delay > 0) {
+            delay(handler, delay, null);
+        } else {
+            RateLimits.Reservation reservation = rateLimits.acquire(handler.owner().tags());
+            if (reservation.getDelay() > 0) {
+                delay(handler, reservation.getDelay(), reservation);
+            } else {
+                bulkheads.schedule(handler);
+            }
+        }
+    }
+
+    /**
+     * A timeout of a delayed task.
+     */
+    private static final class Delay {
+
+        public final TimingWheel.Timeout timeout;
+        // the tokens taken for a task delayed by rate limits or null
+        public final RateLimits.Reservation reservation;
+
+        public Delay(TimingWheel.Timeout timeout, RateLimits.Reservation reservation) {
+            this.timeout = timeout;
+            this.reservation = reservation;
+        }
+
+    }
+
+    /**
+     * Delays the task. The task delayed by rate limits has the tokens taken
+     * already, so it is dispatched bypassing rate limits.
+     */
+    private void delay(final AbstractTaskHandler<?, ?> handler, long delay, final RateLimits.Reservation reservation) {
+        TimingWheel.Timeout timeout = timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                delayed.remove(handler);
+                if (reservation == null) {
+                    schedule(handler, 0);
+                } else {
+                    bulkheads.schedule(handler);
+                }
+            }
+        }, delay, TimeUnit.NANOSECONDS);
+        put(handler, new Delay(timeout, reservation));
+    }
+
+    private void put(AbstractTaskHandler<?, ?> handler, Delay delay) {
+        delayed.put(handler, delay);
+        if (delay.timeout.isExpired()) {
+            // the timer could expire before it was put
+            delayed.remove(handler, delay);
+        }
+    }
+
+    private void unschedule(AbstractTaskHandler<?, ?> handler) {
+        Periodic<?, ?> periodicTask = periodic.remove(handler);
+        if (periodicTask != null && !handler.isDropped()) {
+            // a dropped periodic task lets its running execution finish
+            periodicTask.interruptExecution();
+        }
+
+        Delay delay = delayed.remove(handler);
+        if (delay != null && delay.timeout.cancel()) {
+            // the task is canceled while delayed, dispatch it to call its listeners
+            if (delay.reservation != null) {
+                delay.reservation.cancel();
+            }
+            handler.dispatch();
+        } else if (waiting.remove(handler) != null) {
+            // the task is canceled while waiting for the previous one
+            handler.dispatch();
+        } else if (batches.remove(handler)) {
+            // the task is canceled while its batch is open
+            handler.dispatch();
+        } else {
+            bulkheads.release(handler);
+        }
+    }
+
+    /**
+     * Returns the deadline of a task which should be finished within
+     * the timeout and is executed by the current thread, so it inherits
+     * the deadline of the task being run by the thread.
+     */
+    private static long deadline(long timeout) {
+        long deadline = AbstractTaskHandler.NO_DEADLINE;
+        // too long timeouts are treated as no timeouts to avoid overflow
+        if (timeout < Long.MAX_VALUE / 2) {
+            deadline = System.nanoTime() + Math.max(timeout, 0);
+        }
+
+        AbstractTaskHandler<?, ?> parent = AbstractTaskHandler.current();
+        long inherited = parent == null ? AbstractTaskHandler.NO_DEADLINE : parent.getDeadline();
+        if (inherited == AbstractTaskHandler.NO_DEADLINE) {
+            return deadline;
+        } else if (deadline == AbstractTaskHandler.NO_DEADLINE) {
+            return inherited;
+        } else {
+            // values of System.nanoTime() are compared by their difference
+            return inherited - deadline < 0 ? inherited : deadline;
+        }
+    }
+
+    /**
+     * Starts the timer interrupting the task at its deadline.
+     */
+    private void startDeadline(final AbstractTaskHandler<?, ?> handler) {
+        long deadline = handler.getDeadline();
+        if (deadline == AbstractTaskHandler.NO_DEADLINE) {
+            return;
+        }
+        TimingWheel.Timeout timeout = timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                deadlines.remove(handler);
+                // a queued task is canceled, a running one is interrupted
+                if (handler.getState().isAlive() && !handler.drop(new TimeoutException("the task has missed its deadline"))) {
+                    handler.interrupt();
+                }
+            }
+        }, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        deadlines.put(handler, timeout);
+        if (timeout.isExpired()) {
+            // the timer could expire before it was put
+            deadlines.remove(handler, timeout);
+        }
+    }
+
+    private void stopDeadline(AbstractTaskHandler<?, ?> handler) {
+        TimingWheel.Timeout timeout = deadlines.remove(handler);
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    private boolean dropOldest(Collection<String> tags) {
+        while (true) {
+            TaskHandler<?, ?> oldest = queue.oldest(tags, CREATED_ONLY);
+            if (oldest == null) {
+                return false;
+            }
+            if (((AbstractTaskHandler<?, ?>) oldest).drop(new TaskRejectedException("the task is dropped to free capacity"))) {
+                rejectedCount.incrementAndGet();
+                return true;
+            }
+        }
     }
 
     /**
@@ -74,32 +579,108 @@ public class SimpleTaskExecutor extends AbstractTaskExecutor {
         return new SimpleTaskEnvironment<Input, Output>(taskHandler);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The timer thread exits as soon as the timeouts of interrupted tasks
+     * are canceled. It is started again if a task needs a timer later.
+     */
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        timer.stop();
+    }
+
     @Override
     public TaskSet queue(Collection<String> tags, Collection<TaskHandler.State> states) {
-        synchronized (lock()) {
-            return new AbstractTaskSet(this, tags, states) {
-                @Override
-                public Iterator<TaskHandler<?, ?>> iterator() {
-                    synchronized (lock()) {
-                        return getAssociated(queue, tags(), states()).iterator();
-                    }
+        return new AbstractTaskSet(this, tags, states) {
+            @Override
+            public int size() {
+                return queue.size(tags(), states());
+            }
+
+            @Override
+            public boolean isEmpty() {
+                return queue.isEmpty(tags(), states());
+            }
+
+            @Override
+            public Iterator<TaskHandler<?, ?>> iterator() {
+                return queue.select(tags(), states());
+            }
+
+            @Override
+            public void interrupt() {
+                Iterator<TaskHandler<?, ?>> iterator = queue.select(tags(), states());
+                while (iterator.hasNext()) {
+                    iterator.next().interrupt();
                 }
+            }
 
-                @Override
-                public void interrupt() {
-                    synchronized (lock()) {
-                        for (TaskHandler<?, ?> handler : getAssociated(queue, tags(), states())) {
-                            handler.interrupt();
-                        }
-                    }
+            @Override
+            public int getMaxRunning() {
+                return bulkheads.getMaxRunning(tags());
+            }
+
+            @Override
+            public void setMaxRunning(int maxRunning) {
+                bulkheads.setMaxRunning(tags(), maxRunning);
+            }
+
+            @Override
+            public int getReservedSlots() {
+                return bulkheads.getReserved(tags());
+            }
+
+            @Override
+            public void setReservedSlots(int reservedSlots) {
+                bulkheads.setReserved(tags(), reservedSlots);
+            }
+
+            @Override
+            public void setRateLimit(double permitsPerSecond, int burst) {
+                rateLimits.setRateLimit(tags(), permitsPerSecond, burst);
+            }
+
+            @Override
+            public void removeRateLimit() {
+                rateLimits.removeRateLimit(tags());
+            }
+
+            @Override
+            public long getRateLimitDelay() {
+                return TimeUnit.NANOSECONDS.toMillis(rateLimits.getDelay(tags()));
+            }
+
+            @Override
+            public void setHedging(double percentile) {
+                hedging.setHedging(tags(), percentile);
+            }
+
+            @Override
+            public void removeHedging() {
+                hedging.removeHedging(tags());
+            }
+
+            @Override
+            public long getHedgingDelay() {
+                Hedging.Policy policy = hedging.get(tags());
+                long delay = policy == null ? -1 : policy.getDelay();
+                return delay < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(delay);
+            }
+
+            @Override
+            public void invalidateResults() {
+                ResultCache cache = resultCache;
+                if (cache != null) {
+                    cache.invalidate(tags());
                 }
-            };
-        }
+            }
+        };
     }
 
-    @Override
-    public <Input, Output> TaskHandler<Input, Output> execute(Task<Input, Output> task, Pack<Input, Output> vars, List<TaskListener<Input, Output>> taskListeners, Collection<String> tags) {
-        return new AbstractTaskHandler<Input, Output>(executorService, task, this, queue(tags), vars, copyTaskListeners(taskListeners)) {
+    private <Input, Output> AbstractTaskHandler<Input, Output> createHandler(Task<Input, Output> task, Pack<Input, Output> vars, List<TaskListener> taskListeners, Collection<String> tags, long deadline) {
+        AbstractTaskHandler<Input, Output> handler = new AbstractTaskHandler<Input, Output>(executorService, task, this, queue(tags), vars, taskListeners) {
             @Override
             protected TaskEnvironment<Input, Output> createTaskEnvironment() {
                 return SimpleTaskExecutor.this.createTaskEnvironment(this);
@@ -107,18 +688,530 @@ public class SimpleTaskExecutor extends AbstractTaskExecutor {
 
             @Override
             protected void addToQueue() {
-                synchronized (lock()) {
-                    queue.add(this);
+                if (queue.add(this)) {
+                    startDeadline(this);
+                    if (getState().isDestroyed()) {
+                        // the task has been removed before its deadline was started
+                        stopDeadline(this);
+                    }
+                } else {
+                    // the task has been canceled before it was admitted
+                    release();
                 }
             }
 
+            @Override
+            protected void updateInQueue() {
+                queue.update(this);
+            }
+
             @Override
             protected void removeFromQueue() {
-                synchronized (lock()) {
-                    queue.remove(this);
+                if (queue.remove(this)) {
+                    stopDeadline(this);
+                    release();
+                    unschedule(this);
                 }
             }
+
+            @Override
+            protected void onJoinInline() {
+                compensation.onJoinInline();
+            }
+
+            @Override
+            protected void onJoinBlocked() {
+                compensation.onJoinBlocked();
+            }
+
+            @Override
+            protected void onJoinResumed() {
+                compensation.onJoinResumed();
+            }
+
+            @Override
+            protected void onDispatched() {
+                compensation.onDispatched(this);
+            }
         };
+        handler.setDeadline(deadline);
+        // a task executed by a running task is its child
+        AbstractTaskHandler<?, ?> parent = AbstractTaskHandler.current();
+        if (parent != null) {
+            handler.setParent(parent);
+        }
+        return handler;
+    }
+
+    /**
+     * Admits the task to the queue according to the capacity and
+     * the overflow policy.
+     *
+     * @param handler   the task handler.
+     * @param tags      the tags of the task.
+     * @param canInline whether the task can be executed in the current thread.
+     * @return {@code true} if the task is queued, {@code false} if it has been
+     * already executed in the current thread.
+     * @throws TaskRejectedException if the task is rejected.
+     */
+    private boolean admit(AbstractTaskHandler<?, ?> handler, Collection<String> tags, boolean canInline) {
+        if (tryAcquire()) {
+            handler.enqueue();
+            return true;
+        }
+
+        OverflowPolicy policy = overflowPolicy;
+        overflowCounts[policy.ordinal()].incrementAndGet();
+        switch (policy) {
+            case BLOCK:
+                if (acquire(blockTimeout)) {
+                    handler.enqueue();
+                    return true;
+                }
+                break;
+            case CALLER_RUNS:
+                if (canInline) {
+                    load.incrementAndGet();
+                    handler.runInline();
+                    return false;
+                }
+                break;
+            case DROP_OLDEST:
+                while (dropOldest(tags)) {
+                    if (tryAcquire()) {
+                        handler.enqueue();
+                        return true;
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+
+        // the task is reported to listeners as canceled
+        TaskRejectedException exception = new TaskRejectedException("the executor has reached its capacity of " + capacity + " tasks");
+        rejectedCount.incrementAndGet();
+        handler.reject(exception);
+        throw exception;
+    }
+
+    /**
+     * Admits the task to the queue only if the capacity allows it, whatever
+     * the overflow policy is. It is used by the timer thread which should
+     * never be blocked or run tasks.
+     *
+     * @param handler the task handler.
+     * @return {@code true} if the task is queued.
+     */
+    private boolean tryAdmit(AbstractTaskHandler<?, ?> handler) {
+        if (tryAcquire()) {
+            handler.enqueue();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The task is hedged if its tags are covered by
+     * {@link TaskSet#setHedging(double)}.
+     */
+    @Override
+    public <Input, Output> TaskHandler<Input, Output> execute(Task<Input, Output> task, Pack<Input, Output> vars, List<TaskListener<Input, Output>> taskListeners, Collection<String> tags) {
+        return execute(task, vars, taskListeners, tags, deadline(Long.MAX_VALUE));
+    }
+
+    private <Input, Output> TaskHandler<Input, Output> execute(Task<Input, Output> task, Pack<Input, Output> vars, List<TaskListener<Input, Output>> taskListeners, Collection<String> tags, long deadline) {
+        AbstractTaskHandler<Input, Output> handler = createHedgedHandler(task, vars, taskListeners, tags, deadline);
+        if (admit(handler, tags, true)) {
+            schedule(handler, 0);
+        }
+        return handler;
+    }
+
+    private <Input, Output> AbstractTaskHandler<Input, Output> createHedgedHandler(Task<Input, Output> task, Pack<Input, Output> vars, List<TaskListener<Input, Output>> taskListeners, Collection<String> tags, long deadline) {
+        List<TaskListener> listeners = copyTaskListeners(taskListeners);
+        Hedging.Policy policy = hedging.find(tags);
+        Hedge<Input, Output> hedge = null;
+        if (policy != null) {
+            hedge = new Hedge<Input, Output>(policy, tags);
+            listeners.add(0, hedge);
+        }
+        AbstractTaskHandler<Input, Output> handler = createHandler(task, vars, listeners, tags, deadline);
+        if (hedge != null) {
+            hedge.bind(handler);
+        }
+        return handler;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * A delayed task exceeding the capacity is rejected if the overflow policy
+     * is {@link OverflowPolicy#CALLER_RUNS}.
+     */
+    @Override
+    public <Input, Output> TaskHandler<Input, Output> executeDelayed(Task<Input, Output> task, Pack<Input, Output> vars, List<TaskListener<Input, Output>> taskListeners, Collection<String> tags, long delay, TimeUnit unit) {
+        AbstractTaskHandler<Input, Output> handler = createHandler(task, vars, copyTaskListeners(taskListeners), tags, deadline(Long.MAX_VALUE));
+        admit(handler, tags, false);
+        schedule(handler, unit.toNanos(delay));
+        return handler;
+    }
+
+    @Override
+    public <Input, Output> TaskHandler<Input, Output> executeWithTimeout(Task<Input, Output> task, Pack<Input, Output> vars, List<TaskListener<Input, Output>> taskListeners, Collection<String> tags, long timeout, TimeUnit unit) {
+        return execute(task, vars, taskListeners, tags, deadline(unit.toNanos(timeout)));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Listeners of the executor are called once for the execution, not for
+     * each request bound to it.
+     */
+    @Override
+    public <Input, Output> TaskHandler<Input, Output> executeCoalesced(Object key, Task<Input, Output> task, Pack<Input, Output> vars, List<TaskListener<Input, Output>> taskListeners, Collection<String> tags) {
+        return executeCoalesced(coalesced, key, task, vars, taskListeners, tags, null);
+    }
+
+    /**
+     * Executes the task unless an execution with the same key is in flight.
+     *
+     * @param executionListener the listener of the execution itself or
+     *                          {@code null}. It is called once for the
+     *                          execution if this request starts it, before
+     *                          the listeners of subscribers.
+     */
+    @SuppressWarnings("unchecked")
+    private <Input, Output> TaskHandler<Input, Output> executeCoalesced(ConcurrentHashMap<Object, CoalescedExecution<?, ?>> executions, Object key, Task<Input, Output> task, Pack<Input, Output> vars, List<TaskListener<Input, Output>> taskListeners, Collection<String> tags, TaskListener<Input, Output> executionListener) {
+        while (true) {
+            CoalescedExecution<Input, Output> execution = (CoalescedExecution<Input, Output>) executions.get(key);
+            if (execution != null) {
+                TaskHandler<Input, Output> subscriber = execution.subscribe(queue(tags), taskListeners);
+                if (subscriber != null) {
+                    return subscriber;
+                }
+                // the execution has just been destroyed or abandoned
+                executions.remove(key, execution);
+                continue;
+            }
+
+            execution = new CoalescedExecution<Input, Output>(executions, key);
+            List<TaskListener> listeners = copyTaskListeners(Collections.<TaskListener<Input, Output>>emptyList());
+            listeners.add(0, execution);
+            if (executionListener != null) {
+                listeners.add(1, executionListener);
+            }
+            AbstractTaskHandler<Input, Output> handler = createHandler(task, vars, listeners, tags, deadline(Long.MAX_VALUE));
+            execution.bind(handler);
+            // the first request is a subscriber too, so it is counted
+            TaskHandler<Input, Output> subscriber = execution.subscribe(queue(tags), taskListeners);
+            if (executions.putIfAbsent(key, execution) == null) {
+                if (admit(handler, tags, true)) {
+                    schedule(handler, 0);
+                }
+                return subscriber;
+            }
+            // another execution has been started concurrently
+            handler.detachFromParent();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <Input, Output> TaskHandler<Input, Output> executeCached(final Object key, Task<Input, Output> task, Pack<Input, Output> vars, List<TaskListener<Input, Output>> taskListeners, final Collection<String> tags) {
+        final ResultCache cache = resultCache;
+        if (cache == null) {
+            return execute(task, vars, taskListeners, tags);
+        }
+
+        ResultCache.Entry entry = cache.get(key);
+        if (entry != null) {
+            AbstractTaskHandler<Input, Output> handler = createHandler(task, vars, copyTaskListeners(taskListeners), tags, AbstractTaskHandler.NO_DEADLINE);
+            handler.complete((Output) entry.output());
+            return handler;
+        }
+
+        // an invalidation during the execution makes its output outdated,
+        // so the generation is read before the execution is started and
+        // the output is put once by the execution, not by its subscribers
+        final long generation = cache.generation(key, tags);
+        TaskListener<Input, Output> listener = new TaskListener.Default<Input, Output>() {
+            @Override
+            public void onSucceed(TaskHandler<Input, Output> handler) {
+                cache.put(key, tags, handler.vars().output(), generation);
+            }
+        };
+        return executeCoalesced(cached, key, task, vars, taskListeners, tags, listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * A task exceeding the capacity is rejected if the overflow policy is
+     * {@link OverflowPolicy#CALLER_RUNS}.
+     */
+    @Override
+    public <Input, Output> TaskHandler<Input, Output> executeAfter(TaskHandler<?, Input> previous, Task<Input, Output> task, Pack<Input, Output> vars, List<TaskListener<Input, Output>> taskListeners, Collection<String> tags) {
+        AbstractTaskHandler<Input, Output> handler = createHandler(task, vars, copyTaskListeners(taskListeners), tags, deadline(Long.MAX_VALUE));
+        admit(handler, tags, false);
+        // the one who removes the task from waiting ones dispatches it
+        waiting.put(handler, Boolean.TRUE);
+        if (handler.isInterrupted() && waiting.remove(handler) != null) {
+            handler.dispatch();
+        }
+        executeAfter(previous, handler);
+        return handler;
+    }
+
+    private <Previous, Input, Output> void executeAfter(TaskHandler<Previous, Input> previous, final AbstractTaskHandler<Input, Output> handler) {
+        previous.onComplete(new TaskCallback<Previous, Input>() {
+            @Override
+            public void onComplete(TaskHandler<Previous, Input> previous) {
+                if (waiting.remove(handler) == null) {
+                    return;
+                }
+                if (previous.getState() == TaskHandler.State.SUCCEED) {
+                    handler.vars().setInput(previous.vars().output());
+                    schedule(handler, 0);
+                } else {
+                    Throwable reason = previous.getThrowable();
+                    if (reason == null) {
+                        reason = new CancellationException("the previous task is canceled");
+                    }
+                    handler.drop(reason);
+                    handler.dispatch();
+                }
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The capacity of the executor is taken by each task of a batch. Batches
+     * are dispatched to working threads as soon as they are closed, without
+     * waiting for bulkheads and rate limits.
+     */
+    @Override
+    public <Input, Output> TaskHandler<Input, Output> executeBatched(BatchTask<Input, Output> batchTask, Pack<Input, Output> vars, List<TaskListener<Input, Output>> taskListeners, Collection<String> tags) {
+        AbstractTaskHandler<Input, Output> handler = createHandler(new Batches.Item<Input, Output>(batchTask), vars, copyTaskListeners(taskListeners), tags, deadline(Long.MAX_VALUE));
+        if (admit(handler, tags, true)) {
+            if (handler.isInterrupted()) {
+                handler.dispatch();
+            } else {
+                batches.add(handler, batchTask);
+            }
+        }
+        return handler;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * An execution exceeding the capacity is skipped whatever the overflow
+     * policy is.
+     */
+    @Override
+    public <Input, Output> TaskHandler<Input, Output> executeAtFixedRate(Task<Input, Output> task, Pack<Input, Output> vars, List<TaskListener<Input, Output>> taskListeners, Collection<String> tags, long initialDelay, long period, TimeUnit unit) {
+        return executePeriodic(task, vars, taskListeners, tags, unit.toNanos(initialDelay), unit.toNanos(period), true);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * An execution exceeding the capacity is skipped whatever the overflow
+     * policy is.
+     */
+    @Override
+    public <Input, Output> TaskHandler<Input, Output> executeWithFixedDelay(Task<Input, Output> task, Pack<Input, Output> vars, List<TaskListener<Input, Output>> taskListeners, Collection<String> tags, long initialDelay, long delay, TimeUnit unit) {
+        return executePeriodic(task, vars, taskListeners, tags, unit.toNanos(initialDelay), unit.toNanos(delay), false);
+    }
+
+    private <Input, Output> TaskHandler<Input, Output> executePeriodic(Task<Input, Output> task, Pack<Input, Output> vars, List<TaskListener<Input, Output>> taskListeners, Collection<String> tags, long initialDelay, long period, boolean fixedRate) {
+        if (period <= 0) {
+            throw new IllegalArgumentException();
+        }
+        // the handler of the periodic task is never dispatched, it has no listeners
+        AbstractTaskHandler<Input, Output> handler = createHandler(task, vars, Collections.<TaskListener>emptyList(), tags, deadline(Long.MAX_VALUE));
+        admit(handler, tags, false);
+        Periodic<Input, Output> periodicTask = new Periodic<Input, Output>(handler, vars, taskListeners, tags, period, fixedRate);
+        periodic.put(handler, periodicTask);
+        periodicTask.start(initialDelay);
+        return handler;
+    }
+
+    /**
+     * Executes a task periodically on behalf of the handler of the periodic
+     * task. The handler is kept delayed between executions, so interrupting
+     * it cancels the timer as for any other delayed task.
+     */
+    private final class Periodic<Input, Output> extends TaskListener.Default<Input, Output> implements Runnable {
+
+        private final AbstractTaskHandler<Input, Output> handler;
+        private final Pack<Input, Output> vars;
+        private final List<TaskListener<Input, Output>> taskListeners;
+        private final Collection<String> tags;
+        private final long period;
+        private final boolean fixedRate;
+        private long next;
+        private volatile TaskHandler<Input, Output> execution = null;
+
+        public Periodic(AbstractTaskHandler<Input, Output> handler, Pack<Input, Output> vars, List<TaskListener<Input, Output>> taskListeners, Collection<String> tags, long period, boolean fixedRate) {
+            this.handler = handler;
+            this.vars = vars;
+            // onDestroy is called in reverse order, so this listener is the last
+            this.taskListeners = new ArrayList<TaskListener<Input, Output>>(taskListeners);
+            this.taskListeners.add(0, this);
+            this.tags = tags;
+            this.period = period;
+            this.fixedRate = fixedRate;
+        }
+
+        public void start(long initialDelay) {
+            next = System.nanoTime() + initialDelay;
+            delay(initialDelay);
+        }
+
+        public void interruptExecution() {
+            TaskHandler<Input, Output> execution = this.execution;
+            if (execution != null) {
+                execution.interrupt();
+            }
+        }
+
+        private void delay(long delay) {
+            // the interruption is checked after the timer is removed and
+            // before it is added, so the handler is dispatched exactly once
+            if (handler.isInterrupted()) {
+                handler.dispatch();
+            } else {
+                put(handler, new Delay(timer.schedule(this, delay, TimeUnit.NANOSECONDS), null));
+            }
+        }
+
+        private void scheduleNext() {
+            long now = System.nanoTime();
+            next = fixedRate ? next + period : now + period;
+            delay(Math.max(next - now, 0));
+        }
+
+        @Override
+        public void run() {
+            delayed.remove(handler);
+            if (handler.isInterrupted()) {
+                handler.dispatch();
+                return;
+            }
+            // the execution is run on the timer thread, so it never blocks
+            // waiting for capacity and is never run inline
+            AbstractTaskHandler<Input, Output> execution = createHedgedHandler(handler.task(), vars, taskListeners, tags, AbstractTaskHandler.NO_DEADLINE);
+            if (!tryAdmit(execution)) {
+                // the execution is skipped, the next one is scheduled when
+                // it is destroyed
+                rejectedCount.incrementAndGet();
+                execution.reject(new TaskRejectedException("the executor has reached its capacity of " + capacity + " tasks"));
+                return;
+            }
+            this.execution = execution;
+            schedule(execution, 0);
+            // the handler could be interrupted before the execution was assigned
+            if (handler.isInterrupted()) {
+                interruptExecution();
+            }
+        }
+
+        @Override
+        public void onDestroy(TaskHandler<Input, Output> execution) {
+            if (execution.getState() == TaskHandler.State.FAILED) {
+                handler.drop(execution.getThrowable());
+            }
+            this.execution = null;
+            scheduleNext();
+        }
+
+    }
+
+    /**
+     * Hedges a task: if the task is still running when the delay estimated
+     * by its policy expires, its duplicate is executed as its child. The first
+     * execution to succeed finishes the task and the other one is interrupted.
+     */
+    private final class Hedge<Input, Output> extends TaskListener.Default<Input, Output> implements Runnable {
+
+        private final Hedging.Policy policy;
+        private final Collection<String> tags;
+        private volatile AbstractTaskHandler<Input, Output> handler;
+        private volatile long startTime;
+        private volatile TimingWheel.Timeout timeout = null;
+        private volatile TaskHandler<Input, Output> duplicate = null;
+
+        public Hedge(Hedging.Policy policy, Collection<String> tags) {
+            this.policy = policy;
+            this.tags = tags;
+        }
+
+        public void bind(AbstractTaskHandler<Input, Output> handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void onStart(TaskHandler<Input, Output> handler) {
+            startTime = System.nanoTime();
+            long delay = policy.getDelay();
+            if (delay >= 0) {
+                timeout = timer.schedule(this, delay, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (handler.getState() != TaskHandler.State.STARTED || handler.isInterrupted()) {
+                return;
+            }
+            List<TaskListener> listeners = new ArrayList<TaskListener>(1);
+            listeners.add(new TaskListener.Default<Input, Output>() {
+                @Override
+                public void onSucceed(TaskHandler<Input, Output> duplicate) {
+                    if (handler.finishHedged(duplicate.vars().output())) {
+                        hedgeWinCount.incrementAndGet();
+                    }
+                }
+            });
+            AbstractTaskHandler<Input, Output> duplicate = createHandler(handler.task(), new Pack<Input, Output>(handler.vars()), listeners, tags, handler.getDeadline());
+            duplicate.setParent(handler);
+            // a duplicate is optional, so it is never waited for on
+            // the timer thread whatever the overflow policy is
+            if (!tryAdmit(duplicate)) {
+                duplicate.reject(new TaskRejectedException("the executor has reached its capacity of " + capacity + " tasks"));
+                return;
+            }
+            this.duplicate = duplicate;
+            hedgedCount.incrementAndGet();
+            schedule(duplicate, 0);
+            // the task could be finished before the duplicate was assigned
+            if (handler.getState() != TaskHandler.State.STARTED) {
+                duplicate.interrupt();
+            }
+        }
+
+        @Override
+        public void onFinish(TaskHandler<Input, Output> handler) {
+            TimingWheel.Timeout timeout = this.timeout;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+            TaskHandler<Input, Output> duplicate = this.duplicate;
+            if (duplicate != null) {
+                duplicate.interrupt();
+            } else if (handler.getState() == TaskHandler.State.SUCCEED) {
+                // a hedged task could be finished by its duplicate, so only
+                // run times of tasks which were not hedged are recorded
+                policy.record(System.nanoTime() - startTime);
+            }
+        }
+
     }
 
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2013 Noveo Group
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * Except as contained in this notice, the name(s) of the above copyright holders
+ * shall not be used in advertising or otherwise to promote the sale, use or
+ * other dealings in this Software without prior written authorization.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.noveogroup.android.task;
+
+/**
+ * Interface definition for a callback to be invoked once a task is
+ * destroyed: it has succeeded, failed or has been canceled.
+ * <p/>
+ * Unlike {@link TaskListener} a callback can be registered at any time by
+ * {@link TaskHandler#onComplete(TaskCallback)}. The callback is called by
+ * the thread finishing the task, or by the registering thread if the task
+ * is already destroyed, so it should not block. If some exception is thrown
+ * from the callback it is reported to the uncaught exception handler of
+ * the thread.
+ *
+ * @param <Input>  type of task input.
+ * @param <Output> type of task output.
+ */
+public interface TaskCallback<Input, Output> {
+
+    /**
+     * Called when the task is destroyed.
+     *
+     * @param handler the task handler.
+     */
+    public void onComplete(TaskHandler<Input, Output> handler);
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2013 Noveo Group
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * Except as contained in this notice, the name(s) of the above copyright holders
+ * shall not be used in advertising or otherwise to promote the sale, use or
+ * other dealings in this Software without prior written authorization.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.noveogroup.android.task;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link TaskCompletionQueue} collects handlers of tasks in order of their
+ * completion, so the outputs of a large number of tasks can be processed
+ * as soon as they are ready.
+ * <p/>
+ * Tasks are executed through the queue in its task set, handlers of tasks
+ * executed some other way can be tracked by {@link #add(TaskHandler)}.
+ * A handler is put into the queue by a {@link TaskCallback} when its task
+ * is destroyed: it has succeeded, failed or has been canceled. Nothing is
+ * polled, consumers waiting in {@link #take()} are woken up by
+ * the callbacks.
+ */
+public final class TaskCompletionQueue {
+
+    private final TaskSet taskSet;
+    private final LinkedBlockingQueue<TaskHandler<?, ?>> completed = new LinkedBlockingQueue<TaskHandler<?, ?>>();
+    private final AtomicInteger pending = new AtomicInteger(0);
+
+    private final TaskCallback<Object, Object> callback = new TaskCallback<Object, Object>() {
+        @Override
+        public void onComplete(TaskHandler<Object, Object> handler) {
+            // a consumer taking the handler sees it is no longer pending
+            pending.decrementAndGet();
+            completed.add(handler);
+        }
+    };
+
+    /**
+     * Creates a queue executing tasks in the specified task set.
+     *
+     * @param taskSet the task set.
+     */
+    public TaskCompletionQueue(TaskSet taskSet) {
+        this.taskSet = taskSet;
+    }
+
+    public TaskSet taskSet() {
+        return taskSet;
+    }
+
+    /**
+     * Executes a task in the task set of the queue and tracks its handler.
+     *
+     * @param task  the task.
+     * @param input the input of the task.
+     * @return the task handler.
+     */
+    public <Input, Output> TaskHandler<Input, Output> execute(Task<Input, Output> task, Input input) {
+        return add(taskSet.execute(task, input));
+    }
+
+    /**
+     * Executes a task in the task set of the queue and tracks its handler.
+     *
+     * @param task the task.
+     * @param vars the vars of the task.
+     * @return the task handler.
+     */
+    public <Input, Output> TaskHandler<Input, Output> execute(Task<Input, Output> task, Pack<Input, Output> vars) {
+        return add(taskSet.execute(task, vars));
+    }
+
+    /**
+     * Tracks the handler, so it is put into the queue when its task is
+     * destroyed. The handler of a destroyed task is put into the queue
+     * at once.
+     *
+     * @param handler the task handler.
+     * @return the same handler.
+     */
+    @SuppressWarnings("unchecked")
+    public <Input, Output> TaskHandler<Input, Output> add(TaskHandler<Input, Output> handler) {
+        pending.incrementAndGet();
+        handler.onComplete((TaskCallback<Input, Output>) (TaskCallback<?, ?>) callback);
+        return handler;
+    }
+
+    /**
+     * Returns the number of tracked tasks which are not destroyed yet.
+     *
+     * @return the number of tasks.
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * Returns the number of handlers in the queue.
+     *
+     * @return the number of handlers.
+     */
+    public int size() {
+        return completed.size();
+    }
+
+    /**
+     * Retrieves and removes the handler of the next completed task,
+     * waiting if necessary.
+     *
+     * @return the task handler.
+     * @throws InterruptedException if the current thread is interrupted.
+     */
+    public TaskHandler<?, ?> take() throws InterruptedException {
+        return completed.take();
+    }
+
+    /**
+     * Retrieves and removes the handler of the next completed task.
+     *
+     * @return the task handler or {@code null} if no task has completed.
+     */
+    public TaskHandler<?, ?> poll() {
+        return completed.poll();
+    }
+
+    /**
+     * Retrieves and removes the handler of the next completed task,
+     * waiting up to the specified time if necessary.
+     *
+     * @param timeout the maximum time to wait.
+     * @param unit    the time unit of the timeout.
+     * @return the task handler or {@code null} if no task has completed
+     * within the timeout.
+     * @throws InterruptedException if the current thread is interrupted.
+     */
+    public TaskHandler<?, ?> poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return completed.poll(timeout, unit);
+    }
+
+}
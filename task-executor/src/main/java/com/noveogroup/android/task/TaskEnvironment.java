@@ -61,9 +61,11 @@ public interface TaskEnvironment<Input, Output> {
     public TaskHandler<Input, Output> handler();
 
     /**
-     * Returns synchronization object of {@link TaskExecutor}.
+     * Returns synchronization object of the task handler corresponding to
+     * this task environment.
      *
      * @return the synchronization object.
+     * @see TaskHandler#lock()
      */
     public Object lock();
 
@@ -72,17 +74,85 @@ public interface TaskEnvironment<Input, Output> {
      * corresponding to this task environment.
      * <p/>
      * Access to this container can be synchronized using an object returning
-     * {@link Pack#lock()} which is the same object as the global lock object
-     * of task executor returning by {@link TaskExecutor#lock()}.
+     * {@link Pack#lock()} which is the same object as the lock object of
+     * the task handler returning by {@link #lock()}.
      *
      * @return the container of arguments.
      * @see Pack
      * @see Pack#lock()
-     * @see TaskExecutor#lock()
+     * @see TaskHandler#lock()
      * @see #lock()
      */
     public Pack<Input, Output> vars();
 
+    /**
+     * Defers the completion of the task. When
+     * {@link Task#run(Object, TaskEnvironment)} returns the task stays
+     * {@link TaskHandler.State#STARTED}, the working thread is released and
+     * the value returned by the task is ignored. The task is finished when
+     * the returned {@link Completion} is completed, even if it is completed
+     * before {@link Task#run(Object, TaskEnvironment)} returns.
+     * <p/>
+     * If {@link Task#run(Object, TaskEnvironment)} throws an exception
+     * the task fails with it and the completion is ignored.
+     *
+     * @return the completion of the task.
+     */
+    public Completion<Output> defer();
+
+    /**
+     * Returns the cancellation token of the task. Unlike
+     * {@link Interruptible} implemented by a task, the token is bound to
+     * this execution and can hold any number of callbacks.
+     *
+     * @return the cancellation token.
+     * @see CancellationToken
+     */
+    public CancellationToken cancellationToken();
+
+    /**
+     * Opens a scope owning subtasks executed within it. Subtasks of
+     * the scope are executed in the task set of this task labeled by
+     * the additional tags. The scope is closed when the task returns from
+     * {@link Task#run(Object, TaskEnvironment)} if it is still open, so
+     * unfinished subtasks are interrupted and waited for.
+     *
+     * @param policy the policy of the scope.
+     * @param tags   additional tags of subtasks.
+     * @return the scope.
+     * @see TaskScope
+     */
+    public TaskScope openScope(TaskScope.Policy policy, String... tags);
+
+    /**
+     * Executes a subtask in the task set of this task. The subtask should
+     * be joined by {@link #join(TaskHandler)} so the joining thread can
+     * execute pending subtasks instead of waiting for them.
+     *
+     * @param task  the subtask.
+     * @param input the input of the subtask.
+     * @return the handler of the subtask.
+     */
+    public <I, O> TaskHandler<I, O> fork(Task<I, O> task, I input);
+
+    /**
+     * Waits for a subtask forked by {@link #fork(Task, Object)} and returns
+     * its output. While the subtask is waiting to be executed, the current
+     * thread executes it by itself, so does it with other pending subtasks
+     * forked by this task starting from the latest one. The current thread
+     * is blocked only if the subtask has been already started by another
+     * thread or is held by a limit of its task set.
+     * <p/>
+     * This allows recursive tasks to be split into subtasks without
+     * exhausting working threads of the executor.
+     *
+     * @param handler the handler of the subtask.
+     * @return the output of the subtask.
+     * @throws Throwable the failure of the subtask.
+     * @see TaskHandler#get()
+     */
+    public <I, O> O join(TaskHandler<I, O> handler) throws Throwable;
+
     /**
      * Posts an interrupt request to a task corresponding to this task environment.
      * Usually this method is called from inside of {@link Task#run(Object, TaskEnvironment)}
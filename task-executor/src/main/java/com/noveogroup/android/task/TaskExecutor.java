@@ -28,18 +28,22 @@ package com.noveogroup.android.task;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public interface TaskExecutor {
 
     /**
      * Returns synchronization object of this {@link TaskExecutor}.
      * <p/>
-     * Any access to this {@link TaskExecutor} should be synchronized using
-     * this object.
+     * This object can be used to synchronize complex and dependent sequences
+     * of accesses to this {@link TaskExecutor}. The executor itself doesn't
+     * hold it to submit, execute or query tasks, so tasks of different
+     * handlers never contend on it.
      * <p/>
-     * The same object should be returned from method {@link Pack#lock()} by
-     * all of collections of arguments associated with tasks belonging to
-     * this {@link TaskExecutor}.
+     * The same object is returned from method {@link Pack#lock()} by
+     * collections of arguments created by {@link #newPack()}. Such collections
+     * are used by tasks as is, any other one is copied to a collection
+     * synchronized by its own task handler (see {@link TaskHandler#lock()}).
      *
      * @return the synchronization object.
      */
@@ -101,6 +105,182 @@ public interface TaskExecutor {
 
     public <Input, Output> TaskHandler<Input, Output> execute(Task<Input, Output> task, Pack<Input, Output> vars, List<TaskListener<Input, Output>> taskListeners, Collection<String> tags);
 
+    /**
+     * Executes the task after the specified delay. Until then the task is
+     * {@link TaskHandler.State#CREATED}: it can be found in the queue and
+     * can be canceled by {@link TaskHandler#interrupt()}.
+     *
+     * @param task  the task.
+     * @param delay the delay.
+     * @param unit  the time unit of the delay.
+     * @param tags  the tags of the task.
+     * @return the task handler.
+     */
+    public <Input, Output> TaskHandler<Input, Output> executeDelayed(Task<Input, Output> task, long delay, TimeUnit unit, String... tags);
+
+    public <Input, Output> TaskHandler<Input, Output> executeDelayed(Task<Input, Output> task, Input input, long delay, TimeUnit unit, String... tags);
+
+    public <Input, Output> TaskHandler<Input, Output> executeDelayed(Task<Input, Output> task, Pack<Input, Output> vars, List<TaskListener<Input, Output>> taskListeners, Collection<String> tags, long delay, TimeUnit unit);
+
+    /**
+     * Executes the task which should be finished within the specified
+     * timeout. When the timeout expires the task is canceled if it is still
+     * in the queue, then {@link TaskHandler#getThrowable()} returns
+     * a {@link java.util.concurrent.TimeoutException}. A task which is already
+     * running is interrupted by {@link TaskHandler#interrupt()}.
+     * <p/>
+     * Tasks executed by the task through {@code env.owner().execute(...)}
+     * inherit the rest of the timeout unless they have a shorter one.
+     *
+     * @param task    the task.
+     * @param timeout the timeout.
+     * @param unit    the time unit of the timeout.
+     * @param tags    the tags of the task.
+     * @return the task handler.
+     */
+    public <Input, Output> TaskHandler<Input, Output> executeWithTimeout(Task<Input, Output> task, long timeout, TimeUnit unit, String... tags);
+
+    public <Input, Output> TaskHandler<Input, Output> executeWithTimeout(Task<Input, Output> task, Input input, long timeout, TimeUnit unit, String... tags);
+
+    public <Input, Output> TaskHandler<Input, Output> executeWithTimeout(Task<Input, Output> task, Pack<Input, Output> vars, List<TaskListener<Input, Output>> taskListeners, Collection<String> tags, long timeout, TimeUnit unit);
+
+    /**
+     * Executes the task unless an execution with the same key is in flight.
+     * While the execution is {@link TaskHandler.State#CREATED} or
+     * {@link TaskHandler.State#STARTED} every other request having an equal
+     * key gets a handler bound to the same execution: its
+     * {@link TaskHandler#join()} and {@link TaskHandler#get()} share one
+     * result. Interrupting a handler cancels it alone while other handlers
+     * are bound to the execution, interrupting the last one interrupts the
+     * execution. Listeners are called for each request with its own handler.
+     * <p/>
+     * Handlers bound to an execution aren't put to the queue and can't be
+     * found in task sets, the execution is. The task, the arguments and
+     * the tags of the first request are used.
+     *
+     * @param key   the key identifying the execution.
+     * @param task  the task.
+     * @param input the input of the task.
+     * @param tags  the tags of the task.
+     * @return the task handler.
+     */
+    public <Input, Output> TaskHandler<Input, Output> executeCoalesced(Object key, Task<Input, Output> task, Input input, String... tags);
+
+    /**
+     * Executes the task unless an execution of an equal task with an equal
+     * input is in flight. The key of the execution is made of the task and
+     * the input as described in
+     * {@link #executeCoalesced(Object, Task, Object, String...)}, so they should
+     * implement {@link Object#equals(Object)} and {@link Object#hashCode()}.
+     *
+     * @param task  the task.
+     * @param input the input of the task.
+     * @param tags  the tags of the task.
+     * @return the task handler.
+     */
+    public <Input, Output> TaskHandler<Input, Output> executeCoalesced(Task<Input, Output> task, Input input, String... tags);
+
+    public <Input, Output> TaskHandler<Input, Output> executeCoalesced(Object key, Task<Input, Output> task, Pack<Input, Output> vars, List<TaskListener<Input, Output>> taskListeners, Collection<String> tags);
+
+    /**
+     * Executes the task unless its output is cached. A cached output is
+     * returned by a handler which is already {@link TaskHandler.State#SUCCEED},
+     * no working thread is involved. Otherwise the task is executed the same
+     * way as by {@link #executeCoalesced(Object, Task, Object, String...)}
+     * and its output is cached if it succeeds. Keys of cached executions
+     * are apart from keys of coalesced ones, equal keys don't share them.
+     * <p/>
+     * If the executor has no cache of results the task is just executed.
+     *
+     * @param key   the key identifying the output.
+     * @param task  the task.
+     * @param input the input of the task.
+     * @param tags  the tags of the task.
+     * @return the task handler.
+     * @see ResultCache
+     */
+    public <Input, Output> TaskHandler<Input, Output> executeCached(Object key, Task<Input, Output> task, Input input, String... tags);
+
+    public <Input, Output> TaskHandler<Input, Output> executeCached(Object key, Task<Input, Output> task, Pack<Input, Output> vars, List<TaskListener<Input, Output>> taskListeners, Collection<String> tags);
+
+    /**
+     * Executes the task when the previous task succeeds, the output of
+     * the previous task becomes the input of the task. Until then the task
+     * is {@link TaskHandler.State#CREATED}: it can be found in the queue and
+     * can be canceled by {@link TaskHandler#interrupt()}, but no thread waits
+     * for it. If the previous task fails or is canceled the task is canceled
+     * and {@link TaskHandler#getThrowable()} returns the failure of
+     * the previous task or a {@link java.util.concurrent.CancellationException}.
+     *
+     * @param previous the previous task.
+     * @param task     the task.
+     * @param tags     the tags of the task.
+     * @return the task handler.
+     */
+    public <Input, Output> TaskHandler<Input, Output> executeAfter(TaskHandler<?, Input> previous, Task<Input, Output> task, String... tags);
+
+    public <Input, Output> TaskHandler<Input, Output> executeAfter(TaskHandler<?, Input> previous, Task<Input, Output> task, Pack<Input, Output> vars, List<TaskListener<Input, Output>> taskListeners, Collection<String> tags);
+
+    /**
+     * Executes a small task which is processed in a batch together with other
+     * tasks of the same batch task having the same tags. The task has its own
+     * handler: it stays {@link TaskHandler.State#CREATED} until its batch is
+     * run, then it passes through the usual life cycle and its output is set
+     * to the arguments of the handler.
+     *
+     * @param batchTask the batch task.
+     * @param input     the input of the task.
+     * @param tags      the tags of the task.
+     * @return the task handler.
+     * @see BatchTask
+     */
+    public <Input, Output> TaskHandler<Input, Output> executeBatched(BatchTask<Input, Output> batchTask, Input input, String... tags);
+
+    public <Input, Output> TaskHandler<Input, Output> executeBatched(BatchTask<Input, Output> batchTask, Pack<Input, Output> vars, List<TaskListener<Input, Output>> taskListeners, Collection<String> tags);
+
+    /**
+     * Executes the task periodically: first after the initial delay and then
+     * with the given period between starts of the executions. If an execution
+     * takes longer than the period the next one starts late, executions never
+     * overlap.
+     * <p/>
+     * The returned handler represents the whole periodic task: it stays
+     * {@link TaskHandler.State#CREATED} until it is interrupted, interrupting
+     * it interrupts the current execution too. Each execution is a separate
+     * task with the same tags reported to the task listeners. If an execution
+     * fails no more executions are done, the returned handler becomes
+     * {@link TaskHandler.State#CANCELED} and its
+     * {@link TaskHandler#getThrowable()} returns the failure.
+     *
+     * @param task         the task.
+     * @param initialDelay the delay of the first execution.
+     * @param period       the period between starts of executions.
+     * @param unit         the time unit of the delay and the period.
+     * @param tags         the tags of the task.
+     * @return the handler of the periodic task.
+     */
+    public <Input, Output> TaskHandler<Input, Output> executeAtFixedRate(Task<Input, Output> task, long initialDelay, long period, TimeUnit unit, String... tags);
+
+    public <Input, Output> TaskHandler<Input, Output> executeAtFixedRate(Task<Input, Output> task, Pack<Input, Output> vars, List<TaskListener<Input, Output>> taskListeners, Collection<String> tags, long initialDelay, long period, TimeUnit unit);
+
+    /**
+     * Executes the task periodically: first after the initial delay and then
+     * with the given delay between the end of an execution and the start of
+     * the next one. The returned handler represents the whole periodic task
+     * the same way as it does for
+     * {@link #executeAtFixedRate(Task, long, long, TimeUnit, String...)}.
+     *
+     * @param task         the task.
+     * @param initialDelay the delay of the first execution.
+     * @param delay        the delay between executions.
+     * @param unit         the time unit of the delays.
+     * @param tags         the tags of the task.
+     * @return the handler of the periodic task.
+     */
+    public <Input, Output> TaskHandler<Input, Output> executeWithFixedDelay(Task<Input, Output> task, long initialDelay, long delay, TimeUnit unit, String... tags);
+
+    public <Input, Output> TaskHandler<Input, Output> executeWithFixedDelay(Task<Input, Output> task, Pack<Input, Output> vars, List<TaskListener<Input, Output>> taskListeners, Collection<String> tags, long initialDelay, long delay, TimeUnit unit);
+
     public void shutdown();
 
     public boolean isShutdown();
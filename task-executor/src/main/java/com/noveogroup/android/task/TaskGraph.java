@@ -0,0 +1,464 @@
+/*
+ * Copyright (c) 2013 Noveo Group
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * Except as contained in this notice, the name(s) of the above copyright holders
+ * shall not be used in advertising or otherwise to promote the sale, use or
+ * other dealings in this Software without prior written authorization.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.noveogroup.android.task;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@link TaskGraph} is a task executing a directed acyclic graph of tasks.
+ * Nodes of the graph are tasks and edges pass outputs of nodes to vars of
+ * the following ones: an edge puts the output of its source node into
+ * the {@link Pack} of its target node by the key of the edge,
+ * {@link Pack#INPUT} by default.
+ * <p/>
+ * The input of the graph is a {@link Pack} containing inputs of nodes by
+ * their keys. The output of the graph is a {@link Pack} containing outputs
+ * of all the nodes by their keys. The key of a node is its name prefixed by
+ * {@link #KEY_PREFIX}, see {@link #key(String)}, so it never collides with
+ * {@link Pack#INPUT} and {@link Pack#OUTPUT}.
+ * <p/>
+ * Each node is executed as a separate task in the task set of the graph
+ * labeled by the name of the node, so it can be watched and interrupted
+ * as any other task. A node is executed as soon as all of its predecessors
+ * succeed. If several nodes become ready at once, the ones with the longest
+ * remaining path to the end of the graph are submitted first. The path is
+ * measured by costs of nodes, one by default. The rank affects only
+ * the order of submission: the executor decides which of the submitted
+ * nodes runs first, for example a pool having idle threads runs them all
+ * at once and {@link WorkStealingTaskExecutor} takes nodes submitted by its
+ * working thread in reverse order. The graph itself doesn't hold a working
+ * thread while its nodes are running.
+ * <p/>
+ * If a node fails or is canceled the nodes depending on it are not executed
+ * at all: they are put to the task set as tasks following the failed one,
+ * which are {@link TaskHandler.State#CANCELED} at once and report its failure
+ * by {@link TaskHandler#getThrowable()}. The rest of the graph is completed
+ * and then the graph fails with the first failure. Interruption of the graph
+ * is passed to its running nodes.
+ * <p/>
+ * The graph can be executed many times, also concurrently. Changes of
+ * the graph don't affect executions which have already been started.
+ */
+public final class TaskGraph implements Task<Pack<?, ?>, Pack<?, ?>> {
+
+    /**
+     * The prefix of keys of nodes in the input and the output of the graph.
+     */
+    public static final String KEY_PREFIX = "node:";
+
+    /**
+     * Returns the key of the node in the input and the output of the graph.
+     *
+     * @param name the name of the node.
+     * @return the key.
+     */
+    public static String key(String name) {
+        return KEY_PREFIX + name;
+    }
+
+    /**
+     * A node of the graph.
+     *
+     * @param <Input>  type of task input.
+     * @param <Output> type of task output.
+     */
+    public static final class Node<Input, Output> {
+
+        private final TaskGraph graph;
+        private final int index;
+        private final String name;
+        private final Task<Input, Output> task;
+        private final long cost;
+
+        private Node(TaskGraph graph, int index, String name, Task<Input, Output> task, long cost) {
+            this.graph = graph;
+            this.index = index;
+            this.name = name;
+            this.task = task;
+            this.cost = cost;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the key of the node in the input and the output of
+         * the graph.
+         *
+         * @return the key.
+         */
+        public String getKey() {
+            return key(name);
+        }
+
+        public Task<Input, Output> getTask() {
+            return task;
+        }
+
+        public long getCost() {
+            return cost;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+
+    }
+
+    private static final class Edge {
+
+        private final int from;
+        private final int to;
+        private final String key;
+
+        private Edge(int from, int to, String key) {
+            this.from = from;
+            this.to = to;
+            this.key = key;
+        }
+
+    }
+
+    private final List<Node<?, ?>> nodes = new ArrayList<Node<?, ?>>();
+    private final Set<String> names = new HashSet<String>();
+    private final List<Edge> edges = new ArrayList<Edge>();
+
+    /**
+     * Adds a node of cost one to the graph.
+     *
+     * @param name the unique name of the node.
+     * @param task the task of the node.
+     * @return the node.
+     */
+    public <Input, Output> Node<Input, Output> add(String name, Task<Input, Output> task) {
+        return add(name, task, 1);
+    }
+
+    /**
+     * Adds a node to the graph.
+     *
+     * @param name the unique name of the node.
+     * @param task the task of the node.
+     * @param cost the estimated cost of the node used to find the longest
+     *             remaining paths.
+     * @return the node.
+     */
+    public synchronized <Input, Output> Node<Input, Output> add(String name, Task<Input, Output> task, long cost) {
+        if (name == null || task == null) {
+            throw new NullPointerException();
+        }
+        if (cost < 0) {
+            throw new IllegalArgumentException("cost cannot be negative");
+        }
+        if (!names.add(name)) {
+            throw new IllegalArgumentException("the graph already contains node " + name);
+        }
+        Node<Input, Output> node = new Node<Input, Output>(this, nodes.size(), name, task, cost);
+        nodes.add(node);
+        return node;
+    }
+
+    /**
+     * Passes the output of a node as the input of another one.
+     *
+     * @param from the source node.
+     * @param to   the target node.
+     * @return this graph.
+     * @throws IllegalArgumentException if the edge makes a cycle.
+     */
+    public <T> TaskGraph connect(Node<?, T> from, Node<T, ?> to) {
+        return connect(from, to, Pack.INPUT);
+    }
+
+    /**
+     * Passes the output of a node to vars of another one.
+     *
+     * @param from the source node.
+     * @param to   the target node.
+     * @param key  the key of the output in vars of the target node.
+     * @return this graph.
+     * @throws IllegalArgumentException if the edge makes a cycle.
+     */
+    public synchronized TaskGraph connect(Node<?, ?> from, Node<?, ?> to, String key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        if (from.graph != this || to.graph != this) {
+            throw new IllegalArgumentException("the node belongs to another graph");
+        }
+        if (isReachable(to.index, from.index)) {
+            throw new IllegalArgumentException("the edge " + from + " -> " + to + " makes a cycle");
+        }
+        edges.add(new Edge(from.index, to.index, key));
+        return this;
+    }
+
+    private boolean isReachable(int from, int to) {
+        boolean[] visited = new boolean[nodes.size()];
+        LinkedList<Integer> stack = new LinkedList<Integer>();
+        stack.add(from);
+        while (!stack.isEmpty()) {
+            int index = stack.removeLast();
+            if (index == to) {
+                return true;
+            }
+            if (!visited[index]) {
+                visited[index] = true;
+                for (Edge edge : edges) {
+                    if (edge.from == index) {
+                        stack.add(edge.to);
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Pack<?, ?> run(Pack<?, ?> input, TaskEnvironment<Pack<?, ?>, Pack<?, ?>> env) throws Throwable {
+        Execution execution;
+        synchronized (this) {
+            execution = new Execution(env, input);
+        }
+        execution.start();
+        return null;
+    }
+
+    /**
+     * A single execution of the graph.
+     */
+    private final class Execution implements Interruptible {
+
+        private final Completion<Pack<?, ?>> completion;
+        private final AbstractTaskHandler<?, ?> parent;
+        private final TaskSet owner;
+
+        // snapshot of the graph
+        private final Node<?, ?>[] nodes;
+        private final Edge[][] successors;
+        private final long[] ranks;
+
+        private final Pack<?, ?>[] vars;
+        // the number of predecessors to wait for or -1 if a predecessor fails
+        private final AtomicIntegerArray predecessors;
+        private final AtomicInteger remaining;
+        private final Pack<Object, Object> outputs = new Pack<Object, Object>();
+        private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        private final List<TaskHandler<?, ?>> handlers = new CopyOnWriteArrayList<TaskHandler<?, ?>>();
+        private volatile boolean interrupted = false;
+
+        public Execution(TaskEnvironment<Pack<?, ?>, Pack<?, ?>> env, Pack<?, ?> input) {
+            this.completion = env.defer();
+            this.parent = AbstractTaskHandler.current();
+            this.owner = env.owner();
+
+            int count = TaskGraph.this.nodes.size();
+            this.nodes = TaskGraph.this.nodes.toArray(new Node<?, ?>[count]);
+            this.successors = new Edge[count][];
+            this.ranks = new long[count];
+            this.vars = new Pack<?, ?>[count];
+            this.predecessors = new AtomicIntegerArray(count);
+            this.remaining = new AtomicInteger(count);
+
+            List<List<Edge>> lists = new ArrayList<List<Edge>>(count);
+            for (int i = 0; i < count; i++) {
+                lists.add(new ArrayList<Edge>());
+                vars[i] = new Pack<Object, Object>();
+                String key = key(nodes[i].name);
+                if (input != null && input.containsKey(key)) {
+                    vars[i].put(Pack.INPUT, input.get(key));
+                }
+            }
+            for (Edge edge : edges) {
+                lists.get(edge.from).add(edge);
+                predecessors.incrementAndGet(edge.to);
+            }
+            for (int i = 0; i < count; i++) {
+                successors[i] = lists.get(i).toArray(new Edge[lists.get(i).size()]);
+            }
+
+            // the rank of a node is the longest path from it to the end of
+            // the graph, so successors are ranked first in topological order
+            int[] order = new int[count];
+            int[] degrees = new int[count];
+            int size = 0;
+            for (int i = 0; i < count; i++) {
+                degrees[i] = predecessors.get(i);
+                if (degrees[i] == 0) {
+                    order[size++] = i;
+                }
+            }
+            for (int head = 0; head < size; head++) {
+                for (Edge edge : successors[order[head]]) {
+                    if (--degrees[edge.to] == 0) {
+                        order[size++] = edge.to;
+                    }
+                }
+            }
+            for (int i = count - 1; i >= 0; i--) {
+                long rank = 0;
+                for (Edge edge : successors[order[i]]) {
+                    rank = Math.max(rank, ranks[edge.to]);
+                }
+                ranks[order[i]] = nodes[order[i]].cost + rank;
+            }
+        }
+
+        public void start() {
+            completion.setInterruptible(this);
+            if (nodes.length == 0) {
+                completion.succeed(outputs);
+                return;
+            }
+            List<Integer> ready = new ArrayList<Integer>();
+            for (int i = 0; i < nodes.length; i++) {
+                if (predecessors.get(i) == 0) {
+                    ready.add(i);
+                }
+            }
+            execute(ready);
+        }
+
+        @Override
+        public void interrupt() {
+            interrupted = true;
+            for (TaskHandler<?, ?> handler : handlers) {
+                handler.interrupt();
+            }
+        }
+
+        private void execute(List<Integer> ready) {
+            // nodes on the longest remaining path go first
+            Collections.sort(ready, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return ranks[a] < ranks[b] ? 1 : ranks[a] > ranks[b] ? -1 : a.compareTo(b);
+                }
+            });
+            for (int index : ready) {
+                execute(index, nodes[index]);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private <I, O> void execute(final int index, Node<I, O> node) {
+            TaskHandler<I, O> handler = owner.sub(node.name).execute(node.task, (Pack<I, O>) vars[index]);
+            handlers.add(handler);
+            if (interrupted) {
+                handler.interrupt();
+            }
+            handler.onComplete(new TaskCallback<I, O>() {
+                @Override
+                public void onComplete(TaskHandler<I, O> handler) {
+                    onNodeComplete(index, handler);
+                }
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        private <I, O> void cancel(final int index, Node<I, O> node, TaskHandler<?, ?> previous) {
+            // the node is canceled by the executor as a task following the failed one
+            TaskSet set = owner.sub(node.name);
+            TaskHandler<I, O> handler = set.executor().executeAfter((TaskHandler<?, I>) previous, node.task, (Pack<I, O>) vars[index],
+                    Collections.<TaskListener<I, O>>emptyList(), set.tags());
+            handlers.add(handler);
+            handler.onComplete(new TaskCallback<I, O>() {
+                @Override
+                public void onComplete(TaskHandler<I, O> handler) {
+                    onNodeComplete(index, handler);
+                }
+            });
+        }
+
+        private void onNodeComplete(int index, final TaskHandler<?, ?> handler) {
+            final List<Integer> ready = new ArrayList<Integer>();
+            final List<Integer> canceled = new ArrayList<Integer>();
+            if (handler.getState() == TaskHandler.State.SUCCEED) {
+                Object output = handler.vars().output();
+                outputs.put(key(nodes[index].name), output);
+
+                for (Edge edge : successors[index]) {
+                    vars[edge.to].put(edge.key, output);
+                    if (predecessors.decrementAndGet(edge.to) == 0) {
+                        ready.add(edge.to);
+                    }
+                }
+            } else {
+                failure.compareAndSet(null, Tasks.failureOf(handler));
+                // nodes depending on the failed one will never be ready
+                for (Edge edge : successors[index]) {
+                    if (predecessors.getAndSet(edge.to, -1) > 0) {
+                        canceled.add(edge.to);
+                    }
+                }
+            }
+            if (!ready.isEmpty() || !canceled.isEmpty()) {
+                onBehalf(new Runnable() {
+                    @Override
+                    public void run() {
+                        execute(ready);
+                        for (int index : canceled) {
+                            cancel(index, nodes[index], handler);
+                        }
+                    }
+                });
+            }
+
+            if (remaining.decrementAndGet() == 0) {
+                Throwable throwable = failure.get();
+                if (throwable == null) {
+                    completion.succeed(outputs);
+                } else {
+                    completion.fail(throwable);
+                }
+            }
+        }
+
+        private void onBehalf(Runnable action) {
+            // nodes inherit the deadline of the graph
+            if (parent == null) {
+                action.run();
+            } else {
+                parent.runOnBehalf(action);
+            }
+        }
+
+    }
+
+}
@@ -27,8 +27,10 @@
 package com.noveogroup.android.task;
 
 import java.lang.reflect.InvocationTargetException;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 public interface TaskHandler<Input, Output> {
@@ -143,6 +145,14 @@ public interface TaskHandler<Input, Output> {
 
     public TaskSet owner();
 
+    /**
+     * Returns synchronization object of this task handler.
+     * <p/>
+     * The same object is returned from method {@link Pack#lock()} of
+     * the collection of arguments of the task.
+     *
+     * @return the synchronization object.
+     */
     public Object lock();
 
     public Task<Input, Output> task();
@@ -151,10 +161,25 @@ public interface TaskHandler<Input, Output> {
 
     public State getState();
 
+    /**
+     * Returns an exception thrown by the task if it is
+     * {@link State#FAILED}. If the task was {@link State#CANCELED} by
+     * the executor instead of being queued (see {@link TaskRejectedException})
+     * the reason of the cancellation is returned.
+     *
+     * @return the exception or null.
+     */
     public Throwable getThrowable();
 
     public boolean isInterrupted();
 
+    /**
+     * Interrupts the task. A task waiting in the queue is canceled.
+     * A running task gets its interrupt flag set, its working thread is
+     * interrupted and {@link Interruptible#interrupt()} is called if the task
+     * implements it. Tasks executed by the task while it is running are
+     * interrupted too, down the whole tree of tasks.
+     */
     public void interrupt();
 
     public void join() throws InterruptedException;
@@ -163,4 +188,30 @@ public interface TaskHandler<Input, Output> {
 
     public Output get() throws Throwable;
 
+    /**
+     * Registers a callback to be called once the task is destroyed. No thread
+     * waits for the task. If the task is already destroyed the callback is
+     * called in the current thread.
+     *
+     * @param callback the callback.
+     */
+    public void onComplete(TaskCallback<Input, Output> callback);
+
+    /**
+     * Executes the next task with the output of this task as its input when
+     * this task succeeds. Until then the next task is
+     * {@link State#CREATED} and no thread waits for it. If this task fails or
+     * is canceled the next task is canceled and its
+     * {@link #getThrowable()} returns the reason.
+     *
+     * @param task the next task.
+     * @param tags the tags of the next task.
+     * @param <T>  type of output of the next task.
+     * @return the handler of the next task.
+     * @see TaskExecutor#executeAfter(TaskHandler, Task, Pack, List, Collection)
+     */
+    public <T> TaskHandler<Output, T> thenExecute(Task<Output, T> task, String... tags);
+
+    public <T> TaskHandler<Output, T> thenExecute(Task<Output, T> task, List<TaskListener<Output, T>> taskListeners, Collection<String> tags);
+
 }
@@ -72,6 +72,18 @@ package com.noveogroup.android.task;
  * {@link TaskSet} had been already interrupted. In this cases the task will be
  * removed from queue, state will be set to {@link TaskHandler.State#CANCELED}
  * and an interruption request will be sent.</li>
+ * <li>A task exceeding capacity of the executor may be rejected
+ * (see {@link OverflowPolicy}). A rejected task is never queued: its
+ * {@link #onCreate(TaskHandler)}, {@link #onCanceled(TaskHandler)},
+ * {@link #onDestroy(TaskHandler)} are called in the thread requesting
+ * the execution and {@link TaskHandler#getThrowable()} returns
+ * {@link TaskRejectedException}.</li>
+ * <li>A task whose output is found in the cache of results (see
+ * {@link ResultCache}) is never queued: it becomes
+ * {@link TaskHandler.State#SUCCEED} at once and its
+ * {@link #onCreate(TaskHandler)}, {@link #onSucceed(TaskHandler)},
+ * {@link #onDestroy(TaskHandler)} are called in the thread requesting
+ * the execution.</li>
  * <li>When one of background working threads is ready to execute task
  * callbacks it check if the task was already interrupted. If the task is
  * interrupted (so it is not in the queue) the thread executes
@@ -79,13 +91,15 @@ package com.noveogroup.android.task;
  * {@link #onDestroy(TaskHandler)} and finishes task processing.</li>
  * <li>If the task hasn't been interrupted the working thread executes
  * {@link #onCreate(TaskHandler)}, {@link #onQueueInsert(TaskHandler)} so
- * task becomes prepared and starts to wait to be executed.</li>
- * <li>If user cancels the task while it is waiting it will be removed from
+ * task becomes prepared. The same working thread goes on to execute
+ * the task, it isn't dispatched to the working threads once again.</li>
+ * <li>If user cancels the task before it is started it will be removed from
  * the queue, its state will be set to {@link TaskHandler.State#CANCELED} and
  * {@link #onCanceled(TaskHandler)}, {@link #onQueueRemove(TaskHandler)},
- * {@link #onDestroy(TaskHandler)} will be executed in a separate thread.
+ * {@link #onDestroy(TaskHandler)} will be executed by the working thread.
  * Finally, the task processing will be finished.</li>
- * <li>If user doesn't cancel the task it will be executed after some time.
+ * <li>If user doesn't cancel the task it will be executed right after
+ * the callbacks above.
  * Initially, working thread sets state to {@link TaskHandler.State#STARTED}
  * and call {@link #onStart(TaskHandler)}. After that thread calls
  * {@link Task#run(Object, TaskEnvironment)}.</li>
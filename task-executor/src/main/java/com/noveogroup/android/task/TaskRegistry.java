@@ -0,0 +1,480 @@
+/*
+ * Copyright (c) 2013 Noveo Group
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * Except as contained in this notice, the name(s) of the above copyright holders
+ * shall not be used in advertising or otherwise to promote the sale, use or
+ * other dealings in this Software without prior written authorization.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.noveogroup.android.task;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link TaskRegistry} is a concurrent set of task handlers which are
+ * currently in the queue of a {@link TaskExecutor}.
+ * <p/>
+ * The registry is striped by identity of task handlers: each handler belongs
+ * to one of independent stripes, so insertions and removals of different
+ * tasks don't contend with each other and never take the global lock
+ * returned by {@link TaskExecutor#lock()}.
+ * <p/>
+ * Handlers are indexed by tags and states. Each tag is interned as a bit
+ * position, so every handler carries a bit set of its tags, and for each
+ * tag the registry keeps a separate bucket of handlers per state with
+ * a maintained size counter, as well as a counter of all of its handlers.
+ * A selection walks the smallest bucket of the requested tags only and
+ * the number of handlers labeled by one tag
+ * (or by no tags at all) is known without any iteration. Tags are interned
+ * for the lifetime of the registry, so they are expected to come from
+ * a bounded vocabulary.
+ * <p/>
+ * Selections are weakly consistent: they reflect the state of the registry
+ * at some point at or since the beginning of the selection.
+ */
+final class TaskRegistry {
+
+    private static final int STRIPES_PER_PROCESSOR = 4;
+    private static final TaskHandler.State[] STATES = TaskHandler.State.values();
+
+    /**
+     * A set of entries with a maintained size.
+     */
+    private static final class Bucket {
+
+        private final ConcurrentHashMap<Entry, Boolean> entries;
+        private final PaddedAtomicInteger size = new PaddedAtomicInteger(0);
+
+        public Bucket(int stripes) {
+            this.entries = new ConcurrentHashMap<Entry, Boolean>(16, 0.75f, stripes);
+        }
+
+        public void add(Entry entry) {
+            if (entries.put(entry, Boolean.TRUE) == null) {
+                size.incrementAndGet();
+            }
+        }
+
+        public void remove(Entry entry) {
+            if (entries.remove(entry) != null) {
+                size.decrementAndGet();
+            }
+        }
+
+        public int size() {
+            return Math.max(size.get(), 0);
+        }
+
+    }
+
+    /**
+     * An interned tag: its bit position and buckets of labeled handlers.
+     */
+    private static final class Tag {
+
+        private final int index;
+        private final Bucket[] buckets;
+        // the number of labeled handlers whatever their states are
+        private final PaddedAtomicInteger size = new PaddedAtomicInteger(0);
+
+        public Tag(int index, Bucket[] buckets) {
+            this.index = index;
+            this.buckets = buckets;
+        }
+
+    }
+
+    /**
+     * A registered handler, its tags, the order it was added in and
+     * the state it is indexed by.
+     */
+    private static final class Entry {
+
+        private final TaskHandler<?, ?> handler;
+        private final Tag[] tags;
+        private final long[] bits;
+        private final long sequence;
+        private volatile TaskHandler.State state;
+
+        public Entry(TaskHandler<?, ?> handler, Tag[] tags, long sequence) {
+            this.handler = handler;
+            this.tags = tags;
+            this.bits = bits(tags);
+            this.sequence = sequence;
+        }
+
+        public boolean hasTags(long[] tagBits) {
+            for (int i = 0; i < tagBits.length; i++) {
+                long word = i < bits.length ? bits[i] : 0;
+                if ((word & tagBits[i]) != tagBits[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+    private static long[] bits(Tag[] tags) {
+        int length = 0;
+        for (Tag tag : tags) {
+            length = Math.max(length, (tag.index >>> 6) + 1);
+        }
+        long[] bits = new long[length];
+        for (Tag tag : tags) {
+            bits[tag.index >>> 6] |= 1L << tag.index;
+        }
+        return bits;
+    }
+
+    private static Bucket[] createBuckets(int stripes) {
+        Bucket[] buckets = new Bucket[STATES.length];
+        for (TaskHandler.State state : TaskHandler.State.ALIVE_SET) {
+            buckets[state.ordinal()] = new Bucket(stripes);
+        }
+        return buckets;
+    }
+
+    private final int stripes;
+    private final ConcurrentMap<String, Tag> tags = new ConcurrentHashMap<String, Tag>();
+    private final Bucket[] buckets;
+    private final PaddedAtomicInteger size = new PaddedAtomicInteger(0);
+    private final ConcurrentHashMap<TaskHandler<?, ?>, Entry> entries;
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Creates new empty registry.
+     */
+    public TaskRegistry() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        this.stripes = STRIPES_PER_PROCESSOR * processors;
+        this.buckets = createBuckets(stripes);
+        this.entries = new ConcurrentHashMap<TaskHandler<?, ?>, Entry>(16, 0.75f, stripes);
+    }
+
+    private Tag intern(String name) {
+        Tag tag = tags.get(name);
+        if (tag == null) {
+            synchronized (tags) {
+                tag = tags.get(name);
+                if (tag == null) {
+                    // tag buckets are smaller than the whole registry
+                    int tagStripes = Math.max(stripes / STRIPES_PER_PROCESSOR, 1);
+                    tag = new Tag(tags.size(), createBuckets(tagStripes));
+                    tags.put(name, tag);
+                }
+            }
+        }
+        return tag;
+    }
+
+    /**
+     * Returns the buckets to walk through to select handlers labeled by
+     * the specified tags in the specified states. Buckets are ordered the way
+     * handlers move through them, so a moving handler can't be missed.
+     */
+    private List<Bucket> candidates(Tag[] tags, Collection<TaskHandler.State> states) {
+        List<Bucket> list = new ArrayList<Bucket>(states.size());
+        for (TaskHandler.State state : TaskHandler.State.values()) {
+            if (!states.contains(state)) {
+                continue;
+            }
+            Bucket smallest = buckets[state.ordinal()];
+            if (smallest == null) {
+                // destroyed handlers are never kept in the registry
+                continue;
+            }
+            for (Tag tag : tags) {
+                Bucket bucket = tag.buckets[state.ordinal()];
+                if (bucket.size() <= smallest.size()) {
+                    smallest = bucket;
+                }
+            }
+            list.add(smallest);
+        }
+        return list;
+    }
+
+    private Tag[] lookup(Collection<String> names) {
+        Tag[] array = new Tag[names.size()];
+        int i = 0;
+        for (String name : names) {
+            Tag tag = tags.get(name);
+            if (tag == null) {
+                return null;
+            }
+            array[i++] = tag;
+        }
+        return array;
+    }
+
+    private void index(Entry entry, TaskHandler.State state) {
+        buckets[state.ordinal()].add(entry);
+        for (Tag tag : entry.tags) {
+            tag.buckets[state.ordinal()].add(entry);
+        }
+    }
+
+    private void unindex(Entry entry, TaskHandler.State state) {
+        for (Tag tag : entry.tags) {
+            tag.buckets[state.ordinal()].remove(entry);
+        }
+        buckets[state.ordinal()].remove(entry);
+    }
+
+    /**
+     * Adds the task handler to this registry. Handlers which are not alive
+     * are not added.
+     * <p/>
+     * The handler is indexed before it is inserted, so a concurrent removal
+     * finds it indexed. It is removed again if it is destroyed before it is
+     * inserted, because its own removal could miss it then.
+     *
+     * @param handler the task handler.
+     * @return {@code true} if the handler has been added.
+     */
+    public boolean add(TaskHandler<?, ?> handler) {
+        TaskHandler.State state = handler.getState();
+        if (!state.isAlive()) {
+            return false;
+        }
+
+        Collection<String> names = handler.owner().tags();
+        Tag[] array = new Tag[names.size()];
+        int i = 0;
+        for (String name : names) {
+            array[i++] = intern(name);
+        }
+
+        Entry entry = new Entry(handler, array, sequence.getAndIncrement());
+        entry.state = state;
+        index(entry, state);
+        size.incrementAndGet();
+        for (Tag tag : entry.tags) {
+            tag.size.incrementAndGet();
+        }
+        if (entries.putIfAbsent(handler, entry) != null) {
+            unindex(entry, state);
+            size.decrementAndGet();
+            for (Tag tag : entry.tags) {
+                tag.size.decrementAndGet();
+            }
+            return false;
+        }
+
+        // if the removal has missed the handler it is removed here, otherwise
+        // the handler has been added and removed already
+        return !handler.getState().isDestroyed() || !remove(handler);
+    }
+
+    /**
+     * Moves the task handler to the buckets corresponding to its current
+     * state. Each handler is expected to be updated by one thread at a time.
+     * <p/>
+     * The handler is added to new buckets before it is removed from old
+     * ones, so it can't be missed by a concurrent selection.
+     *
+     * @param handler the task handler.
+     */
+    public void update(TaskHandler<?, ?> handler) {
+        Entry entry = entries.get(handler);
+        TaskHandler.State state = handler.getState();
+        if (entry != null && state.isAlive() && entry.state != state) {
+            TaskHandler.State oldState = entry.state;
+            index(entry, state);
+            entry.state = state;
+            unindex(entry, oldState);
+        }
+    }
+
+    /**
+     * Removes the task handler from this registry.
+     *
+     * @param handler the task handler.
+     * @return {@code true} if the handler was in this registry.
+     */
+    public boolean remove(TaskHandler<?, ?> handler) {
+        Entry entry = entries.remove(handler);
+        if (entry != null) {
+            unindex(entry, entry.state);
+            size.decrementAndGet();
+            for (Tag tag : entry.tags) {
+                tag.size.decrementAndGet();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the task handler which was added first among ones labeled by
+     * all of the specified tags and being in one of the specified states.
+     * <p/>
+     * The bucket of the selection is walked through, so this method is
+     * expected to be used on rare occasions only.
+     *
+     * @param tags   the tags.
+     * @param states the states.
+     * @return the task handler or {@code null} if there are no such handlers.
+     */
+    public TaskHandler<?, ?> oldest(Collection<String> tags, Collection<TaskHandler.State> states) {
+        Entry oldest = null;
+        for (Iterator<TaskHandler<?, ?>> iterator = select(tags, states); iterator.hasNext(); ) {
+            Entry entry = entries.get(iterator.next());
+            if (entry != null && (oldest == null || entry.sequence < oldest.sequence)) {
+                oldest = entry;
+            }
+        }
+        return oldest == null ? null : oldest.handler;
+    }
+
+    /**
+     * Returns the number of task handlers which are labeled by all of
+     * the specified tags and are in one of the specified states.
+     * <p/>
+     * If there is no more than one tag the number is taken from maintained
+     * counters, otherwise the smallest bucket is walked through.
+     * A handler moving between states is counted once if all of alive
+     * states are requested.
+     *
+     * @param tags   the tags.
+     * @param states the states.
+     * @return the number of task handlers.
+     */
+    public int size(Collection<String> tags, Collection<TaskHandler.State> states) {
+        Tag[] array = lookup(tags);
+        if (array == null) {
+            return 0;
+        }
+
+        int size = 0;
+        if (array.length <= 1 && states.containsAll(TaskHandler.State.ALIVE_SET)) {
+            // a moving handler is in two buckets for a while, not in two counters
+            size = Math.max((array.length == 0 ? this.size : array[0].size).get(), 0);
+        } else if (array.length <= 1) {
+            for (Bucket bucket : candidates(array, states)) {
+                size += bucket.size();
+            }
+        } else {
+            for (Iterator<TaskHandler<?, ?>> iterator = select(array, states); iterator.hasNext(); iterator.next()) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns whether there are no task handlers which are labeled by all
+     * of the specified tags and are in one of the specified states.
+     *
+     * @param tags   the tags.
+     * @param states the states.
+     * @return {@code true} if there are no such task handlers.
+     */
+    public boolean isEmpty(Collection<String> tags, Collection<TaskHandler.State> states) {
+        if (tags.size() <= 1) {
+            return size(tags, states) == 0;
+        } else {
+            return !select(tags, states).hasNext();
+        }
+    }
+
+    /**
+     * Returns an iterator over task handlers which are labeled by all of
+     * the specified tags and are in one of the specified states.
+     * <p/>
+     * The iterator doesn't support removing.
+     *
+     * @param tags   the tags.
+     * @param states the states.
+     * @return the iterator.
+     */
+    public Iterator<TaskHandler<?, ?>> select(Collection<String> tags, Collection<TaskHandler.State> states) {
+        Tag[] array = lookup(tags);
+        if (array == null) {
+            return Collections.<TaskHandler<?, ?>>emptyList().iterator();
+        }
+        return select(array, states);
+    }
+
+    private Iterator<TaskHandler<?, ?>> select(Tag[] tags, final Collection<TaskHandler.State> states) {
+        final long[] bits = bits(tags);
+        final List<Bucket> bucketList = candidates(tags, states);
+        final Iterator<Bucket> candidates = bucketList.iterator();
+
+        return new Iterator<TaskHandler<?, ?>>() {
+            // a moving handler can be found in two buckets
+            private final Set<Entry> seen = bucketList.size() > 1 ? new HashSet<Entry>() : null;
+            private Iterator<Entry> delegate = null;
+            private TaskHandler<?, ?> next = null;
+
+            private TaskHandler<?, ?> advance() {
+                while (true) {
+                    while (delegate == null || !delegate.hasNext()) {
+                        if (!candidates.hasNext()) {
+                            return null;
+                        }
+                        delegate = candidates.next().entries.keySet().iterator();
+                    }
+                    Entry entry = delegate.next();
+                    if (states.contains(entry.handler.getState()) && entry.hasTags(bits)
+                            && (seen == null || seen.add(entry))) {
+                        return entry.handler;
+                    }
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    next = advance();
+                }
+                return next != null;
+            }
+
+            @Override
+            public TaskHandler<?, ?> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                TaskHandler<?, ?> handler = next;
+                next = null;
+                return handler;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+}
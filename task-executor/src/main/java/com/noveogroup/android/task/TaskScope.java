@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2013 Noveo Group
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * Except as contained in this notice, the name(s) of the above copyright holders
+ * shall not be used in advertising or otherwise to promote the sale, use or
+ * other dealings in this Software without prior written authorization.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.noveogroup.android.task;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link TaskScope} owns subtasks executed by a running task within it,
+ * see {@link TaskEnvironment#openScope(Policy, String...)}.
+ * <p/>
+ * Subtasks of a scope are executed in the task set of the task labeled by
+ * additional tags of the scope. The scope is shut down according to its
+ * policy as soon as the first subtask fails or succeeds: all its unfinished
+ * subtasks are interrupted and new ones are canceled at once.
+ * <p/>
+ * {@link #join()} waits until all subtasks of the scope are finished.
+ * A scope is closed by {@link #close()} which shuts it down and joins it.
+ * Scopes left open are closed when the task returns from
+ * {@link Task#run(Object, TaskEnvironment)}, so subtasks never outlive
+ * the task.
+ */
+public final class TaskScope {
+
+    /**
+     * Defines when a scope is shut down.
+     */
+    public enum Policy {
+
+        /**
+         * The scope is shut down when any subtask fails or is canceled.
+         * Use {@link #throwIfFailed()} to get the failure.
+         */
+        SHUTDOWN_ON_FAILURE,
+
+        /**
+         * The scope is shut down when any subtask succeeds.
+         * Use {@link #result()} to get its output.
+         */
+        SHUTDOWN_ON_SUCCESS
+
+    }
+
+    private final TaskSet taskSet;
+    private final Policy policy;
+
+    private final Object lock = new Object();
+    private final List<TaskHandler<?, ?>> handlers = new ArrayList<TaskHandler<?, ?>>();
+    private boolean shutdown = false;
+    private boolean succeeded = false;
+    private Object result = null;
+    private Throwable failure = null;
+
+    TaskScope(TaskSet taskSet, Policy policy) {
+        if (policy == null) {
+            throw new NullPointerException();
+        }
+        this.taskSet = taskSet;
+        this.policy = policy;
+    }
+
+    /**
+     * Returns the task set subtasks of the scope are executed in.
+     *
+     * @return the task set.
+     */
+    public TaskSet taskSet() {
+        return taskSet;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Executes a subtask within the scope. A subtask executed after
+     * the scope is shut down is canceled at once.
+     *
+     * @param task  the subtask.
+     * @param input the input of the subtask.
+     * @return the handler of the subtask.
+     */
+    public <I, O> TaskHandler<I, O> fork(Task<I, O> task, I input) {
+        TaskHandler<I, O> handler = taskSet.execute(task, input);
+        boolean interrupt;
+        synchronized (lock) {
+            handlers.add(handler);
+            interrupt = shutdown;
+        }
+        if (interrupt) {
+            handler.interrupt();
+        }
+        handler.onComplete(new TaskCallback<I, O>() {
+            @Override
+            public void onComplete(TaskHandler<I, O> handler) {
+                onSubtaskComplete(handler);
+            }
+        });
+        return handler;
+    }
+
+    private void onSubtaskComplete(TaskHandler<?, ?> handler) {
+        boolean shutdownNow = false;
+        synchronized (lock) {
+            handlers.remove(handler);
+            if (handler.getState() == TaskHandler.State.SUCCEED) {
+                if (policy == Policy.SHUTDOWN_ON_SUCCESS && !succeeded && !shutdown) {
+                    succeeded = true;
+                    result = handler.vars().output();
+                    shutdownNow = true;
+                }
+            } else if (failure == null && !shutdown) {
+                // subtasks interrupted by the shutdown are not failures
+                failure = Tasks.failureOf(handler);
+                shutdownNow = policy == Policy.SHUTDOWN_ON_FAILURE;
+            }
+            lock.notifyAll();
+        }
+        if (shutdownNow) {
+            shutdown();
+        }
+    }
+
+    /**
+     * Checks if the scope has been shut down.
+     *
+     * @return {@code true} if the scope has been shut down.
+     */
+    public boolean isShutdown() {
+        synchronized (lock) {
+            return shutdown;
+        }
+    }
+
+    /**
+     * Interrupts unfinished subtasks of the scope and cancels all the new
+     * ones.
+     */
+    public void shutdown() {
+        List<TaskHandler<?, ?>> list;
+        synchronized (lock) {
+            shutdown = true;
+            list = new ArrayList<TaskHandler<?, ?>>(handlers);
+        }
+        for (TaskHandler<?, ?> handler : list) {
+            handler.interrupt();
+        }
+    }
+
+    /**
+     * Waits until all subtasks of the scope are finished. If it is called
+     * by a running task the subtasks waiting to be executed are executed
+     * by the current thread.
+     *
+     * @throws InterruptedException if the current thread is interrupted.
+     */
+    public void join() throws InterruptedException {
+        while (true) {
+            TaskHandler<?, ?> next = null;
+            synchronized (lock) {
+                if (handlers.isEmpty()) {
+                    return;
+                }
+                for (TaskHandler<?, ?> handler : handlers) {
+                    if (!handler.getState().isDestroyed()) {
+                        next = handler;
+                        break;
+                    }
+                }
+                if (next == null) {
+                    // the subtasks are destroyed, their callbacks are coming
+                    lock.wait();
+                    continue;
+                }
+            }
+            next.join();
+        }
+    }
+
+    /**
+     * Shuts down the scope and waits until all its subtasks are finished.
+     *
+     * @throws InterruptedException if the current thread is interrupted.
+     */
+    public void close() throws InterruptedException {
+        shutdown();
+        join();
+    }
+
+    /**
+     * Throws the first failure of subtasks of the scope if any.
+     * Subtasks canceled by the shutdown of the scope are not failures.
+     *
+     * @throws Throwable the failure.
+     */
+    public void throwIfFailed() throws Throwable {
+        Throwable failure;
+        synchronized (lock) {
+            failure = this.failure;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Returns the output of the first succeeded subtask of a scope with
+     * {@link Policy#SHUTDOWN_ON_SUCCESS} policy.
+     *
+     * @return the output.
+     * @throws Throwable             the first failure of subtasks if none
+     *                               of them has succeeded.
+     * @throws IllegalStateException if no subtask has finished yet.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T result() throws Throwable {
+        synchronized (lock) {
+            if (succeeded) {
+                return (T) result;
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+        throw new IllegalStateException("no subtask has succeeded");
+    }
+
+}
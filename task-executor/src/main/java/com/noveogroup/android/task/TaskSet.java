@@ -89,4 +89,127 @@ public interface TaskSet extends Iterable<TaskHandler<?, ?>> {
 
     public boolean join(long timeout) throws InterruptedException;
 
+    /**
+     * Waits until any task of this set succeeds and interrupts the rest of
+     * them. Only tasks which are in the set when the method is called are
+     * taken into account. The waiting thread is woken up once by callbacks
+     * of the tasks, they are not polled.
+     *
+     * @param timeout the maximum time to wait in milliseconds or zero to
+     *                wait forever.
+     * @return the handler of the first succeeded task or {@code null} if
+     * no task has succeeded within the timeout.
+     * @throws InterruptedException if the current thread is interrupted.
+     */
+    public TaskHandler<?, ?> awaitAny(long timeout) throws InterruptedException;
+
+    /**
+     * Returns the maximum number of running tasks labeled by all of tags
+     * of this set.
+     *
+     * @return the limit or {@link Integer#MAX_VALUE} if there is no limit.
+     * @see #setMaxRunning(int)
+     */
+    public int getMaxRunning();
+
+    /**
+     * Caps the number of running tasks labeled by all of tags of this set.
+     * Excess tasks stay {@link TaskHandler.State#CREATED} without holding
+     * working threads until some of running tasks are finished.
+     *
+     * @param maxRunning the limit or {@link Integer#MAX_VALUE} to remove it.
+     */
+    public void setMaxRunning(int maxRunning);
+
+    /**
+     * Returns the number of slots reserved for tasks labeled by all of tags
+     * of this set.
+     *
+     * @return the number of slots.
+     * @see #setReservedSlots(int)
+     */
+    public int getReservedSlots();
+
+    /**
+     * Reserves slots of the executor-wide limit of running tasks for tasks
+     * labeled by all of tags of this set: other tasks can't take them even
+     * if they are not used. Reservations take effect only if the executor
+     * limits the number of running tasks (see
+     * {@link SimpleTaskExecutor#setMaxRunning(int)}).
+     *
+     * @param reservedSlots the number of slots or zero to remove
+     *                      the reservation.
+     */
+    public void setReservedSlots(int reservedSlots);
+
+    /**
+     * Limits the rate of starting tasks labeled by all of tags of this set
+     * using a token bucket. Tasks exceeding the rate stay
+     * {@link TaskHandler.State#CREATED} and are dispatched later, so no
+     * working thread waits for them.
+     * <p/>
+     * The bucket is refilled with {@code permitsPerSecond} tokens per second
+     * and holds up to {@code burst} tokens, so up to {@code burst} tasks
+     * can be started at once after a period of inactivity.
+     *
+     * @param permitsPerSecond the number of tasks per second.
+     * @param burst            the maximum number of tasks started at once.
+     */
+    public void setRateLimit(double permitsPerSecond, int burst);
+
+    /**
+     * Removes a rate limit set by {@link #setRateLimit(double, int)}.
+     * Already delayed tasks are not affected.
+     */
+    public void removeRateLimit();
+
+    /**
+     * Returns the time a task labeled by all of tags of this set would
+     * be delayed by rate limits if it was executed now.
+     *
+     * @return the time in milliseconds.
+     */
+    public long getRateLimitDelay();
+
+    /**
+     * Hedges tasks labeled by all of tags of this set: if a task is still
+     * running after the given percentile of observed run times of such tasks,
+     * its duplicate is executed with the same input. If the duplicate succeeds
+     * first, the task is finished with its output and interrupted, otherwise
+     * the duplicate is interrupted when the task finishes.
+     * <p/>
+     * Only idempotent tasks should be hedged, both executions share the same
+     * task object. Duplicates take capacity, bulkheads and rate limits as any
+     * other task. A duplicate exceeding the capacity is skipped whatever
+     * the overflow policy is. Tasks are not hedged until enough run times
+     * have been observed, and run times of hedged tasks are not observed.
+     *
+     * @param percentile the percentile of run times, for example
+     *                   {@code 0.95}.
+     */
+    public void setHedging(double percentile);
+
+    /**
+     * Removes hedging set by {@link #setHedging(double)}. Already executed
+     * duplicates are not affected.
+     */
+    public void removeHedging();
+
+    /**
+     * Returns the time after which a running task labeled by tags of this set
+     * is hedged.
+     *
+     * @return the time in milliseconds or {@code -1} if such tasks are not
+     * hedged now.
+     */
+    public long getHedgingDelay();
+
+    /**
+     * Removes cached results of tasks labeled by all of tags of this set.
+     * Tasks which are running now don't put their results to the cache.
+     *
+     * @see ResultCache
+     */
+    public void invalidateResults();
+
 }
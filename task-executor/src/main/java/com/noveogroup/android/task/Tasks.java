@@ -1,7 +1,15 @@
 package com.noveogroup.android.task;
 
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class Tasks {
 
@@ -43,32 +51,317 @@ public class Tasks {
         return list;
     }
 
-    public static <I1, O1, I2, O2> Task<C2<I1, I2>, C2<O1, O2>> sequence(final Task<I1, O1> task1, final Task<I2, O2> task2) {
-        return new Task<C2<I1, I2>, C2<O1, O2>>() {
+    /**
+     * Tracks branches of a composite task. The branches are executed
+     * concurrently or one by one and the composite task defers its
+     * completion, so no working thread waits for the branches. The next
+     * stage is started by the thread which has finished the previous one.
+     * <p/>
+     * The composite task fails as soon as any branch fails or is canceled,
+     * the rest of the branches are interrupted then. Interruption of the
+     * composite task is passed to its branches.
+     *
+     * @param <Output> type of the composite task output.
+     */
+    private static abstract class Branches<Output> implements Interruptible {
+
+        private final Completion<Output> completion;
+        private final AbstractTaskHandler<?, ?> parent;
+        private final int count;
+        private final boolean sequential;
+        private final Object[] outputs;
+        private final AtomicInteger remaining;
+        private final List<TaskHandler<?, ?>> handlers = new CopyOnWriteArrayList<TaskHandler<?, ?>>();
+        private volatile boolean interrupted = false;
+
+        public Branches(TaskEnvironment<?, Output> env, int count, boolean sequential) {
+            this.completion = env.defer();
+            this.parent = AbstractTaskHandler.current();
+            this.count = count;
+            this.sequential = sequential;
+            this.outputs = new Object[count];
+            this.remaining = new AtomicInteger(count);
+        }
+
+        /**
+         * Executes the branch.
+         *
+         * @param index the index of the branch.
+         * @return the handler of the branch.
+         */
+        protected abstract TaskHandler<?, ?> execute(int index);
+
+        /**
+         * Called when all the branches have succeeded. Implementations
+         * complete the composite task by {@link #succeed(Object)} or start
+         * its final stage by {@link #then(TaskHandler)}.
+         *
+         * @param outputs outputs of the branches.
+         * @throws Throwable if the composite task should fail.
+         */
+        protected abstract void join(Object[] outputs) throws Throwable;
+
+        /**
+         * Starts the branches. Should be called by the composite task.
+         */
+        public void start() {
+            completion.setInterruptible(this);
+            if (count == 0) {
+                joinBranches();
+            } else if (sequential) {
+                watch(0, execute(0));
+            } else {
+                for (int index = 0; index < count; index++) {
+                    watch(index, execute(index));
+                }
+            }
+        }
+
+        /**
+         * Completes the composite task with the output of the final stage.
+         *
+         * @param handler the handler of the final stage.
+         */
+        protected void then(TaskHandler<?, Output> handler) {
+            watch(-1, handler);
+        }
+
+        protected boolean succeed(Output output) {
+            return completion.succeed(output);
+        }
+
+        @Override
+        public void interrupt() {
+            interrupted = true;
+            for (TaskHandler<?, ?> handler : handlers) {
+                handler.interrupt();
+            }
+        }
+
+        private <I, O> void watch(final int index, TaskHandler<I, O> handler) {
+            handlers.add(handler);
+            if (interrupted) {
+                handler.interrupt();
+            }
+            handler.onComplete(new TaskCallback<I, O>() {
+                @Override
+                public void onComplete(TaskHandler<I, O> handler) {
+                    onBranchComplete(index, handler);
+                }
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        private void onBranchComplete(final int index, TaskHandler<?, ?> handler) {
+            if (handler.getState() != TaskHandler.State.SUCCEED) {
+                if (completion.fail(failureOf(handler))) {
+                    interrupt();
+                }
+            } else if (index < 0) {
+                completion.succeed((Output) handler.vars().output());
+            } else {
+                outputs[index] = handler.vars().output();
+                if (remaining.decrementAndGet() == 0) {
+                    onBehalf(new Runnable() {
+                        @Override
+                        public void run() {
+                            joinBranches();
+                        }
+                    });
+                } else if (sequential) {
+                    onBehalf(new Runnable() {
+                        @Override
+                        public void run() {
+                            watch(index + 1, execute(index + 1));
+                        }
+                    });
+                }
+            }
+        }
+
+        private void joinBranches() {
+            try {
+                join(outputs);
+            } catch (Throwable throwable) {
+                completion.fail(throwable);
+            }
+        }
+
+        private void onBehalf(Runnable action) {
+            // tasks executed by the next stage inherit the deadline of the composite task
+            if (parent == null) {
+                action.run();
+            } else {
+                parent.runOnBehalf(action);
+            }
+        }
+
+    }
+
+    static Throwable failureOf(TaskHandler<?, ?> handler) {
+        if (handler.getState() == TaskHandler.State.FAILED) {
+            return handler.getThrowable();
+        }
+        CancellationException exception = new CancellationException("the task is canceled");
+        exception.initCause(handler.getThrowable());
+        return exception;
+    }
+
+    private static void checkSize(List<?> tasks, List<?> inputs) {
+        if (inputs == null || inputs.size() != tasks.size()) {
+            throw new IllegalArgumentException("the number of inputs doesn't match the number of tasks");
+        }
+    }
+
+    /**
+     * Returns a task which executes the given tasks one by one in its
+     * task set and returns their outputs. Each next task is started when
+     * the previous one succeeds, no working thread waits meanwhile.
+     *
+     * @param tasks the tasks.
+     * @return the composite task.
+     */
+    public static <I, O> Task<List<I>, List<O>> sequence(List<Task<I, O>> tasks) {
+        return combine(tasks, true);
+    }
+
+    /**
+     * Returns a task which executes the given tasks concurrently in its
+     * task set and returns their outputs. The task fails as soon as any of
+     * the tasks fails, the rest of them are interrupted then.
+     *
+     * @param tasks the tasks.
+     * @return the composite task.
+     */
+    public static <I, O> Task<List<I>, List<O>> parallel(List<Task<I, O>> tasks) {
+        return combine(tasks, false);
+    }
+
+    private static <I, O> Task<List<I>, List<O>> combine(List<Task<I, O>> tasks, final boolean sequential) {
+        final List<Task<I, O>> list = new ArrayList<Task<I, O>>(tasks);
+        return new Task<List<I>, List<O>>() {
             @Override
-            public C2<O1, O2> run(C2<I1, I2> value, TaskEnvironment<C2<I1, I2>, C2<O1, O2>> env) throws Throwable {
-                TaskHandler<I1, O1> handler1 = env.owner().execute(task1, env.vars().input().getV1());
-                handler1.join();
-                TaskHandler<I2, O2> handler2 = env.owner().execute(task2, env.vars().input().getV2());
-                handler2.join();
-                return new C2<O1, O2>(handler1.vars().output(), handler2.vars().output());
+            public List<O> run(final List<I> value, final TaskEnvironment<List<I>, List<O>> env) throws Throwable {
+                checkSize(list, value);
+                new Branches<List<O>>(env, list.size(), sequential) {
+                    @Override
+                    protected TaskHandler<?, ?> execute(int index) {
+                        return env.owner().execute(list.get(index), value.get(index));
+                    }
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    protected void join(Object[] outputs) {
+                        List<O> result = new ArrayList<O>(outputs.length);
+                        for (Object output : outputs) {
+                            result.add((O) output);
+                        }
+                        succeed(result);
+                    }
+                }.start();
+                return null;
             }
         };
     }
 
+    public static <I1, O1, I2, O2> Task<C2<I1, I2>, C2<O1, O2>> sequence(final Task<I1, O1> task1, final Task<I2, O2> task2) {
+        return combine(task1, task2, true);
+    }
+
     public static <I1, O1, I2, O2> Task<C2<I1, I2>, C2<O1, O2>> parallel(final Task<I1, O1> task1, final Task<I2, O2> task2) {
+        return combine(task1, task2, false);
+    }
+
+    private static <I1, O1, I2, O2> Task<C2<I1, I2>, C2<O1, O2>> combine(final Task<I1, O1> task1, final Task<I2, O2> task2, final boolean sequential) {
         return new Task<C2<I1, I2>, C2<O1, O2>>() {
             @Override
-            public C2<O1, O2> run(C2<I1, I2> value, TaskEnvironment<C2<I1, I2>, C2<O1, O2>> env) throws Throwable {
-                TaskHandler<I1, O1> handler1 = env.owner().execute(task1, env.vars().input().getV1());
-                TaskHandler<I2, O2> handler2 = env.owner().execute(task2, env.vars().input().getV2());
-                handler1.join();
-                handler2.join();
-                return new C2<O1, O2>(handler1.vars().output(), handler2.vars().output());
+            public C2<O1, O2> run(final C2<I1, I2> value, final TaskEnvironment<C2<I1, I2>, C2<O1, O2>> env) throws Throwable {
+                new Branches<C2<O1, O2>>(env, 2, sequential) {
+                    @Override
+                    protected TaskHandler<?, ?> execute(int index) {
+                        return index == 0
+                                ? env.owner().execute(task1, value.getV1())
+                                : env.owner().execute(task2, value.getV2());
+                    }
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    protected void join(Object[] outputs) {
+                        succeed(new C2<O1, O2>((O1) outputs[0], (O2) outputs[1]));
+                    }
+                }.start();
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Returns a task which executes the given tasks concurrently with
+     * the same input in its task set and returns the output of the first
+     * succeeded one. The rest of the tasks are interrupted then. The task
+     * fails with the first failure if none of the tasks succeeds.
+     * <p/>
+     * It suits redundant requests to replicas where only the fastest
+     * answer matters, so the tasks should be idempotent.
+     *
+     * @param tasks the tasks.
+     * @return the composite task.
+     */
+    public static <I, O> Task<I, O> any(List<Task<I, O>> tasks) {
+        final List<Task<I, O>> list = new ArrayList<Task<I, O>>(tasks);
+        if (list.isEmpty()) {
+            throw new IllegalArgumentException("no tasks to execute");
+        }
+        return new Task<I, O>() {
+            @Override
+            public O run(I value, TaskEnvironment<I, O> env) throws Throwable {
+                final Completion<O> completion = env.defer();
+                final List<TaskHandler<I, O>> handlers = new CopyOnWriteArrayList<TaskHandler<I, O>>();
+                final AtomicInteger remaining = new AtomicInteger(list.size());
+                final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+                final AtomicBoolean succeeded = new AtomicBoolean(false);
+                TaskCallback<I, O> callback = new TaskCallback<I, O>() {
+                    @Override
+                    public void onComplete(TaskHandler<I, O> handler) {
+                        if (handler.getState() == TaskHandler.State.SUCCEED) {
+                            if (completion.succeed(handler.vars().output())) {
+                                succeeded.set(true);
+                                for (TaskHandler<I, O> loser : handlers) {
+                                    if (loser != handler) {
+                                        loser.interrupt();
+                                    }
+                                }
+                            }
+                        } else {
+                            failure.compareAndSet(null, failureOf(handler));
+                        }
+                        if (remaining.decrementAndGet() == 0 && !succeeded.get()) {
+                            completion.fail(failure.get());
+                        }
+                    }
+                };
+                // the tasks are children of this one, so they are interrupted with it
+                for (Task<I, O> task : list) {
+                    TaskHandler<I, O> handler = env.owner().execute(task, value);
+                    handlers.add(handler);
+                    if (succeeded.get()) {
+                        handler.interrupt();
+                    }
+                    handler.onComplete(callback);
+                }
+                return null;
             }
         };
     }
 
+    public static <I, O> Task<I, O> any(Task<I, O> task1, Task<I, O> task2) {
+        return any(asList(task1, task2));
+    }
+
+    public static <I, O> Task<I, O> any(Task<I, O> task1, Task<I, O> task2, Task<I, O> task3) {
+        return any(asList(task1, task2, task3));
+    }
+
     public static <T> Task<T, T> simple() {
         return new Task<T, T>() {
             @Override
@@ -78,16 +371,64 @@ public class Tasks {
         };
     }
 
+    /**
+     * Returns a task which executes the given tasks concurrently by its
+     * executor and then passes their outputs to the final task. No working
+     * thread waits for the tasks.
+     *
+     * @param tasks the tasks.
+     * @param task  the final task.
+     * @return the composite task.
+     */
+    public static <I, O, Output> Task<List<I>, Output> merge(List<Task<I, O>> tasks, final Task<List<O>, Output> task) {
+        final List<Task<I, O>> list = new ArrayList<Task<I, O>>(tasks);
+        return new Task<List<I>, Output>() {
+            @Override
+            public Output run(final List<I> value, final TaskEnvironment<List<I>, Output> env) throws Throwable {
+                checkSize(list, value);
+                new Branches<Output>(env, list.size(), false) {
+                    @Override
+                    protected TaskHandler<?, ?> execute(int index) {
+                        return env.executor().execute(list.get(index), value.get(index));
+                    }
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    protected void join(Object[] outputs) {
+                        List<O> result = new ArrayList<O>(outputs.length);
+                        for (Object output : outputs) {
+                            result.add((O) output);
+                        }
+                        then(env.executor().execute(task, result));
+                    }
+                }.start();
+                return null;
+            }
+        };
+    }
+
     public static <Input1, Output1, Input2, Output2, Output>
     Task<C2<Input1, Input2>, Output> merge(final Task<Input1, Output1> task1,
                                            final Task<Input2, Output2> task2,
                                            final Task<C2<Output1, Output2>, Output> task) {
         return new Task<C2<Input1, Input2>, Output>() {
             @Override
-            public Output run(C2<Input1, Input2> value, TaskEnvironment<C2<Input1, Input2>, Output> env) throws Throwable {
-                Output1 output1 = env.executor().execute(task1, value.getV1()).get();
-                Output2 output2 = env.executor().execute(task2, value.getV2()).get();
-                return env.executor().execute(task, new C2<Output1, Output2>(output1, output2)).get();
+            public Output run(final C2<Input1, Input2> value, final TaskEnvironment<C2<Input1, Input2>, Output> env) throws Throwable {
+                new Branches<Output>(env, 2, false) {
+                    @Override
+                    protected TaskHandler<?, ?> execute(int index) {
+                        return index == 0
+                                ? env.executor().execute(task1, value.getV1())
+                                : env.executor().execute(task2, value.getV2());
+                    }
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    protected void join(Object[] outputs) {
+                        then(env.executor().execute(task, new C2<Output1, Output2>((Output1) outputs[0], (Output2) outputs[1])));
+                    }
+                }.start();
+                return null;
             }
         };
     }
@@ -99,11 +440,28 @@ public class Tasks {
                                                    final Task<C3<Output1, Output2, Output3>, Output> task) {
         return new Task<C3<Input1, Input2, Input3>, Output>() {
             @Override
-            public Output run(C3<Input1, Input2, Input3> value, TaskEnvironment<C3<Input1, Input2, Input3>, Output> env) throws Throwable {
-                Output1 output1 = env.executor().execute(task1, value.getV1()).get();
-                Output2 output2 = env.executor().execute(task2, value.getV2()).get();
-                Output3 output3 = env.executor().execute(task3, value.getV3()).get();
-                return env.executor().execute(task, new C3<Output1, Output2, Output3>(output1, output2, output3)).get();
+            public Output run(final C3<Input1, Input2, Input3> value, final TaskEnvironment<C3<Input1, Input2, Input3>, Output> env) throws Throwable {
+                new Branches<Output>(env, 3, false) {
+                    @Override
+                    protected TaskHandler<?, ?> execute(int index) {
+                        switch (index) {
+                            case 0:
+                                return env.executor().execute(task1, value.getV1());
+                            case 1:
+                                return env.executor().execute(task2, value.getV2());
+                            default:
+                                return env.executor().execute(task3, value.getV3());
+                        }
+                    }
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    protected void join(Object[] outputs) {
+                        then(env.executor().execute(task, new C3<Output1, Output2, Output3>(
+                                (Output1) outputs[0], (Output2) outputs[1], (Output3) outputs[2])));
+                    }
+                }.start();
+                return null;
             }
         };
     }
@@ -116,14 +474,114 @@ public class Tasks {
                                                            final Task<C4<Output1, Output2, Output3, Output4>, Output> task) {
         return new Task<C4<Input1, Input2, Input3, Input4>, Output>() {
             @Override
-            public Output run(C4<Input1, Input2, Input3, Input4> value, TaskEnvironment<C4<Input1, Input2, Input3, Input4>, Output> env) throws Throwable {
-                Output1 output1 = env.executor().execute(task1, value.getV1()).get();
-                Output2 output2 = env.executor().execute(task2, value.getV2()).get();
-                Output3 output3 = env.executor().execute(task3, value.getV3()).get();
-                Output4 output4 = env.executor().execute(task4, value.getV4()).get();
-                return env.executor().execute(task, new C4<Output1, Output2, Output3, Output4>(output1, output2, output3, output4)).get();
+            public Output run(final C4<Input1, Input2, Input3, Input4> value, final TaskEnvironment<C4<Input1, Input2, Input3, Input4>, Output> env) throws Throwable {
+                new Branches<Output>(env, 4, false) {
+                    @Override
+                    protected TaskHandler<?, ?> execute(int index) {
+                        switch (index) {
+                            case 0:
+                                return env.executor().execute(task1, value.getV1());
+                            case 1:
+                                return env.executor().execute(task2, value.getV2());
+                            case 2:
+                                return env.executor().execute(task3, value.getV3());
+                            default:
+                                return env.executor().execute(task4, value.getV4());
+                        }
+                    }
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    protected void join(Object[] outputs) {
+                        then(env.executor().execute(task, new C4<Output1, Output2, Output3, Output4>(
+                                (Output1) outputs[0], (Output2) outputs[1], (Output3) outputs[2], (Output4) outputs[3])));
+                    }
+                }.start();
+                return null;
             }
         };
     }
 
+    /**
+     * Reflective access to {@code java.util.concurrent.CompletableFuture}
+     * which is available since Java 8 and Android 7.0 only.
+     */
+    private static final class CompletableFutures {
+
+        private static final Constructor<?> CONSTRUCTOR;
+        private static final Method COMPLETE;
+        private static final Method COMPLETE_EXCEPTIONALLY;
+
+        static {
+            Constructor<?> constructor;
+            Method complete;
+            Method completeExceptionally;
+            try {
+                Class<?> type = Class.forName("java.util.concurrent.CompletableFuture");
+                constructor = type.getConstructor();
+                complete = type.getMethod("complete", Object.class);
+                completeExceptionally = type.getMethod("completeExceptionally", Throwable.class);
+            } catch (Exception e) {
+                constructor = null;
+                complete = null;
+                completeExceptionally = null;
+            }
+            CONSTRUCTOR = constructor;
+            COMPLETE = complete;
+            COMPLETE_EXCEPTIONALLY = completeExceptionally;
+        }
+
+    }
+
+    /**
+     * Returns a {@code java.util.concurrent.CompletableFuture} which is
+     * completed by a {@link TaskCallback} when the task is destroyed, so no
+     * thread waits for the task. The future is completed exceptionally with
+     * the failure of the task or with a {@link CancellationException} if
+     * the task is canceled.
+     * <p/>
+     * The future is returned as a {@link Future} because the library doesn't
+     * depend on Java 8, it can be cast to {@code CompletableFuture}.
+     * Canceling the future doesn't interrupt the task.
+     *
+     * @param handler the task handler.
+     * @return the future.
+     * @throws UnsupportedOperationException if the current runtime doesn't
+     *                                       provide {@code CompletableFuture}.
+     */
+    @SuppressWarnings("unchecked")
+    public static <Input, Output> Future<Output> toCompletableFuture(TaskHandler<Input, Output> handler) {
+        if (CompletableFutures.CONSTRUCTOR == null) {
+            throw new UnsupportedOperationException("CompletableFuture is not supported by this runtime");
+        }
+        final Future<Output> future;
+        try {
+            future = (Future<Output>) CompletableFutures.CONSTRUCTOR.newInstance();
+        } catch (Exception e) {
+            throw new UnsupportedOperationException("cannot create CompletableFuture", e);
+        }
+
+        handler.onComplete(new TaskCallback<Input, Output>() {
+            @Override
+            public void onComplete(TaskHandler<Input, Output> handler) {
+                try {
+                    switch (handler.getState()) {
+                        case SUCCEED:
+                            CompletableFutures.COMPLETE.invoke(future, handler.vars().output());
+                            break;
+                        case FAILED:
+                            CompletableFutures.COMPLETE_EXCEPTIONALLY.invoke(future, handler.getThrowable());
+                            break;
+                        default:
+                            CompletableFutures.COMPLETE_EXCEPTIONALLY.invoke(future, failureOf(handler));
+                            break;
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException("cannot complete CompletableFuture", e);
+                }
+            }
+        });
+        return future;
+    }
+
 }
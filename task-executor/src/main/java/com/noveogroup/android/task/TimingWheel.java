@@ -0,0 +1,339 @@
+/*
+ * Copyright (c) 2013 Noveo Group
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * Except as contained in this notice, the name(s) of the above copyright holders
+ * shall not be used in advertising or otherwise to promote the sale, use or
+ * other dealings in this Software without prior written authorization.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.noveogroup.android.task;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link TimingWheel} is a hashed timing wheel running timer actions
+ * in a single daemon thread.
+ * <p/>
+ * The wheel is a circular array of buckets, each bucket covers one tick.
+ * A timeout is put into the bucket of its deadline tick together with
+ * the number of full wheel rounds to wait, so scheduling and canceling
+ * take constant time regardless of the number of pending timeouts. New and
+ * canceled timeouts are passed to the timer thread through lock-free queues
+ * and the thread only touches the buckets.
+ * <p/>
+ * Timeouts are expired with the precision of one tick. Timer actions are
+ * executed by the timer thread, so they are expected to be short, like
+ * dispatching of a task to an executor.
+ * <p/>
+ * The timer thread is started on demand and parks without ticking while
+ * there are no pending timeouts. A stopped wheel lets its thread exit
+ * instead, the thread is started again if a timeout is scheduled later.
+ */
+final class TimingWheel {
+
+    private static final int INIT = 0;
+    private static final int CANCELED = 1;
+    private static final int EXPIRED = 2;
+
+    /**
+     * A handle of a scheduled timer action.
+     */
+    public static final class Timeout {
+
+        private final TimingWheel wheel;
+        private final Runnable action;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(INIT);
+
+        // these fields are accessed by the timer thread only
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(TimingWheel wheel, Runnable action, long deadline) {
+            this.wheel = wheel;
+            this.action = action;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancels the timer action if it hasn't been expired yet.
+         *
+         * @return {@code true} if the action won't be run.
+         */
+        public boolean cancel() {
+            if (state.compareAndSet(INIT, CANCELED)) {
+                wheel.canceled.add(this);
+                wheel.pending.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        public boolean isCanceled() {
+            return state.get() == CANCELED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        private void expire() {
+            if (state.compareAndSet(INIT, EXPIRED)) {
+                wheel.pending.decrementAndGet();
+                try {
+                    action.run();
+                } catch (RuntimeException e) {
+                    // the timer thread must survive a failed action
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * A doubly linked list of timeouts of the same tick.
+     */
+    private static final class Bucket {
+
+        private Timeout head;
+        private Timeout tail;
+
+        public void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        public void remove(Timeout timeout) {
+            Timeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            } else {
+                head = next;
+            }
+            if (next != null) {
+                next.prev = timeout.prev;
+            } else {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        public void expire() {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    timeout.expire();
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+    }
+
+    private final String name;
+    private final long tickNanos;
+    private final Bucket[] buckets;
+    private final int mask;
+    private final long startTime = System.nanoTime();
+    private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<Timeout>();
+    private final Queue<Timeout> canceled = new ConcurrentLinkedQueue<Timeout>();
+    private final AtomicLong pending = new AtomicLong();
+    private final Object lock = new Object();
+    private volatile Thread thread = null;
+    private volatile boolean stopped = false;
+    private long tick = 0;
+
+    /**
+     * Creates new timing wheel.
+     *
+     * @param name      the name of the timer thread.
+     * @param tick      the duration of a tick.
+     * @param unit      the time unit of the tick.
+     * @param wheelSize the number of buckets, rounded up to a power of two.
+     */
+    public TimingWheel(String name, long tick, TimeUnit unit, int wheelSize) {
+        if (tick <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException();
+        }
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+        this.name = name;
+        this.tickNanos = unit.toNanos(tick);
+        this.buckets = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new Bucket();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Schedules the action to be run by the timer thread after
+     * the specified delay.
+     *
+     * @param action the action.
+     * @param delay  the delay.
+     * @param unit   the time unit of the delay.
+     * @return the handle of the scheduled action.
+     */
+    public Timeout schedule(Runnable action, long delay, TimeUnit unit) {
+        long deadline = System.nanoTime() + Math.max(unit.toNanos(delay), 0) - startTime;
+        Timeout timeout = new Timeout(this, action, deadline);
+        scheduled.add(timeout);
+        if (pending.getAndIncrement() == 0) {
+            // the timer thread may be parked without a deadline
+            LockSupport.unpark(thread());
+        }
+        return timeout;
+    }
+
+    /**
+     * Returns the number of pending timeouts.
+     *
+     * @return the number of timeouts.
+     */
+    public long size() {
+        return Math.max(pending.get(), 0);
+    }
+
+    /**
+     * Stops the timer thread as soon as there are no pending timeouts.
+     * Timeouts scheduled later are still expired by a new timer thread.
+     */
+    public void stop() {
+        stopped = true;
+        Thread thread = this.thread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private Thread thread() {
+        Thread thread = this.thread;
+        if (thread == null) {
+            synchronized (lock) {
+                thread = this.thread;
+                if (thread == null) {
+                    thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            work();
+                        }
+                    }, name);
+                    thread.setDaemon(true);
+                    thread.start();
+                    this.thread = thread;
+                }
+            }
+        }
+        return thread;
+    }
+
+    private void work() {
+        tick = (System.nanoTime() - startTime) / tickNanos;
+        while (true) {
+            if (pending.get() <= 0 && scheduled.isEmpty()) {
+                // nothing to wait for, so don't tick
+                processCanceled();
+                if (stopped && exit()) {
+                    return;
+                }
+                LockSupport.park(this);
+                // skip ticks passed while parked, all of the buckets are empty
+                tick = Math.max(tick, (System.nanoTime() - startTime) / tickNanos);
+                continue;
+            }
+
+            long deadline = (tick + 1) * tickNanos;
+            long sleep = deadline - (System.nanoTime() - startTime);
+            if (sleep > 0) {
+                LockSupport.parkNanos(this, sleep);
+                continue;
+            }
+
+            processCanceled();
+            transferScheduled();
+            buckets[(int) (tick & mask)].expire();
+            tick++;
+        }
+    }
+
+    private boolean exit() {
+        synchronized (lock) {
+            if (pending.get() > 0 || !scheduled.isEmpty()) {
+                return false;
+            }
+            thread = null;
+        }
+        // a timeout scheduled meanwhile could unpark this thread instead
+        // of starting a new one, so it is checked once again
+        if (!scheduled.isEmpty()) {
+            thread();
+        }
+        return true;
+    }
+
+    private void processCanceled() {
+        Timeout timeout;
+        while ((timeout = canceled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void transferScheduled() {
+        Timeout timeout;
+        while ((timeout = scheduled.poll()) != null) {
+            if (timeout.state.get() != INIT) {
+                continue;
+            }
+            long ticks = timeout.deadline / tickNanos;
+            timeout.remainingRounds = Math.max(ticks - tick, 0) >> Integer.numberOfTrailingZeros(buckets.length);
+            // overdue timeouts are expired by the current tick
+            long target = Math.max(ticks, tick);
+            buckets[(int) (target & mask)].add(timeout);
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2013 Noveo Group
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * Except as contained in this notice, the name(s) of the above copyright holders
+ * shall not be used in advertising or otherwise to promote the sale, use or
+ * other dealings in this Software without prior written authorization.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.noveogroup.android.task;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * {@link VirtualThreadTaskExecutor} is an implementation of
+ * the {@link TaskExecutor} interface running each task on its own virtual
+ * thread. Blocking inside of {@link Task#run(Object, TaskEnvironment)}, for
+ * example on I/O or in {@link TaskHandler#join()}, parks the virtual thread
+ * only and doesn't hold an OS thread.
+ * <p/>
+ * Virtual threads are available since Java 21 only, so the executor is
+ * created reflectively and this class can be compiled into the library
+ * together with the rest of it instead of a separate module or
+ * a multi-release JAR. Use {@link #isSupported()} to check if the current
+ * runtime provides virtual threads, the constructor throws
+ * {@link UnsupportedOperationException} otherwise.
+ * <p/>
+ * Interruption works the same way as with {@link SimpleTaskExecutor}:
+ * {@link Interruptible} tasks are notified and virtual threads may be
+ * interrupted like platform ones.
+ */
+public class VirtualThreadTaskExecutor extends SimpleTaskExecutor {
+
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR;
+
+    static {
+        Method method;
+        try {
+            method = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            method = null;
+        }
+        NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = method;
+    }
+
+    /**
+     * Checks if the current runtime supports virtual threads.
+     *
+     * @return true if {@link VirtualThreadTaskExecutor} can be created.
+     */
+    public static boolean isSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("virtual threads are not supported by this runtime");
+        }
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+        } catch (Exception e) {
+            throw new UnsupportedOperationException("cannot create virtual thread executor", e);
+        }
+    }
+
+    /**
+     * Creates new instance of {@link VirtualThreadTaskExecutor}.
+     *
+     * @throws UnsupportedOperationException if the current runtime doesn't
+     *                                       support virtual threads.
+     */
+    public VirtualThreadTaskExecutor() {
+        super(newVirtualThreadPerTaskExecutor());
+    }
+
+}
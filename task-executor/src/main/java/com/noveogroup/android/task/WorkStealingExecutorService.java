@@ -0,0 +1,374 @@
+/*
+ * Copyright (c) 2013 Noveo Group
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * Except as contained in this notice, the name(s) of the above copyright holders
+ * shall not be used in advertising or otherwise to promote the sale, use or
+ * other dealings in this Software without prior written authorization.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.noveogroup.android.task;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@link WorkStealingExecutorService} is an {@link java.util.concurrent.ExecutorService}
+ * with a fixed number of working threads each owning a double-ended queue
+ * of tasks.
+ * <p/>
+ * A task submitted by one of working threads is pushed to the tail of
+ * the queue of this thread and is taken back from the tail (LIFO), so
+ * recursively spawned tasks are executed while their data is still hot.
+ * Tasks submitted from outside go to a shared FIFO queue. Idle working
+ * threads steal tasks from the heads of queues of other threads (FIFO),
+ * so the oldest and usually the biggest pieces of work are stolen.
+ * <p/>
+ * Working threads are daemon threads started on demand, they terminate
+ * after being idle for a minute.
+ * <p/>
+ * A queue of a working thread is guarded by its monitor. Its size is
+ * volatile, so thieves skip empty queues without contending with their
+ * owners. Working threads are published through an atomic array, so
+ * thieves look for their victims without the lock of the pool.
+ */
+final class WorkStealingExecutorService extends AbstractExecutorService {
+
+    private static final long KEEP_ALIVE = TimeUnit.MINUTES.toNanos(1);
+    private static final AtomicInteger POOL_NUMBER = new AtomicInteger(1);
+
+    /**
+     * A double-ended queue of tasks owned by one working thread. The owner
+     * pushes and pops tasks at the tail, thieves take them from the head.
+     */
+    private static final class WorkDeque {
+
+        private Runnable[] array = new Runnable[16];
+        private int head = 0;
+        private volatile int size = 0;
+
+        public synchronized void push(Runnable task) {
+            if (size == array.length) {
+                Runnable[] copy = new Runnable[array.length * 2];
+                for (int i = 0; i < size; i++) {
+                    copy[i] = array[(head + i) & (array.length - 1)];
+                }
+                array = copy;
+                head = 0;
+            }
+            array[(head + size) & (array.length - 1)] = task;
+            size++;
+        }
+
+        public synchronized Runnable pop() {
+            if (size == 0) {
+                return null;
+            }
+            size--;
+            int index = (head + size) & (array.length - 1);
+            Runnable task = array[index];
+            array[index] = null;
+            return task;
+        }
+
+        public Runnable steal() {
+            // an empty queue is skipped without locking
+            if (size == 0) {
+                return null;
+            }
+            synchronized (this) {
+                return poll();
+            }
+        }
+
+        private Runnable poll() {
+            if (size == 0) {
+                return null;
+            }
+            Runnable task = array[head];
+            array[head] = null;
+            head = (head + 1) & (array.length - 1);
+            size--;
+            return task;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        public synchronized void drainTo(List<Runnable> list) {
+            Runnable task;
+            while ((task = poll()) != null) {
+                list.add(task);
+            }
+        }
+
+    }
+
+    private final class Worker extends Thread {
+
+        private final int index;
+        private final WorkDeque deque = new WorkDeque();
+        private int seed;
+
+        public Worker(int index) {
+            super(String.format("%s-worker-%d", name, index + 1));
+            this.index = index;
+            this.seed = index * 0x9E3779B9 + 1;
+            setDaemon(true);
+        }
+
+        private int nextRandom() {
+            // xorshift
+            seed ^= seed << 13;
+            seed ^= seed >>> 17;
+            seed ^= seed << 5;
+            return seed & Integer.MAX_VALUE;
+        }
+
+        @Override
+        public void run() {
+            Runnable task;
+            while ((task = take(this)) != null) {
+                try {
+                    task.run();
+                } catch (Throwable throwable) {
+                    getUncaughtExceptionHandler().uncaughtException(this, throwable);
+                }
+            }
+        }
+
+    }
+
+    private final String name;
+    private final AtomicReferenceArray<Worker> workers;
+    private final ConcurrentLinkedQueue<Runnable> submissions = new ConcurrentLinkedQueue<Runnable>();
+    private final Object lock = new Object();
+    private final AtomicInteger idleCount = new AtomicInteger(0);
+    private final AtomicInteger liveCount = new AtomicInteger(0);
+    private volatile boolean shutdown = false;
+
+    /**
+     * Creates new instance of {@link WorkStealingExecutorService}.
+     *
+     * @param parallelism the number of working threads.
+     */
+    public WorkStealingExecutorService(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.name = String.format("work-stealing-pool-%d", POOL_NUMBER.getAndIncrement());
+        this.workers = new AtomicReferenceArray<Worker>(parallelism);
+    }
+
+    /**
+     * Returns the number of working threads.
+     *
+     * @return the number of working threads.
+     */
+    public int getParallelism() {
+        return workers.length();
+    }
+
+    private Worker currentWorker() {
+        Thread thread = Thread.currentThread();
+        if (thread instanceof Worker) {
+            Worker worker = (Worker) thread;
+            if (worker.index < workers.length() && workers.get(worker.index) == worker) {
+                return worker;
+            }
+        }
+        return null;
+    }
+
+    private boolean hasWork() {
+        if (!submissions.isEmpty()) {
+            return true;
+        }
+        for (int i = 0; i < workers.length(); i++) {
+            Worker worker = workers.get(i);
+            if (worker != null && !worker.deque.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Runnable steal(Worker thief) {
+        int n = workers.length();
+        // the index is reduced before it is advanced, so it never overflows
+        int index = thief.nextRandom() % n;
+        for (int i = 0; i < n; i++) {
+            Worker victim = workers.get(index);
+            if (victim != null && victim != thief) {
+                Runnable task = victim.deque.steal();
+                if (task != null) {
+                    return task;
+                }
+            }
+            index = (index + 1) % n;
+        }
+        return null;
+    }
+
+    /**
+     * Returns next task for the working thread or {@code null} if
+     * the working thread should terminate.
+     */
+    private Runnable take(Worker worker) {
+        long idleTime = 0;
+        while (true) {
+            Runnable task = worker.deque.pop();
+            if (task == null) {
+                task = submissions.poll();
+            }
+            if (task == null) {
+                task = steal(worker);
+            }
+            if (task != null) {
+                return task;
+            }
+
+            synchronized (lock) {
+                idleCount.incrementAndGet();
+                try {
+                    // recheck after the thread has been counted as idle
+                    if (hasWork()) {
+                        continue;
+                    }
+                    if (shutdown || idleTime >= KEEP_ALIVE) {
+                        workers.set(worker.index, null);
+                        liveCount.decrementAndGet();
+                        lock.notifyAll();
+                        return null;
+                    }
+                    long time = System.nanoTime();
+                    TimeUnit.NANOSECONDS.timedWait(lock, KEEP_ALIVE - idleTime);
+                    idleTime += System.nanoTime() - time;
+                } catch (InterruptedException ignored) {
+                    // interruption is used to wake up the thread only
+                } finally {
+                    idleCount.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    private void signalWork() {
+        if (idleCount.get() > 0 || liveCount.get() < workers.length()) {
+            synchronized (lock) {
+                // idle threads counted under the lock are waiting for sure
+                if (idleCount.get() > 0) {
+                    lock.notify();
+                } else {
+                    for (int i = 0; i < workers.length() && !shutdown; i++) {
+                        if (workers.get(i) == null) {
+                            Worker worker = new Worker(i);
+                            workers.set(i, worker);
+                            liveCount.incrementAndGet();
+                            worker.start();
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        if (shutdown) {
+            throw new RejectedExecutionException("executor service is shut down");
+        }
+
+        Worker worker = currentWorker();
+        if (worker != null) {
+            worker.deque.push(command);
+        } else {
+            submissions.offer(command);
+        }
+        signalWork();
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> list = new ArrayList<Runnable>();
+        synchronized (lock) {
+            shutdown = true;
+            Runnable task;
+            while ((task = submissions.poll()) != null) {
+                list.add(task);
+            }
+            for (int i = 0; i < workers.length(); i++) {
+                Worker worker = workers.get(i);
+                if (worker != null) {
+                    worker.deque.drainTo(list);
+                    worker.interrupt();
+                }
+            }
+            lock.notifyAll();
+        }
+        return list;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && liveCount.get() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        synchronized (lock) {
+            while (!isTerminated()) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                long time = System.nanoTime();
+                TimeUnit.NANOSECONDS.timedWait(lock, nanos);
+                nanos -= System.nanoTime() - time;
+            }
+            return true;
+        }
+    }
+
+}
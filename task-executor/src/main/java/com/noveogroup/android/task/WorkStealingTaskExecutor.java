@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2013 Noveo Group
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * Except as contained in this notice, the name(s) of the above copyright holders
+ * shall not be used in advertising or otherwise to promote the sale, use or
+ * other dealings in this Software without prior written authorization.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.noveogroup.android.task;
+
+/**
+ * {@link WorkStealingTaskExecutor} is an implementation of
+ * the {@link TaskExecutor} interface using a fixed number of working threads
+ * with their own queues of tasks.
+ * <p/>
+ * Tasks executed from inside of running tasks (for example, using
+ * {@code env.owner().execute(...)} as {@link Tasks#sequence(Task, Task)} and
+ * {@link Tasks#parallel(Task, Task)} do) are queued to the working thread
+ * that executes them and are taken in LIFO order. Idle working threads steal
+ * tasks from other threads in FIFO order. This executor is a drop-in
+ * alternative to {@link SimpleTaskExecutor} for recursive fan-out workloads.
+ * <p/>
+ * The number of working threads is bounded, but tasks waiting for their
+ * sub-tasks in {@link TaskHandler#join()} don't starve it. A sub-task which
+ * hasn't been taken by any working thread yet is executed by the joining
+ * task itself. Otherwise the blocked working thread is compensated by
+ * a temporary thread. Up to one compensation thread per working thread is
+ * allowed by default, see {@link #setMaxCompensationThreads(int)}.
+ */
+public class WorkStealingTaskExecutor extends SimpleTaskExecutor {
+
+    /**
+     * Creates new instance of {@link WorkStealingTaskExecutor} with one
+     * working thread per available processor.
+     */
+    public WorkStealingTaskExecutor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates new instance of {@link WorkStealingTaskExecutor}.
+     *
+     * @param parallelism the number of working threads.
+     */
+    public WorkStealingTaskExecutor(int parallelism) {
+        super(new WorkStealingExecutorService(parallelism));
+        // the pool isn't a ThreadPoolExecutor, so its size isn't known
+        // by the default compensation limit
+        setMaxCompensationThreads(parallelism);
+    }
+
+}
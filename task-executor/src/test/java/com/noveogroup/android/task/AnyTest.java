@@ -0,0 +1,70 @@
+package com.noveogroup.android.task;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AnyTest {
+
+    private static class SleepingTask implements Task<Integer, Integer> {
+
+        private final int value;
+
+        public SleepingTask(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public Integer run(Integer input, TaskEnvironment<Integer, Integer> env) throws Throwable {
+            Thread.sleep(input * value);
+            if (value < 0) {
+                throw new IllegalArgumentException();
+            }
+            return value;
+        }
+
+    }
+
+    @Test
+    public void testFastestWins() throws Throwable {
+        TaskExecutor executor = new SimpleTaskExecutor();
+
+        TaskHandler<Integer, Integer> handler = executor.execute(Tasks.any(new SleepingTask(1000), new SleepingTask(1)), 10, "any");
+        Assert.assertEquals(1, (int) handler.get());
+        Assert.assertTrue(executor.queue("any").join(1000));
+    }
+
+    @Test
+    public void testAllFailed() throws InterruptedException {
+        TaskExecutor executor = new SimpleTaskExecutor();
+
+        TaskHandler<Integer, Integer> handler = executor.execute(Tasks.any(new SleepingTask(-1), new SleepingTask(-2)), 0);
+        Assert.assertTrue(handler.join(1000));
+        Assert.assertEquals(TaskHandler.State.FAILED, handler.getState());
+        Assert.assertTrue(handler.getThrowable() instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void testAwaitAny() throws InterruptedException {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        TaskHandler<Integer, Integer> slow = executor.execute(new SleepingTask(1000), 10, "replica");
+        TaskHandler<Integer, Integer> failed = executor.execute(new SleepingTask(-1), 0, "replica");
+        TaskHandler<Integer, Integer> fast = executor.execute(new SleepingTask(1), 10, "replica");
+
+        Assert.assertSame(fast, executor.queue("replica").awaitAny(1000));
+        Assert.assertTrue(slow.join(1000));
+        Assert.assertTrue(slow.isInterrupted());
+        Assert.assertEquals(TaskHandler.State.FAILED, failed.getState());
+    }
+
+    @Test
+    public void testAwaitAnyTimeout() throws InterruptedException {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        Assert.assertNull(executor.queue("replica").awaitAny(10));
+
+        TaskHandler<Integer, Integer> slow = executor.execute(new SleepingTask(1000), 10, "replica");
+        Assert.assertNull(executor.queue("replica").awaitAny(50));
+        Assert.assertFalse(slow.isInterrupted());
+        slow.interrupt();
+    }
+
+}
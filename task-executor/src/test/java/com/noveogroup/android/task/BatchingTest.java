@@ -0,0 +1,121 @@
+package com.noveogroup.android.task;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class BatchingTest {
+
+    private static class DoublingTask implements BatchTask<Integer, Integer> {
+
+        final List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<List<Integer>>());
+        final int maxBatchSize;
+        final long maxBatchDelay;
+
+        public DoublingTask(int maxBatchSize, long maxBatchDelay) {
+            this.maxBatchSize = maxBatchSize;
+            this.maxBatchDelay = maxBatchDelay;
+        }
+
+        @Override
+        public int getMaxBatchSize() {
+            return maxBatchSize;
+        }
+
+        @Override
+        public long getMaxBatchDelay() {
+            return maxBatchDelay;
+        }
+
+        @Override
+        public List<Integer> run(List<Integer> inputs, TaskEnvironment<Integer, Integer> env) throws Throwable {
+            batches.add(new ArrayList<Integer>(inputs));
+            List<Integer> outputs = new ArrayList<Integer>();
+            for (Integer input : inputs) {
+                if (input < 0) {
+                    throw new IllegalArgumentException();
+                }
+                outputs.add(input * 2);
+            }
+            return outputs;
+        }
+
+    }
+
+    @Test
+    public void testFullBatches() throws Throwable {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        DoublingTask task = new DoublingTask(10, 60 * 60 * 1000);
+
+        List<TaskHandler<Integer, Integer>> handlers = new ArrayList<TaskHandler<Integer, Integer>>();
+        for (int i = 0; i < 30; i++) {
+            handlers.add(executor.executeBatched(task, i, "batch"));
+        }
+        for (int i = 0; i < handlers.size(); i++) {
+            Assert.assertEquals(i * 2, (int) handlers.get(i).get());
+            Assert.assertEquals(TaskHandler.State.SUCCEED, handlers.get(i).getState());
+        }
+        Assert.assertEquals(3, task.batches.size());
+        Assert.assertEquals(10, task.batches.get(0).size());
+    }
+
+    @Test
+    public void testDelayedBatch() throws Throwable {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        DoublingTask task = new DoublingTask(100, 30);
+
+        List<TaskHandler<Integer, Integer>> handlers = new ArrayList<TaskHandler<Integer, Integer>>();
+        for (int i = 0; i < 5; i++) {
+            handlers.add(executor.executeBatched(task, i, "batch"));
+        }
+        Assert.assertEquals(5, executor.queue("batch").filter(TaskHandler.State.CREATED).size());
+
+        for (TaskHandler<Integer, Integer> handler : handlers) {
+            Assert.assertTrue(handler.join(1000));
+        }
+        Assert.assertEquals(1, task.batches.size());
+        Assert.assertEquals(8, (int) handlers.get(4).get());
+    }
+
+    @Test
+    public void testFailedBatch() throws InterruptedException {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        DoublingTask task = new DoublingTask(3, 60 * 60 * 1000);
+
+        List<TaskHandler<Integer, Integer>> handlers = new ArrayList<TaskHandler<Integer, Integer>>();
+        handlers.add(executor.executeBatched(task, 1, "batch"));
+        handlers.add(executor.executeBatched(task, -1, "batch"));
+        handlers.add(executor.executeBatched(task, 2, "batch"));
+
+        for (TaskHandler<Integer, Integer> handler : handlers) {
+            Assert.assertTrue(handler.join(1000));
+            Assert.assertEquals(TaskHandler.State.FAILED, handler.getState());
+            Assert.assertTrue(handler.getThrowable() instanceof IllegalArgumentException);
+        }
+        Assert.assertEquals(1, task.batches.size());
+    }
+
+    @Test
+    public void testCanceledWhileOpen() throws Throwable {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        DoublingTask task = new DoublingTask(3, 60 * 60 * 1000);
+
+        TaskHandler<Integer, Integer> canceled = executor.executeBatched(task, 1, "batch");
+        canceled.interrupt();
+        Assert.assertTrue(canceled.join(1000));
+        Assert.assertEquals(TaskHandler.State.CANCELED, canceled.getState());
+
+        List<TaskHandler<Integer, Integer>> handlers = new ArrayList<TaskHandler<Integer, Integer>>();
+        for (int i = 2; i <= 4; i++) {
+            handlers.add(executor.executeBatched(task, i, "batch"));
+        }
+        for (TaskHandler<Integer, Integer> handler : handlers) {
+            handler.join();
+        }
+        Assert.assertEquals("[[2, 3, 4]]", task.batches.toString());
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.noveogroup.android.task;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares executors on a large number of concurrent blocking tasks: each
+ * task sleeps for the given time as if it waited for I/O.
+ * <p/>
+ * Usage: {@code BlockingBenchmark [tasks] [blocking-time-ms]}.
+ * Virtual threads are measured only if the runtime supports them.
+ */
+public class BlockingBenchmark {
+
+    private static class BlockingTask implements Task<Long, Void> {
+
+        private final AtomicInteger counter;
+
+        public BlockingTask(AtomicInteger counter) {
+            this.counter = counter;
+        }
+
+        @Override
+        public Void run(Long time, TaskEnvironment<Long, Void> env) throws Throwable {
+            Thread.sleep(time);
+            counter.incrementAndGet();
+            return null;
+        }
+
+    }
+
+    public static void main(String[] args) throws Exception {
+        int tasks = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        long time = args.length > 1 ? Long.parseLong(args[1]) : 100;
+
+        for (int i = 0; i < 2; i++) {
+            System.out.println(i == 0 ? "warm up:" : "results:");
+            run("cached thread pool", new SimpleTaskExecutor(), i == 0 ? tasks / 10 : tasks, time);
+            if (VirtualThreadTaskExecutor.isSupported()) {
+                run("virtual threads", new VirtualThreadTaskExecutor(), i == 0 ? tasks / 10 : tasks, time);
+            } else {
+                System.out.println("virtual threads are not supported by this runtime");
+            }
+        }
+        System.exit(0);
+    }
+
+    private static void run(String name, TaskExecutor executor, int tasks, long time) throws InterruptedException {
+        AtomicInteger counter = new AtomicInteger();
+        BlockingTask task = new BlockingTask(counter);
+
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < tasks; i++) {
+                executor.execute(task, time, "blocking");
+            }
+            executor.queue("blocking").join();
+        } catch (OutOfMemoryError e) {
+            // too many platform threads
+            System.out.printf("%-20s failed after %d tasks: %s%n", name, counter.get(), e.getMessage());
+            executor.queue("blocking").interrupt();
+            executor.shutdown();
+            return;
+        }
+        long elapsed = (System.nanoTime() - start) / 1000000;
+
+        System.out.printf("%-20s %8d tasks %6d ms %10d tasks/s%n", name, counter.get(), elapsed, counter.get() * 1000L / Math.max(elapsed, 1));
+        executor.shutdown();
+    }
+
+}
@@ -0,0 +1,135 @@
+package com.noveogroup.android.task;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BulkheadsTest {
+
+    private static class BlockingTask implements Task<Void, Void> {
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+
+        @Override
+        public Void run(Void input, TaskEnvironment<Void, Void> env) throws Throwable {
+            int current = running.incrementAndGet();
+            while (true) {
+                int max = maxRunning.get();
+                if (current <= max || maxRunning.compareAndSet(max, current)) {
+                    break;
+                }
+            }
+            release.await();
+            running.decrementAndGet();
+            return null;
+        }
+
+    }
+
+    private static void awaitStarted(TaskSet taskSet, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (taskSet.filter(TaskHandler.State.STARTED).size() < count) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void testMaxRunning() throws InterruptedException {
+        SimpleTaskExecutor executor = new SimpleTaskExecutor(Executors.newFixedThreadPool(8));
+        TaskSet thumbnails = executor.queue("thumbnail");
+        thumbnails.setMaxRunning(2);
+        Assert.assertEquals(2, thumbnails.getMaxRunning());
+
+        BlockingTask task = new BlockingTask();
+        for (int i = 0; i < 6; i++) {
+            thumbnails.execute(task);
+        }
+        awaitStarted(thumbnails, 2);
+        Thread.sleep(50);
+        Assert.assertEquals(2, thumbnails.filter(TaskHandler.State.STARTED).size());
+        Assert.assertEquals(4, thumbnails.filter(TaskHandler.State.CREATED).size());
+
+        // other tasks are not limited
+        Assert.assertTrue(executor.execute(new BlockingTask() {
+            {
+                release.countDown();
+            }
+        }, "api").join(1000));
+
+        task.release.countDown();
+        Assert.assertTrue(thumbnails.join(1000));
+        Assert.assertEquals(2, task.maxRunning.get());
+    }
+
+    @Test
+    public void testReservedSlots() throws InterruptedException {
+        SimpleTaskExecutor executor = new SimpleTaskExecutor(Executors.newFixedThreadPool(4));
+        executor.setMaxRunning(4);
+        executor.queue("api").setReservedSlots(1);
+
+        BlockingTask task = new BlockingTask();
+        for (int i = 0; i < 5; i++) {
+            executor.execute(task, "thumbnail");
+        }
+        awaitStarted(executor.queue("thumbnail"), 3);
+        Thread.sleep(50);
+        Assert.assertEquals(3, task.running.get());
+
+        // the reserved slot is free for the api task
+        final CountDownLatch api = new CountDownLatch(1);
+        executor.execute(new Task<Void, Void>() {
+            @Override
+            public Void run(Void input, TaskEnvironment<Void, Void> env) throws Throwable {
+                api.countDown();
+                return null;
+            }
+        }, "api");
+        Assert.assertTrue(api.await(1, TimeUnit.SECONDS));
+
+        task.release.countDown();
+        Assert.assertTrue(executor.queue().join(1000));
+        Assert.assertEquals(3, task.maxRunning.get());
+    }
+
+    @Test
+    public void testInterruptWaiting() throws InterruptedException {
+        SimpleTaskExecutor executor = new SimpleTaskExecutor();
+        executor.queue("thumbnail").setMaxRunning(1);
+
+        BlockingTask task = new BlockingTask();
+        executor.execute(task, "thumbnail");
+        awaitStarted(executor.queue("thumbnail"), 1);
+
+        final CountDownLatch canceled = new CountDownLatch(1);
+        List<TaskHandler<Void, Void>> handlers = new ArrayList<TaskHandler<Void, Void>>();
+        for (int i = 0; i < 3; i++) {
+            handlers.add(executor.execute(task, new TaskListener.Default<Void, Void>() {
+                @Override
+                public void onCanceled(TaskHandler<Void, Void> handler) {
+                    canceled.countDown();
+                }
+            }, "thumbnail"));
+        }
+        handlers.get(1).interrupt();
+        Assert.assertEquals(TaskHandler.State.CANCELED, handlers.get(1).getState());
+
+        // listeners of the waiting task are called without waiting for a slot
+        Assert.assertTrue(canceled.await(1, TimeUnit.SECONDS));
+
+        task.release.countDown();
+        Assert.assertTrue(executor.queue("thumbnail").join(1000));
+        Assert.assertEquals(TaskHandler.State.SUCCEED, handlers.get(0).getState());
+        Assert.assertEquals(TaskHandler.State.SUCCEED, handlers.get(2).getState());
+        Assert.assertEquals(1, task.maxRunning.get());
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.noveogroup.android.task;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class CancellationTest {
+
+    private static class SleepingTask implements Task<Void, Void> {
+
+        final CountDownLatch started = new CountDownLatch(1);
+
+        @Override
+        public Void run(Void input, TaskEnvironment<Void, Void> env) throws Throwable {
+            started.countDown();
+            Thread.sleep(10000);
+            return null;
+        }
+
+    }
+
+    @Test
+    public void testRunningThreadInterrupted() throws InterruptedException {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        SleepingTask task = new SleepingTask();
+
+        TaskHandler<Void, Void> handler = executor.execute(task);
+        Assert.assertTrue(task.started.await(1, TimeUnit.SECONDS));
+        handler.interrupt();
+
+        Assert.assertTrue(handler.join(1000));
+        Assert.assertEquals(TaskHandler.State.FAILED, handler.getState());
+        Assert.assertTrue(handler.getThrowable() instanceof InterruptedException);
+    }
+
+    @Test
+    public void testChildrenInterrupted() throws InterruptedException {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        final SleepingTask child = new SleepingTask();
+        final AtomicReference<TaskHandler<Void, Void>> childHandler = new AtomicReference<TaskHandler<Void, Void>>();
+        final AtomicReference<TaskHandler<Void, Void>> delayedHandler = new AtomicReference<TaskHandler<Void, Void>>();
+
+        TaskHandler<Void, Void> parent = executor.execute(new Task<Void, Void>() {
+            @Override
+            public Void run(Void input, TaskEnvironment<Void, Void> env) throws Throwable {
+                childHandler.set(env.owner().execute(child));
+                delayedHandler.set(env.executor().executeDelayed(new SleepingTask(), 1, TimeUnit.HOURS));
+                Thread.sleep(10000);
+                return null;
+            }
+        });
+        Assert.assertTrue(child.started.await(1, TimeUnit.SECONDS));
+        parent.interrupt();
+
+        Assert.assertTrue(parent.join(1000));
+        Assert.assertTrue(childHandler.get().join(1000));
+        Assert.assertTrue(delayedHandler.get().join(1000));
+        Assert.assertEquals(TaskHandler.State.FAILED, childHandler.get().getState());
+        Assert.assertTrue(childHandler.get().getThrowable() instanceof InterruptedException);
+        Assert.assertEquals(TaskHandler.State.CANCELED, delayedHandler.get().getState());
+    }
+
+    @Test
+    public void testChildOfInterruptedParentCanceled() throws Throwable {
+        SimpleTaskExecutor executor = new SimpleTaskExecutor();
+        executor.setCapacity(2);
+        final AtomicReference<TaskHandler<Void, Void>> delayedHandler = new AtomicReference<TaskHandler<Void, Void>>();
+
+        executor.execute(new Task<Void, Void>() {
+            @Override
+            public Void run(Void input, TaskEnvironment<Void, Void> env) throws Throwable {
+                env.interruptSelf();
+                delayedHandler.set(env.executor().executeDelayed(new SleepingTask(), 1, TimeUnit.HOURS));
+                return null;
+            }
+        }).join();
+
+        Assert.assertTrue(delayedHandler.get().join(1000));
+        Assert.assertEquals(TaskHandler.State.CANCELED, delayedHandler.get().getState());
+
+        // the canceled child doesn't keep its capacity
+        SleepingTask first = new SleepingTask();
+        TaskHandler<Void, Void> firstHandler = executor.execute(first);
+        TaskHandler<Void, Void> secondHandler = executor.execute(new SleepingTask());
+        Assert.assertTrue(first.started.await(1, TimeUnit.SECONDS));
+        firstHandler.interrupt();
+        secondHandler.interrupt();
+        Assert.assertTrue(firstHandler.join(1000));
+        Assert.assertTrue(secondHandler.join(1000));
+        Assert.assertTrue(executor.queue().isEmpty());
+    }
+
+    @Test
+    public void testFinishedParentLeavesChildren() throws InterruptedException {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        final SleepingTask child = new SleepingTask();
+        final AtomicReference<TaskHandler<Void, Void>> childHandler = new AtomicReference<TaskHandler<Void, Void>>();
+
+        TaskHandler<Void, Void> parent = executor.execute(new Task<Void, Void>() {
+            @Override
+            public Void run(Void input, TaskEnvironment<Void, Void> env) throws Throwable {
+                childHandler.set(env.owner().execute(child));
+                return null;
+            }
+        });
+        Assert.assertTrue(parent.join(1000));
+        Assert.assertTrue(child.started.await(1, TimeUnit.SECONDS));
+        parent.interrupt();
+
+        Assert.assertFalse(childHandler.get().join(100));
+        childHandler.get().interrupt();
+        Assert.assertTrue(childHandler.get().join(1000));
+    }
+
+    @Test
+    public void testInterruptFlagCleared() throws Throwable {
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        TaskExecutor executor = new SimpleTaskExecutor(executorService);
+
+        executor.execute(new Task<Void, Void>() {
+            @Override
+            public Void run(Void input, TaskEnvironment<Void, Void> env) throws Throwable {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }).join();
+        Boolean interrupted = executor.execute(new Task<Void, Boolean>() {
+            @Override
+            public Boolean run(Void input, TaskEnvironment<Void, Boolean> env) throws Throwable {
+                return Thread.currentThread().isInterrupted();
+            }
+        }).get();
+
+        Assert.assertFalse(interrupted);
+        executorService.shutdown();
+    }
+
+}
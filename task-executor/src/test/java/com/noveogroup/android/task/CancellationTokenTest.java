@@ -0,0 +1,92 @@
+package com.noveogroup.android.task;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.SocketException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CancellationTokenTest {
+
+    private static class CountingCallback implements Interruptible {
+
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public void interrupt() {
+            calls.incrementAndGet();
+        }
+
+    }
+
+    @Test
+    public void testBlockingIoReleased() throws InterruptedException {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        final CountDownLatch started = new CountDownLatch(1);
+
+        TaskHandler<Void, Void> handler = executor.execute(new Task<Void, Void>() {
+            @Override
+            public Void run(Void input, TaskEnvironment<Void, Void> env) throws Throwable {
+                final ServerSocket socket = new ServerSocket(0);
+                env.cancellationToken().register(new Interruptible() {
+                    @Override
+                    public void interrupt() {
+                        try {
+                            socket.close();
+                        } catch (IOException ignored) {
+                        }
+                    }
+                });
+                started.countDown();
+                // accept() doesn't respond to thread interruption
+                socket.accept();
+                return null;
+            }
+        });
+        Assert.assertTrue(started.await(1, TimeUnit.SECONDS));
+        handler.interrupt();
+
+        Assert.assertTrue(handler.join(1000));
+        Assert.assertEquals(TaskHandler.State.FAILED, handler.getState());
+        Assert.assertTrue(handler.getThrowable() instanceof SocketException);
+    }
+
+    @Test
+    public void testCallbacks() throws InterruptedException {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        final CountingCallback first = new CountingCallback();
+        final CountingCallback second = new CountingCallback();
+        final CountingCallback unregistered = new CountingCallback();
+        final CountingCallback late = new CountingCallback();
+
+        TaskHandler<Void, Boolean> handler = executor.execute(new Task<Void, Boolean>() {
+            @Override
+            public Boolean run(Void input, TaskEnvironment<Void, Boolean> env) throws Throwable {
+                CancellationToken token = env.cancellationToken();
+                token.register(first);
+                token.register(second);
+                token.register(unregistered);
+                Assert.assertTrue(token.unregister(unregistered));
+                Assert.assertFalse(token.isCancelled());
+
+                env.interruptSelf();
+                Assert.assertTrue(token.isCancelled());
+                token.register(late);
+                return token.unregister(first);
+            }
+        });
+
+        Assert.assertTrue(handler.join(1000));
+        Assert.assertEquals(TaskHandler.State.SUCCEED, handler.getState());
+        Assert.assertFalse(handler.vars().output());
+        Assert.assertEquals(1, first.calls.get());
+        Assert.assertEquals(1, second.calls.get());
+        Assert.assertEquals(0, unregistered.calls.get());
+        Assert.assertEquals(1, late.calls.get());
+    }
+
+}
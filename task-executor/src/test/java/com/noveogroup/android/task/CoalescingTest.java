@@ -0,0 +1,165 @@
+package com.noveogroup.android.task;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CoalescingTest {
+
+    private static class SquareTask implements Task<Integer, Integer> {
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger runs = new AtomicInteger();
+
+        @Override
+        public Integer run(Integer input, TaskEnvironment<Integer, Integer> env) throws Throwable {
+            runs.incrementAndGet();
+            started.countDown();
+            release.await();
+            return input * input;
+        }
+
+    }
+
+    private static class RecordingListener extends TaskListener.Default<Integer, Integer> {
+
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch destroyed = new CountDownLatch(1);
+
+        @Override
+        public void onCreate(TaskHandler<Integer, Integer> handler) {
+            events.add("create");
+        }
+
+        @Override
+        public void onStart(TaskHandler<Integer, Integer> handler) {
+            events.add("start");
+        }
+
+        @Override
+        public void onSucceed(TaskHandler<Integer, Integer> handler) {
+            events.add("succeed");
+        }
+
+        @Override
+        public void onDestroy(TaskHandler<Integer, Integer> handler) {
+            events.add("destroy");
+            destroyed.countDown();
+        }
+
+    }
+
+    @Test
+    public void testSharedExecution() throws Throwable {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        SquareTask task = new SquareTask();
+
+        List<TaskHandler<Integer, Integer>> handlers = new ArrayList<TaskHandler<Integer, Integer>>();
+        for (int i = 0; i < 100; i++) {
+            handlers.add(executor.executeCoalesced(task, 7, "coalesced"));
+        }
+        Assert.assertEquals(1, executor.queue("coalesced").size());
+
+        task.release.countDown();
+        for (TaskHandler<Integer, Integer> handler : handlers) {
+            Assert.assertEquals(49, (int) handler.get());
+        }
+        Assert.assertEquals(1, task.runs.get());
+
+        // the next request starts a new execution
+        Assert.assertEquals(49, (int) executor.executeCoalesced(task, 7, "coalesced").get());
+        Assert.assertEquals(2, task.runs.get());
+    }
+
+    @Test
+    public void testDifferentKeys() throws Throwable {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        SquareTask task = new SquareTask();
+        task.release.countDown();
+
+        TaskHandler<Integer, Integer> first = executor.executeCoalesced("first", task, 2);
+        TaskHandler<Integer, Integer> second = executor.executeCoalesced("second", task, 3);
+
+        Assert.assertEquals(4, (int) first.get());
+        Assert.assertEquals(9, (int) second.get());
+        Assert.assertEquals(2, task.runs.get());
+    }
+
+    @Test
+    public void testListenersPerSubscriber() throws Throwable {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        SquareTask task = new SquareTask();
+        RecordingListener first = new RecordingListener();
+        RecordingListener second = new RecordingListener();
+
+        executor.executeCoalesced("key", task, new Pack<Integer, Integer>().setInput(3),
+                Collections.<TaskListener<Integer, Integer>>singletonList(first), Collections.<String>emptyList());
+        Assert.assertTrue(task.started.await(1, TimeUnit.SECONDS));
+
+        // the late subscriber receives the callbacks it has missed
+        TaskHandler<Integer, Integer> handler = executor.executeCoalesced("key", task, new Pack<Integer, Integer>().setInput(3),
+                Collections.<TaskListener<Integer, Integer>>singletonList(second), Collections.<String>emptyList());
+        Assert.assertEquals(TaskHandler.State.STARTED, handler.getState());
+        Assert.assertEquals(first.events, second.events);
+
+        task.release.countDown();
+        Assert.assertTrue(first.destroyed.await(1, TimeUnit.SECONDS));
+        Assert.assertTrue(second.destroyed.await(1, TimeUnit.SECONDS));
+        Assert.assertEquals(first.events, second.events);
+        Assert.assertEquals(9, (int) handler.get());
+        Assert.assertEquals(1, task.runs.get());
+    }
+
+    @Test
+    public void testInterruptedSubscriberDetached() throws Throwable {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        SquareTask task = new SquareTask();
+        RecordingListener listener = new RecordingListener();
+
+        TaskHandler<Integer, Integer> first = executor.executeCoalesced("key", task, new Pack<Integer, Integer>().setInput(5),
+                Collections.<TaskListener<Integer, Integer>>singletonList(listener), Collections.<String>emptyList());
+        TaskHandler<Integer, Integer> second = executor.executeCoalesced("key", task, 5);
+        Assert.assertTrue(task.started.await(1, TimeUnit.SECONDS));
+
+        // the execution goes on while other subscribers wait for it
+        first.interrupt();
+        Assert.assertTrue(first.join(1000));
+        Assert.assertEquals(TaskHandler.State.CANCELED, first.getState());
+        Assert.assertTrue(listener.destroyed.await(1, TimeUnit.SECONDS));
+        Assert.assertFalse(second.isInterrupted());
+        Assert.assertEquals(TaskHandler.State.STARTED, second.getState());
+        Assert.assertEquals(1, executor.queue().size());
+
+        task.release.countDown();
+        Assert.assertEquals(25, (int) second.get());
+        Assert.assertEquals(TaskHandler.State.CANCELED, first.getState());
+        Assert.assertNull(first.get());
+        Assert.assertEquals(1, task.runs.get());
+    }
+
+    @Test
+    public void testLastSubscriberInterruptsExecution() throws Throwable {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        SquareTask task = new SquareTask();
+
+        TaskHandler<Integer, Integer> first = executor.executeCoalesced("key", task, 4);
+        TaskHandler<Integer, Integer> second = executor.executeCoalesced("key", task, 4);
+        Assert.assertTrue(task.started.await(1, TimeUnit.SECONDS));
+
+        first.interrupt();
+        second.interrupt();
+        Assert.assertTrue(second.join(1000));
+        Assert.assertEquals(TaskHandler.State.FAILED, second.getState());
+        Assert.assertTrue(second.getThrowable() instanceof InterruptedException);
+        Assert.assertEquals(TaskHandler.State.CANCELED, first.getState());
+        Assert.assertTrue(executor.queue().isEmpty());
+    }
+
+}
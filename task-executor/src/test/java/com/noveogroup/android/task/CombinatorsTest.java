@@ -0,0 +1,151 @@
+package com.noveogroup.android.task;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class CombinatorsTest {
+
+    private static class AddTask implements Task<Integer, Integer> {
+
+        private final int value;
+
+        public AddTask(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public Integer run(Integer input, TaskEnvironment<Integer, Integer> env) throws Throwable {
+            if (input < 0) {
+                throw new IllegalArgumentException();
+            }
+            return input + value;
+        }
+
+    }
+
+    private static class BarrierTask implements Task<Integer, Integer> {
+
+        private final CyclicBarrier barrier;
+
+        public BarrierTask(CyclicBarrier barrier) {
+            this.barrier = barrier;
+        }
+
+        @Override
+        public Integer run(Integer input, TaskEnvironment<Integer, Integer> env) throws Throwable {
+            barrier.await(1, TimeUnit.SECONDS);
+            return input;
+        }
+
+    }
+
+    private static class BlockingTask implements InterruptibleTask<Integer, Integer> {
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+
+        @Override
+        public Integer run(Integer input, TaskEnvironment<Integer, Integer> env) throws Throwable {
+            started.countDown();
+            interrupted.await();
+            env.checkInterrupted();
+            return input;
+        }
+
+        @Override
+        public void interrupt() {
+            interrupted.countDown();
+        }
+
+    }
+
+    @Test
+    public void testParallelWithoutParkedThread() throws Throwable {
+        // two working threads are enough only if the composite task doesn't hold one
+        TaskExecutor executor = new SimpleTaskExecutor(Executors.newFixedThreadPool(2));
+        CyclicBarrier barrier = new CyclicBarrier(2);
+
+        TaskHandler<C2<Integer, Integer>, C2<Integer, Integer>> handler = executor.execute(
+                Tasks.parallel(new BarrierTask(barrier), new BarrierTask(barrier)),
+                new C2<Integer, Integer>(1, 2));
+
+        C2<Integer, Integer> output = handler.get();
+        Assert.assertEquals(1, (int) output.getV1());
+        Assert.assertEquals(2, (int) output.getV2());
+    }
+
+    @Test
+    public void testSequence() throws Throwable {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        List<Task<Integer, Integer>> tasks = Arrays.<Task<Integer, Integer>>asList(new AddTask(1), new AddTask(2), new AddTask(3));
+
+        List<Integer> outputs = executor.execute(Tasks.sequence(tasks), Arrays.asList(10, 20, 30)).get();
+        Assert.assertEquals(Arrays.asList(11, 22, 33), outputs);
+
+        TaskHandler<List<Integer>, List<Integer>> failed = executor.execute(Tasks.sequence(tasks), Arrays.asList(10, -1, 30));
+        Assert.assertTrue(failed.join(1000));
+        Assert.assertEquals(TaskHandler.State.FAILED, failed.getState());
+        Assert.assertTrue(failed.getThrowable() instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void testMerge() throws Throwable {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        Task<C3<Integer, Integer, Integer>, Integer> task = Tasks.merge(new AddTask(1), new AddTask(2), new AddTask(3),
+                new Task<C3<Integer, Integer, Integer>, Integer>() {
+                    @Override
+                    public Integer run(C3<Integer, Integer, Integer> value, TaskEnvironment<C3<Integer, Integer, Integer>, Integer> env) throws Throwable {
+                        return value.getV1() + value.getV2() + value.getV3();
+                    }
+                });
+
+        Assert.assertEquals(6, (int) executor.execute(task, new C3<Integer, Integer, Integer>(0, 0, 0)).get());
+    }
+
+    @Test
+    public void testFailFast() throws InterruptedException {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        final BlockingTask blocking = new BlockingTask();
+        // the branch fails once the other one is running, not canceled
+        Task<Integer, Integer> failing = new Task<Integer, Integer>() {
+            @Override
+            public Integer run(Integer input, TaskEnvironment<Integer, Integer> env) throws Throwable {
+                Assert.assertTrue(blocking.started.await(1, TimeUnit.SECONDS));
+                throw new IllegalArgumentException();
+            }
+        };
+        List<Task<Integer, Integer>> tasks = Arrays.<Task<Integer, Integer>>asList(blocking, failing);
+
+        TaskHandler<List<Integer>, List<Integer>> handler = executor.execute(Tasks.parallel(tasks), Arrays.asList(1, -1));
+        Assert.assertTrue(handler.join(1000));
+        Assert.assertEquals(TaskHandler.State.FAILED, handler.getState());
+        Assert.assertTrue(handler.getThrowable() instanceof IllegalArgumentException);
+        Assert.assertTrue(blocking.interrupted.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testInterruptPassedToBranches() throws InterruptedException {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        BlockingTask first = new BlockingTask();
+        BlockingTask second = new BlockingTask();
+        List<Task<Integer, Integer>> tasks = Arrays.<Task<Integer, Integer>>asList(first, second);
+
+        TaskHandler<List<Integer>, List<Integer>> handler = executor.execute(Tasks.parallel(tasks), Arrays.asList(1, 2));
+        Assert.assertFalse(handler.join(100));
+        Assert.assertEquals(TaskHandler.State.STARTED, handler.getState());
+
+        handler.interrupt();
+        Assert.assertTrue(handler.join(1000));
+        Assert.assertEquals(TaskHandler.State.FAILED, handler.getState());
+        Assert.assertTrue(first.interrupted.await(1, TimeUnit.SECONDS));
+        Assert.assertTrue(second.interrupted.await(1, TimeUnit.SECONDS));
+    }
+
+}
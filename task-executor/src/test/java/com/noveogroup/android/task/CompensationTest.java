@@ -0,0 +1,86 @@
+package com.noveogroup.android.task;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class CompensationTest {
+
+    private static class AddTask implements Task<Integer, Integer> {
+
+        private final int value;
+
+        public AddTask(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public Integer run(Integer input, TaskEnvironment<Integer, Integer> env) throws Throwable {
+            return input + value;
+        }
+
+    }
+
+    @Test
+    public void testJoinedTaskExecutedInline() throws Throwable {
+        ExecutorService executorService = Executors.newFixedThreadPool(1);
+        SimpleTaskExecutor executor = new SimpleTaskExecutor(executorService);
+
+        TaskHandler<Integer, Integer> handler = executor.execute(new Task<Integer, Integer>() {
+            @Override
+            public Integer run(Integer input, TaskEnvironment<Integer, Integer> env) throws Throwable {
+                // the only working thread is busy, so the child is executed by the parent
+                return env.owner().execute(new AddTask(1), input).get() * 2;
+            }
+        }, 1);
+
+        Assert.assertTrue(handler.join(1000));
+        Assert.assertEquals(4, (int) handler.get());
+        Assert.assertEquals(1, executor.getInlineJoinCount());
+        Assert.assertEquals(0, executor.getCompensationCount());
+        executorService.shutdown();
+    }
+
+    @Test
+    public void testBlockedThreadCompensated() throws Throwable {
+        ExecutorService executorService = Executors.newFixedThreadPool(1);
+        SimpleTaskExecutor executor = new SimpleTaskExecutor(executorService);
+
+        TaskHandler<Integer, Integer> handler = executor.execute(new Task<Integer, Integer>() {
+            @Override
+            public Integer run(Integer input, TaskEnvironment<Integer, Integer> env) throws Throwable {
+                // the continuation cannot be executed inline until the first task is finished
+                TaskHandler<Integer, Integer> first = env.owner().execute(new AddTask(1), input);
+                return first.thenExecute(new AddTask(10)).get();
+            }
+        }, 1);
+
+        Assert.assertTrue(handler.join(1000));
+        Assert.assertEquals(12, (int) handler.get());
+        Assert.assertEquals(1, executor.getBlockedJoinCount());
+        Assert.assertEquals(1, executor.getCompensationCount());
+        executorService.shutdown();
+    }
+
+    @Test
+    public void testCompensationDisabled() throws InterruptedException {
+        ExecutorService executorService = Executors.newFixedThreadPool(1);
+        SimpleTaskExecutor executor = new SimpleTaskExecutor(executorService);
+        executor.setMaxCompensationThreads(0);
+
+        final TaskHandler<Integer, Integer> handler = executor.execute(new Task<Integer, Integer>() {
+            @Override
+            public Integer run(Integer input, TaskEnvironment<Integer, Integer> env) throws Throwable {
+                TaskHandler<Integer, Integer> first = env.owner().execute(new AddTask(1), input);
+                return first.thenExecute(new AddTask(10)).get();
+            }
+        }, 1);
+
+        Assert.assertFalse(handler.join(200));
+        Assert.assertEquals(0, executor.getCompensationCount());
+        executorService.shutdownNow();
+    }
+
+}
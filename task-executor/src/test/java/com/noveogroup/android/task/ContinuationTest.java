@@ -0,0 +1,173 @@
+package com.noveogroup.android.task;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ContinuationTest {
+
+    private static class AddTask implements Task<Integer, Integer> {
+
+        private final int value;
+
+        public AddTask(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public Integer run(Integer input, TaskEnvironment<Integer, Integer> env) throws Throwable {
+            if (input == null) {
+                return value;
+            }
+            if (input < 0) {
+                throw new IllegalArgumentException();
+            }
+            return input + value;
+        }
+
+    }
+
+    private static class BlockingTask implements Task<Integer, Integer> {
+
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public Integer run(Integer input, TaskEnvironment<Integer, Integer> env) throws Throwable {
+            release.await();
+            return input;
+        }
+
+    }
+
+    @Test
+    public void testOnComplete() throws InterruptedException {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        BlockingTask task = new BlockingTask();
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch called = new CountDownLatch(1);
+        TaskCallback<Integer, Integer> callback = new TaskCallback<Integer, Integer>() {
+            @Override
+            public void onComplete(TaskHandler<Integer, Integer> handler) {
+                Assert.assertTrue(handler.getState().isDestroyed());
+                calls.incrementAndGet();
+                called.countDown();
+            }
+        };
+
+        TaskHandler<Integer, Integer> handler = executor.execute(task, 1);
+        handler.onComplete(callback);
+        Assert.assertEquals(0, calls.get());
+
+        task.release.countDown();
+        Assert.assertTrue(called.await(1, TimeUnit.SECONDS));
+        Assert.assertEquals(1, calls.get());
+
+        // the callback is called at once for a destroyed task
+        handler.onComplete(callback);
+        Assert.assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testThenExecute() throws Throwable {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        BlockingTask task = new BlockingTask();
+
+        TaskHandler<Integer, Integer> first = executor.execute(task, 1, "chain");
+        TaskHandler<Integer, Integer> second = first.thenExecute(new AddTask(10), "chain");
+        TaskHandler<Integer, Integer> third = second.thenExecute(new AddTask(100), "chain");
+        Assert.assertEquals(TaskHandler.State.CREATED, third.getState());
+        Assert.assertEquals(3, executor.queue("chain").size());
+
+        task.release.countDown();
+        Assert.assertEquals(111, (int) third.get());
+    }
+
+    @Test
+    public void testFailurePropagated() throws InterruptedException {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        final CountDownLatch canceled = new CountDownLatch(1);
+
+        TaskHandler<Integer, Integer> first = executor.execute(new AddTask(0), -1);
+        TaskHandler<Integer, Integer> second = first.thenExecute(new AddTask(10),
+                Collections.<TaskListener<Integer, Integer>>singletonList(new TaskListener.Default<Integer, Integer>() {
+                    @Override
+                    public void onCanceled(TaskHandler<Integer, Integer> handler) {
+                        canceled.countDown();
+                    }
+                }), Collections.<String>emptyList());
+
+        Assert.assertTrue(second.join(1000));
+        Assert.assertTrue(canceled.await(1, TimeUnit.SECONDS));
+        Assert.assertEquals(TaskHandler.State.CANCELED, second.getState());
+        Assert.assertTrue(second.getThrowable() instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void testInterruptWaiting() throws InterruptedException {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        BlockingTask task = new BlockingTask();
+        final AtomicInteger runs = new AtomicInteger();
+
+        TaskHandler<Integer, Integer> first = executor.execute(task, 1);
+        TaskHandler<Integer, Integer> second = first.thenExecute(new Task<Integer, Integer>() {
+            @Override
+            public Integer run(Integer input, TaskEnvironment<Integer, Integer> env) throws Throwable {
+                return runs.incrementAndGet();
+            }
+        });
+        second.interrupt();
+        Assert.assertTrue(second.join(1000));
+        Assert.assertEquals(TaskHandler.State.CANCELED, second.getState());
+
+        task.release.countDown();
+        Assert.assertTrue(first.join(1000));
+        Assert.assertEquals(0, runs.get());
+    }
+
+    @Test
+    public void testCompletableFuture() throws Exception {
+        Assume.assumeTrue(isCompletableFutureSupported());
+        TaskExecutor executor = new SimpleTaskExecutor();
+
+        Future<Integer> succeed = Tasks.toCompletableFuture(executor.execute(new AddTask(1), 1));
+        Assert.assertEquals(2, (int) succeed.get(1, TimeUnit.SECONDS));
+
+        Future<Integer> failed = Tasks.toCompletableFuture(executor.execute(new AddTask(1), -1));
+        try {
+            failed.get(1, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+
+        TaskHandler<Integer, Integer> handler = executor.executeDelayed(new AddTask(1), 1, TimeUnit.HOURS);
+        Future<Integer> canceled = Tasks.toCompletableFuture(handler);
+        handler.interrupt();
+        try {
+            canceled.get(1, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof CancellationException);
+        } catch (CancellationException e) {
+            // some versions of CompletableFuture rethrow cancellation as is
+        }
+    }
+
+    private static boolean isCompletableFutureSupported() {
+        try {
+            Class.forName("java.util.concurrent.CompletableFuture");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.noveogroup.android.task;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class DeadlineTest {
+
+    private static class BlockingTask implements InterruptibleTask<Void, Void> {
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+
+        @Override
+        public Void run(Void input, TaskEnvironment<Void, Void> env) throws Throwable {
+            started.countDown();
+            // the task stops only when it is notified through Interruptible
+            interrupted.await();
+            env.checkInterrupted();
+            return null;
+        }
+
+        @Override
+        public void interrupt() {
+            interrupted.countDown();
+        }
+
+    }
+
+    @Test
+    public void testRunningTaskInterrupted() throws InterruptedException {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        BlockingTask task = new BlockingTask();
+
+        TaskHandler<Void, Void> handler = executor.executeWithTimeout(task, 200, TimeUnit.MILLISECONDS, "deadline");
+        Assert.assertTrue(task.started.await(1, TimeUnit.SECONDS));
+
+        Assert.assertTrue(handler.join(1000));
+        Assert.assertTrue(task.interrupted.await(1, TimeUnit.SECONDS));
+        Assert.assertEquals(TaskHandler.State.FAILED, handler.getState());
+        Assert.assertTrue(handler.getThrowable() instanceof InterruptedException);
+    }
+
+    @Test
+    public void testQueuedTaskCanceled() throws InterruptedException {
+        SimpleTaskExecutor executor = new SimpleTaskExecutor();
+        executor.queue("deadline").setMaxRunning(1);
+        BlockingTask blocker = new BlockingTask();
+        TaskHandler<Void, Void> blocking = executor.execute(blocker, "deadline");
+
+        TaskHandler<Void, Void> handler = executor.executeWithTimeout(new BlockingTask(), 50, TimeUnit.MILLISECONDS, "deadline");
+
+        Assert.assertTrue(handler.join(1000));
+        Assert.assertEquals(TaskHandler.State.CANCELED, handler.getState());
+        Assert.assertTrue(handler.getThrowable() instanceof TimeoutException);
+        Assert.assertEquals(TaskHandler.State.STARTED, blocking.getState());
+
+        blocking.interrupt();
+        Assert.assertTrue(blocking.join(1000));
+    }
+
+    @Test
+    public void testSubtaskInheritsDeadline() throws InterruptedException {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        final BlockingTask child = new BlockingTask();
+        final AtomicReference<TaskHandler<Void, Void>> childHandler = new AtomicReference<TaskHandler<Void, Void>>();
+
+        TaskHandler<Void, Void> parent = executor.executeWithTimeout(new Task<Void, Void>() {
+            @Override
+            public Void run(Void input, TaskEnvironment<Void, Void> env) throws Throwable {
+                childHandler.set(env.owner().execute(child));
+                return null;
+            }
+        }, 50, TimeUnit.MILLISECONDS, "deadline");
+
+        Assert.assertTrue(parent.join(1000));
+        Assert.assertEquals(TaskHandler.State.SUCCEED, parent.getState());
+        Assert.assertTrue(childHandler.get().join(1000));
+        Assert.assertTrue(childHandler.get().isInterrupted());
+        Assert.assertTrue(child.interrupted.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFinishedTaskUntouched() throws InterruptedException {
+        TaskExecutor executor = new SimpleTaskExecutor();
+
+        TaskHandler<Void, Void> handler = executor.executeWithTimeout(new Task<Void, Void>() {
+            @Override
+            public Void run(Void input, TaskEnvironment<Void, Void> env) throws Throwable {
+                return null;
+            }
+        }, 20, TimeUnit.MILLISECONDS, "deadline");
+
+        Assert.assertTrue(handler.join(1000));
+        Thread.sleep(100);
+        Assert.assertEquals(TaskHandler.State.SUCCEED, handler.getState());
+        Assert.assertFalse(handler.isInterrupted());
+    }
+
+}
@@ -4,6 +4,7 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
@@ -160,22 +161,35 @@ public class ExecutorAdapterTest {
 
     private void testAwaitTermination(ExecutorService executorService) throws InterruptedException {
         final Helper helper = new Helper();
+        final CountDownLatch[] started = new CountDownLatch[5];
+        final CountDownLatch[] release = new CountDownLatch[5];
+        final CountDownLatch[] finished = new CountDownLatch[5];
 
         for (int i = 0; i < 5; i++) {
+            final int number = i;
             final char index = "ABCDE".charAt(i);
-            final int time = 10 + 5 * i;
+            started[i] = new CountDownLatch(1);
+            release[i] = new CountDownLatch(1);
+            finished[i] = new CountDownLatch(1);
             executorService.execute(new Runnable() {
                 @Override
                 public void run() {
                     helper.append(String.format("[%s-1]", index));
-                    Utils.doSleep(time);
+                    started[number].countDown();
+                    try {
+                        release[number].await();
+                    } catch (InterruptedException ignored) {
+                    }
                     helper.append(String.format("[%s-2]", index));
+                    finished[number].countDown();
                 }
             });
-            Utils.doSleep(1);
+            // the first three tasks take all of the working threads
+            if (i < 3) {
+                Assert.assertTrue(started[i].await(1, TimeUnit.SECONDS));
+            }
         }
 
-        Utils.doSleep(1);
         executorService.shutdown();
         helper.append("[shutdown]");
 
@@ -184,20 +198,28 @@ public class ExecutorAdapterTest {
         helper.check("[A-1][B-1][C-1][shutdown]");
         Assert.assertEquals(false, executorService.awaitTermination(2 * Utils.DT, TimeUnit.MILLISECONDS));
 
-        Assert.assertEquals(true, executorService.isShutdown());
-        Assert.assertEquals(false, executorService.isTerminated());
-        helper.check("[A-1][B-1][C-1][shutdown]");
-        Assert.assertEquals(false, executorService.awaitTermination(10 * Utils.DT, TimeUnit.MILLISECONDS));
+        release[0].countDown();
+        Assert.assertTrue(started[3].await(1, TimeUnit.SECONDS));
+        release[1].countDown();
+        Assert.assertTrue(started[4].await(1, TimeUnit.SECONDS));
 
         Assert.assertEquals(true, executorService.isShutdown());
         Assert.assertEquals(false, executorService.isTerminated());
         helper.check("[A-1][B-1][C-1][shutdown][A-2][D-1][B-2][E-1]");
-        Assert.assertEquals(false, executorService.awaitTermination(20 * Utils.DT, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(false, executorService.awaitTermination(2 * Utils.DT, TimeUnit.MILLISECONDS));
+
+        release[2].countDown();
+        Assert.assertTrue(finished[2].await(1, TimeUnit.SECONDS));
+        release[3].countDown();
+        Assert.assertTrue(finished[3].await(1, TimeUnit.SECONDS));
 
         Assert.assertEquals(true, executorService.isShutdown());
         Assert.assertEquals(false, executorService.isTerminated());
         helper.check("[A-1][B-1][C-1][shutdown][A-2][D-1][B-2][E-1][C-2][D-2]");
-        Assert.assertEquals(true, executorService.awaitTermination(20 * Utils.DT, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(false, executorService.awaitTermination(2 * Utils.DT, TimeUnit.MILLISECONDS));
+
+        release[4].countDown();
+        Assert.assertEquals(true, executorService.awaitTermination(1000, TimeUnit.MILLISECONDS));
 
         Assert.assertEquals(true, executorService.isShutdown());
         Assert.assertEquals(true, executorService.isTerminated());
@@ -0,0 +1,75 @@
+package com.noveogroup.android.task;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares executors on a recursive fan-out workload: each task spawns
+ * a number of sub-tasks through {@code env.owner().execute(...)} until
+ * the given depth is reached.
+ * <p/>
+ * Usage: {@code FanOutBenchmark [depth] [fan-out] [work-per-task]}.
+ */
+public class FanOutBenchmark {
+
+    private static volatile long sink;
+
+    private static class FanOutTask implements Task<Integer, Void> {
+
+        private final int fanOut;
+        private final int work;
+        private final AtomicInteger counter;
+
+        public FanOutTask(int fanOut, int work, AtomicInteger counter) {
+            this.fanOut = fanOut;
+            this.work = work;
+            this.counter = counter;
+        }
+
+        @Override
+        public Void run(Integer depth, TaskEnvironment<Integer, Void> env) throws Throwable {
+            long value = depth;
+            for (int i = 0; i < work; i++) {
+                value = value * 31 + i;
+            }
+            sink = value;
+            counter.incrementAndGet();
+
+            if (depth > 0) {
+                for (int i = 0; i < fanOut; i++) {
+                    env.owner().execute(this, depth - 1);
+                }
+            }
+            return null;
+        }
+
+    }
+
+    public static void main(String[] args) throws Exception {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 7;
+        int fanOut = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+        int work = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int processors = Runtime.getRuntime().availableProcessors();
+
+        for (int i = 0; i < 2; i++) {
+            System.out.println(i == 0 ? "warm up:" : "results:");
+            run("cached thread pool", new SimpleTaskExecutor(), depth, fanOut, work);
+            run("fixed thread pool", new SimpleTaskExecutor(Executors.newFixedThreadPool(processors)), depth, fanOut, work);
+            run("work stealing", new WorkStealingTaskExecutor(processors), depth, fanOut, work);
+        }
+        System.exit(0);
+    }
+
+    private static void run(String name, TaskExecutor executor, int depth, int fanOut, int work) throws InterruptedException {
+        AtomicInteger counter = new AtomicInteger();
+
+        long time = System.nanoTime();
+        executor.execute(new FanOutTask(fanOut, work, counter), depth, "fan-out");
+        executor.queue("fan-out").join();
+        time = (System.nanoTime() - time) / 1000000;
+
+        System.out.printf("%-20s %8d tasks %6d ms %10d tasks/s%n", name, counter.get(), time, counter.get() * 1000L / Math.max(time, 1));
+        executor.shutdown();
+    }
+
+}
@@ -0,0 +1,65 @@
+package com.noveogroup.android.task;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ForkJoinTest {
+
+    private static class SumTask implements Task<int[], Long> {
+
+        private final int threshold;
+
+        public SumTask(int threshold) {
+            this.threshold = threshold;
+        }
+
+        @Override
+        public Long run(int[] range, TaskEnvironment<int[], Long> env) throws Throwable {
+            int from = range[0];
+            int to = range[1];
+            if (to - from <= threshold) {
+                if (from < 0) {
+                    throw new IllegalArgumentException();
+                }
+                long sum = 0;
+                for (int i = from; i < to; i++) {
+                    sum += i;
+                }
+                return sum;
+            }
+            int middle = (from + to) >>> 1;
+            TaskHandler<int[], Long> left = env.fork(this, new int[]{from, middle});
+            TaskHandler<int[], Long> right = env.fork(this, new int[]{middle, to});
+            return env.join(right) + env.join(left);
+        }
+
+    }
+
+    @Test
+    public void testRecursionOnBoundedPool() throws Throwable {
+        // blocking joins would exhaust two working threads at once
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        TaskExecutor executor = new SimpleTaskExecutor(executorService);
+
+        TaskHandler<int[], Long> handler = executor.execute(new SumTask(100), new int[]{0, 100000});
+        Assert.assertTrue(handler.join(10000));
+        Assert.assertEquals(99999L * 100000L / 2, (long) handler.get());
+        executorService.shutdown();
+    }
+
+    @Test
+    public void testFailurePropagated() throws InterruptedException {
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        TaskExecutor executor = new SimpleTaskExecutor(executorService);
+
+        TaskHandler<int[], Long> handler = executor.execute(new SumTask(100), new int[]{-1000, 1000});
+        Assert.assertTrue(handler.join(10000));
+        Assert.assertEquals(TaskHandler.State.FAILED, handler.getState());
+        Assert.assertTrue(handler.getThrowable() instanceof IllegalArgumentException);
+        executorService.shutdown();
+    }
+
+}
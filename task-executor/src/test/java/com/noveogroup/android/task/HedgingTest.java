@@ -0,0 +1,142 @@
+package com.noveogroup.android.task;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HedgingTest {
+
+    private static class StragglingTask implements Task<Integer, Integer> {
+
+        final AtomicBoolean straggle = new AtomicBoolean(false);
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch interrupted = new CountDownLatch(1);
+
+        @Override
+        public Integer run(Integer input, TaskEnvironment<Integer, Integer> env) throws Throwable {
+            runs.incrementAndGet();
+            if (straggle.compareAndSet(true, false)) {
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw e;
+                }
+            } else {
+                Thread.sleep(5);
+            }
+            return input * 2;
+        }
+
+    }
+
+    private static void warmUp(TaskExecutor executor, Task<Integer, Integer> task, String tag) throws Throwable {
+        for (int i = 0; i < Hedging.MIN_SAMPLES; i++) {
+            Assert.assertEquals(i * 2, (int) executor.execute(task, i, tag).get());
+        }
+    }
+
+    @Test
+    public void testStragglerHedged() throws Throwable {
+        SimpleTaskExecutor executor = new SimpleTaskExecutor();
+        executor.queue("hedged").setHedging(0.9);
+        StragglingTask task = new StragglingTask();
+        Assert.assertEquals(-1, executor.queue("hedged").getHedgingDelay());
+
+        warmUp(executor, task, "hedged");
+        Assert.assertTrue(executor.queue("hedged").getHedgingDelay() >= 0);
+        Assert.assertEquals(0, executor.getHedgedCount());
+
+        task.straggle.set(true);
+        TaskHandler<Integer, Integer> handler = executor.execute(task, 21, "hedged");
+        Assert.assertTrue(handler.join(1000));
+        Assert.assertEquals(TaskHandler.State.SUCCEED, handler.getState());
+        Assert.assertEquals(42, (int) handler.get());
+        Assert.assertTrue(task.interrupted.await(1, TimeUnit.SECONDS));
+
+        Assert.assertEquals(Hedging.MIN_SAMPLES + 2, task.runs.get());
+        Assert.assertEquals(1, executor.getHedgedCount());
+        // the win is counted by the duplicate after the task is finished
+        for (int i = 0; i < 100 && executor.getHedgeWinCount() == 0; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, executor.getHedgeWinCount());
+    }
+
+    @Test
+    public void testSkippedWithoutCapacity() throws Throwable {
+        SimpleTaskExecutor executor = new SimpleTaskExecutor();
+        executor.setCapacity(1);
+        executor.setOverflowPolicy(OverflowPolicy.BLOCK);
+        executor.queue("hedged").setHedging(0.5);
+        StragglingTask task = new StragglingTask();
+        warmUp(executor, task, "hedged");
+
+        task.straggle.set(true);
+        TaskHandler<Integer, Integer> handler = executor.execute(task, 1, "hedged");
+        Assert.assertFalse(handler.join(200));
+        handler.interrupt();
+        Assert.assertTrue(handler.join(1000));
+        Assert.assertEquals(TaskHandler.State.FAILED, handler.getState());
+
+        // the duplicate hasn't waited for the released capacity
+        Thread.sleep(50);
+        Assert.assertEquals(0, executor.getHedgedCount());
+        Assert.assertEquals(Hedging.MIN_SAMPLES + 1, task.runs.get());
+    }
+
+    @Test
+    public void testUntaggedNotHedged() throws Throwable {
+        SimpleTaskExecutor executor = new SimpleTaskExecutor();
+        executor.queue("hedged").setHedging(0.5);
+        StragglingTask task = new StragglingTask();
+        warmUp(executor, task, "other");
+        Assert.assertEquals(-1, executor.queue("hedged").getHedgingDelay());
+
+        task.straggle.set(true);
+        TaskHandler<Integer, Integer> handler = executor.execute(task, 1, "other");
+        Assert.assertFalse(handler.join(100));
+        handler.interrupt();
+        Assert.assertTrue(handler.join(1000));
+        Assert.assertEquals(TaskHandler.State.FAILED, handler.getState());
+        Assert.assertEquals(0, executor.getHedgedCount());
+    }
+
+    @Test
+    public void testInterruptedWithDuplicate() throws Throwable {
+        SimpleTaskExecutor executor = new SimpleTaskExecutor();
+        executor.queue("hedged").setHedging(0.5);
+        final CountDownLatch started = new CountDownLatch(2);
+        final AtomicBoolean warm = new AtomicBoolean(false);
+        Task<Integer, Integer> task = new Task<Integer, Integer>() {
+            @Override
+            public Integer run(Integer input, TaskEnvironment<Integer, Integer> env) throws Throwable {
+                if (warm.get()) {
+                    started.countDown();
+                    Thread.sleep(10000);
+                }
+                return input;
+            }
+        };
+        warmUp(executor, new StragglingTask(), "hedged");
+        warm.set(true);
+
+        TaskHandler<Integer, Integer> handler = executor.execute(task, 1, "hedged");
+        Assert.assertTrue(started.await(1, TimeUnit.SECONDS));
+        Assert.assertEquals(2, executor.queue("hedged").size());
+
+        handler.interrupt();
+        Assert.assertTrue(handler.join(1000));
+        Assert.assertEquals(TaskHandler.State.FAILED, handler.getState());
+        for (int i = 0; i < 100 && !executor.queue("hedged").isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(executor.queue("hedged").isEmpty());
+        Assert.assertEquals(0, executor.getHedgeWinCount());
+    }
+
+}
@@ -0,0 +1,160 @@
+package com.noveogroup.android.task;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class OverflowPolicyTest {
+
+    private static class BlockingTask implements Task<Void, Void> {
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public Void run(Void input, TaskEnvironment<Void, Void> env) throws Throwable {
+            started.countDown();
+            release.await();
+            return null;
+        }
+
+    }
+
+    private static class EmptyTask implements Task<Void, Void> {
+
+        @Override
+        public Void run(Void input, TaskEnvironment<Void, Void> env) throws Throwable {
+            return null;
+        }
+
+    }
+
+    private static SimpleTaskExecutor createExecutor(int capacity, OverflowPolicy policy) {
+        SimpleTaskExecutor executor = new SimpleTaskExecutor(Executors.newSingleThreadExecutor());
+        executor.setCapacity(capacity);
+        executor.setOverflowPolicy(policy);
+        return executor;
+    }
+
+    @Test
+    public void testReject() throws InterruptedException {
+        SimpleTaskExecutor executor = createExecutor(1, OverflowPolicy.REJECT);
+        BlockingTask blocker = new BlockingTask();
+        executor.execute(blocker);
+        blocker.started.await();
+
+        final AtomicReference<Throwable> canceled = new AtomicReference<Throwable>();
+        try {
+            executor.execute(new EmptyTask(), new TaskListener.Default<Void, Void>() {
+                @Override
+                public void onCanceled(TaskHandler<Void, Void> handler) {
+                    canceled.set(handler.getThrowable());
+                }
+            });
+            Assert.fail();
+        } catch (TaskRejectedException e) {
+            Assert.assertSame(e, canceled.get());
+        }
+        Assert.assertEquals(1, executor.getOverflowCount(OverflowPolicy.REJECT));
+        Assert.assertEquals(1, executor.getRejectedCount());
+
+        // capacity is released when the task is finished
+        blocker.release.countDown();
+        executor.queue().join();
+        executor.execute(new EmptyTask()).join();
+        Assert.assertEquals(1, executor.getRejectedCount());
+    }
+
+    @Test
+    public void testCallerRuns() throws InterruptedException {
+        SimpleTaskExecutor executor = createExecutor(1, OverflowPolicy.CALLER_RUNS);
+        BlockingTask blocker = new BlockingTask();
+        executor.execute(blocker);
+        blocker.started.await();
+
+        final AtomicReference<Thread> thread = new AtomicReference<Thread>();
+        TaskHandler<Void, Void> handler = executor.execute(new Task<Void, Void>() {
+            @Override
+            public Void run(Void input, TaskEnvironment<Void, Void> env) throws Throwable {
+                thread.set(Thread.currentThread());
+                return null;
+            }
+        });
+        Assert.assertEquals(TaskHandler.State.SUCCEED, handler.getState());
+        Assert.assertSame(Thread.currentThread(), thread.get());
+        Assert.assertEquals(1, executor.getOverflowCount(OverflowPolicy.CALLER_RUNS));
+
+        blocker.release.countDown();
+    }
+
+    @Test
+    public void testBlock() throws InterruptedException {
+        SimpleTaskExecutor executor = createExecutor(1, OverflowPolicy.BLOCK);
+        executor.setBlockTimeout(50);
+        final BlockingTask blocker = new BlockingTask();
+        executor.execute(blocker);
+        blocker.started.await();
+
+        long time = System.nanoTime();
+        try {
+            executor.execute(new EmptyTask());
+            Assert.fail();
+        } catch (TaskRejectedException e) {
+            Assert.assertTrue(System.nanoTime() - time >= 40 * 1000000L);
+        }
+
+        // the producer proceeds as soon as capacity is released
+        executor.setBlockTimeout(0);
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+                blocker.release.countDown();
+            }
+        }.start();
+        TaskHandler<Void, Void> handler = executor.execute(new EmptyTask());
+        Assert.assertTrue(handler.join(1000));
+        Assert.assertEquals(TaskHandler.State.SUCCEED, handler.getState());
+        Assert.assertEquals(2, executor.getOverflowCount(OverflowPolicy.BLOCK));
+        Assert.assertEquals(1, executor.getRejectedCount());
+    }
+
+    @Test
+    public void testDropOldest() throws InterruptedException {
+        SimpleTaskExecutor executor = createExecutor(3, OverflowPolicy.DROP_OLDEST);
+        BlockingTask blocker = new BlockingTask();
+        executor.execute(blocker, "blocker");
+        blocker.started.await();
+
+        TaskHandler<Void, Void> first = executor.execute(new EmptyTask(), "image");
+        TaskHandler<Void, Void> second = executor.execute(new EmptyTask(), "image");
+        TaskHandler<Void, Void> third = executor.execute(new EmptyTask(), "image");
+        Assert.assertEquals(TaskHandler.State.CANCELED, first.getState());
+        Assert.assertTrue(first.getThrowable() instanceof TaskRejectedException);
+        Assert.assertEquals(TaskHandler.State.CREATED, second.getState());
+        Assert.assertEquals(TaskHandler.State.CREATED, third.getState());
+
+        // the blocker isn't labeled by the tag so it can't be dropped
+        try {
+            executor.execute(new EmptyTask(), "text");
+            Assert.fail();
+        } catch (TaskRejectedException e) {
+            // expected
+        }
+        Assert.assertEquals(2, executor.getOverflowCount(OverflowPolicy.DROP_OLDEST));
+        Assert.assertEquals(2, executor.getRejectedCount());
+
+        blocker.release.countDown();
+        executor.queue("image").join();
+        Assert.assertEquals(TaskHandler.State.SUCCEED, second.getState());
+        Assert.assertEquals(TaskHandler.State.SUCCEED, third.getState());
+    }
+
+}
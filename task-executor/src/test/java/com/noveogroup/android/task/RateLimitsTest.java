@@ -0,0 +1,82 @@
+package com.noveogroup.android.task;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class RateLimitsTest {
+
+    private static class RecordingTask implements Task<Void, Void> {
+
+        final List<Long> starts = Collections.synchronizedList(new ArrayList<Long>());
+
+        @Override
+        public Void run(Void input, TaskEnvironment<Void, Void> env) throws Throwable {
+            starts.add(System.nanoTime());
+            return null;
+        }
+
+    }
+
+    @Test
+    public void testRateLimit() throws InterruptedException {
+        SimpleTaskExecutor executor = new SimpleTaskExecutor();
+        TaskSet partner = executor.queue("partner-api");
+        partner.setRateLimit(20, 2);
+        Assert.assertEquals(0, partner.getRateLimitDelay());
+
+        RecordingTask task = new RecordingTask();
+        long time = System.nanoTime();
+        for (int i = 0; i < 6; i++) {
+            partner.execute(task);
+        }
+        // tasks are delayed without blocking the caller
+        Assert.assertTrue(partner.getRateLimitDelay() > 150);
+
+        // other tasks are not limited
+        Assert.assertTrue(executor.execute(new RecordingTask(), "other").join(100));
+
+        Assert.assertTrue(partner.join(1000));
+        Assert.assertEquals(6, task.starts.size());
+        List<Long> starts = new ArrayList<Long>(task.starts);
+        Collections.sort(starts);
+        // two tasks are started at once, the rest are started every 50 ms
+        Assert.assertTrue(starts.get(5) - time >= TimeUnit.MILLISECONDS.toNanos(190));
+    }
+
+    @Test
+    public void testInterruptDelayed() throws InterruptedException {
+        SimpleTaskExecutor executor = new SimpleTaskExecutor();
+        TaskSet partner = executor.queue("partner-api");
+        partner.setRateLimit(10, 1);
+
+        RecordingTask task = new RecordingTask();
+        TaskHandler<Void, Void> first = partner.execute(task);
+        final CountDownLatch canceled = new CountDownLatch(1);
+        TaskHandler<Void, Void> handler = partner.execute(task, new TaskListener.Default<Void, Void>() {
+            @Override
+            public void onCanceled(TaskHandler<Void, Void> handler) {
+                canceled.countDown();
+            }
+        });
+        Assert.assertEquals(TaskHandler.State.CREATED, handler.getState());
+
+        // listeners are called without waiting for the delay
+        handler.interrupt();
+        Assert.assertTrue(canceled.await(500, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(first.join(100));
+        Assert.assertEquals(1, task.starts.size());
+
+        // the token reserved by the canceled task is given back
+        Thread.sleep(100);
+        Assert.assertEquals(0, partner.getRateLimitDelay());
+        Assert.assertTrue(partner.execute(task).join(100));
+        Assert.assertEquals(2, task.starts.size());
+    }
+
+}
@@ -0,0 +1,209 @@
+package com.noveogroup.android.task;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ResultCacheTest {
+
+    private static class CountingTask implements Task<Integer, Integer> {
+
+        final AtomicInteger runs = new AtomicInteger();
+
+        @Override
+        public Integer run(Integer input, TaskEnvironment<Integer, Integer> env) throws Throwable {
+            runs.incrementAndGet();
+            return input * 10;
+        }
+
+    }
+
+    @Test
+    public void testHit() throws Throwable {
+        SimpleTaskExecutor executor = new SimpleTaskExecutor();
+        ResultCache cache = new ResultCache(10);
+        executor.setResultCache(cache);
+        CountingTask task = new CountingTask();
+
+        Assert.assertEquals(20, (int) executor.executeCached("key", task, 2).get());
+
+        final Thread thread = Thread.currentThread();
+        final AtomicInteger succeeded = new AtomicInteger();
+        TaskHandler<Integer, Integer> handler = executor.executeCached("key", task, new Pack<Integer, Integer>().setInput(2),
+                Collections.<TaskListener<Integer, Integer>>singletonList(new TaskListener.Default<Integer, Integer>() {
+                    @Override
+                    public void onSucceed(TaskHandler<Integer, Integer> handler) {
+                        Assert.assertSame(thread, Thread.currentThread());
+                        succeeded.incrementAndGet();
+                    }
+                }), Collections.<String>emptyList());
+
+        Assert.assertEquals(TaskHandler.State.SUCCEED, handler.getState());
+        Assert.assertEquals(20, (int) handler.get());
+        Assert.assertEquals(1, succeeded.get());
+        Assert.assertEquals(1, task.runs.get());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testInvalidateByTags() throws Throwable {
+        SimpleTaskExecutor executor = new SimpleTaskExecutor();
+        ResultCache cache = new ResultCache(10);
+        executor.setResultCache(cache);
+        CountingTask task = new CountingTask();
+
+        executor.executeCached("user-1", task, 1, "user", "1").join();
+        executor.executeCached("user-2", task, 2, "user", "2").join();
+        executor.executeCached("other", task, 3, "other").join();
+        Assert.assertEquals(3, cache.size());
+
+        executor.queue("user").invalidateResults();
+        Assert.assertEquals(1, cache.size());
+
+        executor.executeCached("user-1", task, 1, "user", "1").join();
+        executor.executeCached("other", task, 3, "other").join();
+        Assert.assertEquals(4, task.runs.get());
+        Assert.assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        ResultCache cache = new ResultCache(2);
+        cache.put("a", Collections.<String>emptyList(), 1, cache.generation("a", Collections.<String>emptyList()));
+        cache.put("b", Collections.<String>emptyList(), 2, cache.generation("b", Collections.<String>emptyList()));
+        Assert.assertNotNull(cache.get("a"));
+        cache.put("c", Collections.<String>emptyList(), 3, cache.generation("c", Collections.<String>emptyList()));
+
+        Assert.assertNull(cache.get("b"));
+        Assert.assertNotNull(cache.get("a"));
+        Assert.assertNotNull(cache.get("c"));
+        Assert.assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testWeightAndExpiration() throws InterruptedException {
+        ResultCache cache = new ResultCache(10, new ResultCache.Weigher() {
+            @Override
+            public int weigh(Object key, Object output) {
+                return (Integer) output;
+            }
+        }, 50, TimeUnit.MILLISECONDS);
+
+        cache.put("a", Arrays.asList("tag"), 6, cache.generation("a", Arrays.asList("tag")));
+        cache.put("b", Arrays.asList("tag"), 3, cache.generation("b", Arrays.asList("tag")));
+        Assert.assertEquals(9, cache.getWeight());
+        cache.put("c", Arrays.asList("tag"), 4, cache.generation("c", Arrays.asList("tag")));
+        Assert.assertEquals(7, cache.getWeight());
+        Assert.assertNull(cache.get("a"));
+
+        Thread.sleep(100);
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals(2, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testOutdatedResultNotCached() {
+        ResultCache cache = new ResultCache(10);
+        long generation = cache.generation("a", Collections.singleton("tag"));
+        cache.invalidate(Collections.singleton("tag"));
+        cache.put("a", Collections.singleton("tag"), 1, generation);
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testOtherInvalidationsKeepResult() {
+        ResultCache cache = new ResultCache(10);
+        long generation = cache.generation("a", Arrays.asList("tag", "user"));
+        cache.invalidate(Collections.singleton("other"));
+        cache.invalidate("b");
+        cache.put("a", Arrays.asList("tag", "user"), 1, generation);
+        Assert.assertEquals(1, cache.size());
+
+        generation = cache.generation("a", Arrays.asList("tag", "user"));
+        cache.invalidate(Collections.singleton("other"));
+        cache.invalidateAll();
+        cache.put("a", Arrays.asList("tag", "user"), 1, generation);
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testInvalidationKeepsOrder() {
+        ResultCache cache = new ResultCache(3);
+        cache.put("a", Arrays.asList("tag", "a"), 1, cache.generation("a", Arrays.asList("tag", "a")));
+        cache.put("b", Arrays.asList("tag", "b"), 2, cache.generation("b", Arrays.asList("tag", "b")));
+        cache.put("c", Collections.<String>emptyList(), 3, cache.generation("c", Collections.<String>emptyList()));
+
+        // walking through the results of a tag doesn't make them recently used
+        cache.invalidate(Arrays.asList("tag", "b"));
+        cache.put("d", Collections.<String>emptyList(), 4, cache.generation("d", Collections.<String>emptyList()));
+        cache.put("e", Collections.<String>emptyList(), 5, cache.generation("e", Collections.<String>emptyList()));
+
+        Assert.assertNull(cache.get("a"));
+        Assert.assertNull(cache.get("b"));
+        Assert.assertNotNull(cache.get("c"));
+        Assert.assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testInvalidateWhileRunning() throws Throwable {
+        SimpleTaskExecutor executor = new SimpleTaskExecutor();
+        ResultCache cache = new ResultCache(10);
+        executor.setResultCache(cache);
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Task<Integer, Integer> task = new Task<Integer, Integer>() {
+            @Override
+            public Integer run(Integer input, TaskEnvironment<Integer, Integer> env) throws Throwable {
+                if (runs.incrementAndGet() == 1) {
+                    started.countDown();
+                    release.await();
+                }
+                return input * runs.get();
+            }
+        };
+
+        TaskHandler<Integer, Integer> first = executor.executeCached("key", task, 10);
+        Assert.assertTrue(started.await(1, TimeUnit.SECONDS));
+        cache.invalidate("key");
+        // requested after the invalidation, so it must not cache the output
+        TaskHandler<Integer, Integer> second = executor.executeCached("key", task, 10);
+
+        release.countDown();
+        Assert.assertEquals(10, (int) first.get());
+        Assert.assertEquals(10, (int) second.get());
+        Assert.assertEquals(0, cache.size());
+
+        Assert.assertEquals(20, (int) executor.executeCached("key", task, 10).get());
+        Assert.assertEquals(2, runs.get());
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testCachedApartFromCoalesced() throws Throwable {
+        SimpleTaskExecutor executor = new SimpleTaskExecutor();
+        executor.setResultCache(new ResultCache(10));
+        CountingTask task = new CountingTask();
+        final CountDownLatch release = new CountDownLatch(1);
+
+        TaskHandler<Integer, Integer> coalesced = executor.executeCoalesced("key", new Task<Integer, Integer>() {
+            @Override
+            public Integer run(Integer input, TaskEnvironment<Integer, Integer> env) throws Throwable {
+                release.await();
+                return input;
+            }
+        }, 1);
+        Assert.assertEquals(20, (int) executor.executeCached("key", task, 2).get());
+        Assert.assertEquals(1, task.runs.get());
+
+        release.countDown();
+        Assert.assertEquals(1, (int) coalesced.get());
+    }
+
+}
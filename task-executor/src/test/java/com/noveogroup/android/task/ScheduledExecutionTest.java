@@ -0,0 +1,232 @@
+package com.noveogroup.android.task;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ScheduledExecutionTest {
+
+    private static class CountingTask implements Task<Void, Void> {
+
+        final AtomicInteger runs = new AtomicInteger();
+
+        @Override
+        public Void run(Void input, TaskEnvironment<Void, Void> env) throws Throwable {
+            runs.incrementAndGet();
+            return null;
+        }
+
+    }
+
+    @Test
+    public void testDelayed() throws InterruptedException {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        CountingTask task = new CountingTask();
+
+        long time = System.nanoTime();
+        TaskHandler<Void, Void> handler = executor.executeDelayed(task, 50, TimeUnit.MILLISECONDS, "delayed");
+        Assert.assertEquals(TaskHandler.State.CREATED, handler.getState());
+        Assert.assertEquals(1, executor.queue("delayed").filter(TaskHandler.State.CREATED).size());
+
+        Assert.assertTrue(handler.join(1000));
+        Assert.assertTrue(System.nanoTime() - time >= TimeUnit.MILLISECONDS.toNanos(50));
+        Assert.assertEquals(TaskHandler.State.SUCCEED, handler.getState());
+        Assert.assertEquals(1, task.runs.get());
+    }
+
+    @Test
+    public void testInterruptDelayed() throws InterruptedException {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        CountingTask task = new CountingTask();
+        final CountDownLatch destroyed = new CountDownLatch(1);
+
+        TaskHandler<Void, Void> handler = executor.executeDelayed(task, new Pack<Void, Void>(),
+                Collections.<TaskListener<Void, Void>>singletonList(new TaskListener.Default<Void, Void>() {
+                    @Override
+                    public void onDestroy(TaskHandler<Void, Void> handler) {
+                        destroyed.countDown();
+                    }
+                }), Collections.singleton("delayed"), 1, TimeUnit.HOURS);
+        handler.interrupt();
+
+        Assert.assertTrue(destroyed.await(1, TimeUnit.SECONDS));
+        Assert.assertEquals(TaskHandler.State.CANCELED, handler.getState());
+        Assert.assertTrue(executor.queue("delayed").isEmpty());
+        Assert.assertEquals(0, task.runs.get());
+    }
+
+    @Test
+    public void testFixedRate() throws InterruptedException {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        CountingTask task = new CountingTask();
+
+        long time = System.nanoTime();
+        TaskHandler<Void, Void> handler = executor.executeAtFixedRate(task, 0, 20, TimeUnit.MILLISECONDS, "periodic");
+        for (int i = 0; i < 100 && task.runs.get() < 4; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(TaskHandler.State.CREATED, handler.getState());
+        handler.interrupt();
+        Assert.assertTrue(handler.join(1000));
+        Assert.assertTrue(executor.queue("periodic").join(1000));
+
+        // an execution never starts earlier than its period allows
+        int runs = task.runs.get();
+        long periods = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - time) / 20;
+        Assert.assertTrue("runs: " + runs, runs >= 4 && runs <= periods + 1);
+        Thread.sleep(50);
+        Assert.assertEquals(runs, task.runs.get());
+    }
+
+    @Test
+    public void testPeriodicNeverBlocksTimer() throws InterruptedException {
+        SimpleTaskExecutor executor = new SimpleTaskExecutor();
+        executor.setCapacity(2);
+        executor.setOverflowPolicy(OverflowPolicy.BLOCK);
+        final CountDownLatch started = new CountDownLatch(1);
+        TaskHandler<Void, Void> blocker = executor.execute(new Task<Void, Void>() {
+            @Override
+            public Void run(Void input, TaskEnvironment<Void, Void> env) throws Throwable {
+                started.countDown();
+                Thread.sleep(10000);
+                return null;
+            }
+        });
+        Assert.assertTrue(started.await(1, TimeUnit.SECONDS));
+
+        // the periodic task takes the rest of the capacity
+        CountingTask task = new CountingTask();
+        TaskHandler<Void, Void> handler = executor.executeAtFixedRate(task, 0, 10, TimeUnit.MILLISECONDS, "periodic");
+        for (int i = 0; i < 100 && executor.getRejectedCount() < 2; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(executor.getRejectedCount() >= 2);
+        Assert.assertEquals(0, task.runs.get());
+
+        blocker.interrupt();
+        Assert.assertTrue(blocker.join(1000));
+        for (int i = 0; i < 100 && task.runs.get() == 0; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(task.runs.get() > 0);
+        handler.interrupt();
+        Assert.assertTrue(handler.join(1000));
+    }
+
+    @Test
+    public void testFailedPeriodic() throws InterruptedException {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        final AtomicInteger runs = new AtomicInteger();
+
+        TaskHandler<Void, Void> handler = executor.executeWithFixedDelay(new Task<Void, Void>() {
+            @Override
+            public Void run(Void input, TaskEnvironment<Void, Void> env) throws Throwable {
+                if (runs.incrementAndGet() == 3) {
+                    throw new IllegalStateException();
+                }
+                return null;
+            }
+        }, 0, 10, TimeUnit.MILLISECONDS);
+
+        Assert.assertTrue(handler.join(1000));
+        Assert.assertEquals(TaskHandler.State.CANCELED, handler.getState());
+        Assert.assertTrue(handler.getThrowable() instanceof IllegalStateException);
+        Thread.sleep(50);
+        Assert.assertEquals(3, runs.get());
+    }
+
+    @Test
+    public void testAdapter() throws Exception {
+        ScheduledExecutorService service = new ScheduledExecutorAdapter();
+
+        ScheduledFuture<String> future = service.schedule(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return "done";
+            }
+        }, 30, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(future.getDelay(TimeUnit.MILLISECONDS) > 0);
+        Assert.assertEquals("done", future.get(1, TimeUnit.SECONDS));
+
+        final AtomicInteger runs = new AtomicInteger();
+        ScheduledFuture<?> periodic = service.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        }, 0, 10, TimeUnit.MILLISECONDS);
+        Thread.sleep(50);
+        Assert.assertTrue(periodic.cancel(false));
+        Assert.assertTrue(periodic.isCancelled());
+        try {
+            periodic.get();
+            Assert.fail();
+        } catch (CancellationException e) {
+            // expected
+        }
+        Assert.assertTrue(runs.get() >= 2);
+
+        service.shutdown();
+        Assert.assertTrue(service.awaitTermination(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAdapterCancelWithoutInterrupt() throws Exception {
+        ScheduledExecutorService service = new ScheduledExecutorAdapter();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(1);
+        final AtomicBoolean interrupted = new AtomicBoolean(false);
+
+        ScheduledFuture<?> periodic = service.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+                finished.countDown();
+            }
+        }, 0, 10, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(started.await(1, TimeUnit.SECONDS));
+
+        // the running execution is not interrupted
+        Assert.assertTrue(periodic.cancel(false));
+        Assert.assertTrue(periodic.isCancelled());
+        release.countDown();
+        Assert.assertTrue(finished.await(1, TimeUnit.SECONDS));
+        Assert.assertFalse(interrupted.get());
+
+        service.shutdown();
+        Assert.assertTrue(service.awaitTermination(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAdapterShutdownNow() throws Exception {
+        ScheduledExecutorService service = new ScheduledExecutorAdapter();
+
+        ScheduledFuture<String> future = service.schedule(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return "done";
+            }
+        }, 1, TimeUnit.HOURS);
+        List<Runnable> list = service.shutdownNow();
+        Assert.assertEquals(1, list.size());
+        Assert.assertTrue(future.isCancelled());
+        Assert.assertTrue(service.awaitTermination(1, TimeUnit.SECONDS));
+    }
+
+}
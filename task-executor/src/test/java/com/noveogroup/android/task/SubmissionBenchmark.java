@@ -0,0 +1,77 @@
+package com.noveogroup.android.task;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Measures throughput of task submission, state polling and completion
+ * while the number of submitter threads grows from 1 to N.
+ * <p/>
+ * Usage: {@code SubmissionBenchmark [max-submitters] [tasks-per-submitter]}.
+ */
+public class SubmissionBenchmark {
+
+    private static final Task<Integer, Integer> TASK = new Task<Integer, Integer>() {
+        @Override
+        public Integer run(Integer value, TaskEnvironment<Integer, Integer> env) throws Throwable {
+            env.vars().put("square", value * value);
+            env.checkInterrupted();
+            return value + 1;
+        }
+    };
+
+    public static void main(String[] args) throws Exception {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int maxSubmitters = args.length > 0 ? Integer.parseInt(args[0]) : processors;
+        int tasksPerSubmitter = args.length > 1 ? Integer.parseInt(args[1]) : 50000;
+
+        // warm up
+        run(maxSubmitters, tasksPerSubmitter / 10);
+
+        System.out.println("submitters\ttasks\ttime, ms\ttasks/s");
+        for (int submitters = 1; submitters <= maxSubmitters; submitters *= 2) {
+            int tasks = submitters * tasksPerSubmitter;
+            long time = run(submitters, tasksPerSubmitter);
+            System.out.printf("%d\t%d\t%d\t%d%n", submitters, tasks, time, tasks * 1000L / Math.max(time, 1));
+        }
+    }
+
+    private static long run(int submitters, final int tasksPerSubmitter) throws InterruptedException {
+        ExecutorService executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        final TaskExecutor executor = new SimpleTaskExecutor(executorService);
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final CountDownLatch finishLatch = new CountDownLatch(submitters);
+
+        for (int i = 0; i < submitters; i++) {
+            final String tag = "submitter-" + i;
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+                        for (int j = 0; j < tasksPerSubmitter; j++) {
+                            TaskHandler<Integer, Integer> handler = executor.execute(TASK, j, tag);
+                            handler.getState();
+                            handler.isInterrupted();
+                        }
+                    } catch (InterruptedException ignored) {
+                    } finally {
+                        finishLatch.countDown();
+                    }
+                }
+            }.start();
+        }
+
+        long time = System.nanoTime();
+        startLatch.countDown();
+        finishLatch.await();
+        executor.queue().join();
+        time = (System.nanoTime() - time) / 1000000;
+
+        executor.shutdown();
+        executorService.shutdown();
+        return time;
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.noveogroup.android.task;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TaskCompletionQueueTest {
+
+    private static class SleepingTask implements Task<Integer, Integer> {
+
+        @Override
+        public Integer run(Integer input, TaskEnvironment<Integer, Integer> env) throws Throwable {
+            Thread.sleep(input);
+            if (input < 0) {
+                throw new IllegalArgumentException();
+            }
+            return input;
+        }
+
+    }
+
+    @Test
+    public void testCompletionOrder() throws Throwable {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        TaskCompletionQueue queue = new TaskCompletionQueue(executor.queue("fan-out"));
+        final CountDownLatch[] release = new CountDownLatch[3];
+        for (int i = 0; i < release.length; i++) {
+            release[i] = new CountDownLatch(1);
+            queue.execute(new Task<Integer, Integer>() {
+                @Override
+                public Integer run(Integer input, TaskEnvironment<Integer, Integer> env) throws Throwable {
+                    release[input].await();
+                    return input;
+                }
+            }, i);
+        }
+        Assert.assertEquals(3, queue.getPendingCount());
+
+        List<Integer> outputs = new ArrayList<Integer>();
+        for (int index : new int[]{1, 2, 0}) {
+            release[index].countDown();
+            outputs.add((Integer) queue.take().get());
+        }
+        Assert.assertEquals(Arrays.asList(1, 2, 0), outputs);
+        Assert.assertEquals(0, queue.getPendingCount());
+        Assert.assertNull(queue.poll());
+    }
+
+    @Test
+    public void testTrackedHandlers() throws InterruptedException {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        TaskCompletionQueue queue = new TaskCompletionQueue(executor.queue());
+
+        TaskHandler<Integer, Integer> failed = queue.add(executor.execute(new SleepingTask(), -1));
+        TaskHandler<Integer, Integer> canceled = queue.add(executor.executeDelayed(new SleepingTask(), 0, 1, TimeUnit.HOURS));
+        canceled.interrupt();
+
+        List<TaskHandler<?, ?>> handlers = new ArrayList<TaskHandler<?, ?>>();
+        handlers.add(queue.poll(1, TimeUnit.SECONDS));
+        handlers.add(queue.poll(1, TimeUnit.SECONDS));
+        Assert.assertTrue(handlers.contains(failed));
+        Assert.assertTrue(handlers.contains(canceled));
+        Assert.assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+    }
+
+}
@@ -0,0 +1,144 @@
+package com.noveogroup.android.task;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+public class TaskGraphTest {
+
+    private static class AddTask implements Task<Integer, Integer> {
+
+        private final int value;
+
+        public AddTask(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public Integer run(Integer input, TaskEnvironment<Integer, Integer> env) throws Throwable {
+            if (input < 0) {
+                throw new IllegalArgumentException();
+            }
+            return input + value;
+        }
+
+    }
+
+    private static class RecordingTask implements Task<Integer, Integer> {
+
+        private final String name;
+        private final List<String> order;
+
+        public RecordingTask(String name, List<String> order) {
+            this.name = name;
+            this.order = order;
+        }
+
+        @Override
+        public Integer run(Integer input, TaskEnvironment<Integer, Integer> env) throws Throwable {
+            order.add(name);
+            return 0;
+        }
+
+    }
+
+    @Test
+    public void testDiamond() throws Throwable {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        TaskGraph graph = new TaskGraph();
+        TaskGraph.Node<Integer, Integer> a = graph.add("a", new AddTask(1));
+        TaskGraph.Node<Integer, Integer> b = graph.add("b", new AddTask(10));
+        TaskGraph.Node<Integer, Integer> c = graph.add("c", new AddTask(100));
+        TaskGraph.Node<Void, Integer> d = graph.add("d", new Task<Void, Integer>() {
+            @Override
+            public Integer run(Void input, TaskEnvironment<Void, Integer> env) throws Throwable {
+                return env.vars().<Integer>get("left") + env.vars().<Integer>get("right");
+            }
+        });
+        graph.connect(a, b).connect(a, c).connect(b, d, "left").connect(c, d, "right");
+
+        Pack<?, ?> outputs = executor.execute(graph, new Pack<Object, Object>().put(a.getKey(), 0), "graph").get();
+        Assert.assertEquals(1, (int) outputs.<Integer>get(a.getKey()));
+        Assert.assertEquals(11, (int) outputs.<Integer>get(b.getKey()));
+        Assert.assertEquals(101, (int) outputs.<Integer>get(c.getKey()));
+        Assert.assertEquals(112, (int) outputs.<Integer>get(d.getKey()));
+    }
+
+    @Test
+    public void testCriticalPathFirst() throws Throwable {
+        // a single working thread executes ready nodes in submission order
+        TaskExecutor executor = new SimpleTaskExecutor(Executors.newSingleThreadExecutor());
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        TaskGraph graph = new TaskGraph();
+        graph.add("short", new RecordingTask("short", order));
+        TaskGraph.Node<Integer, Integer> head = graph.add("head", new RecordingTask("head", order));
+        TaskGraph.Node<Integer, Integer> tail = graph.add("tail", new RecordingTask("tail", order));
+        graph.connect(head, tail);
+
+        executor.execute(graph, new Pack<Object, Object>()).join();
+        Assert.assertEquals(Arrays.asList("head", "short", "tail"), order);
+    }
+
+    @Test
+    public void testFailureCancelsDownstream() throws InterruptedException {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        final List<String> canceled = Collections.synchronizedList(new ArrayList<String>());
+        executor.addTaskListener(new TaskListener.Default<Object, Object>() {
+            @Override
+            public void onCanceled(TaskHandler<Object, Object> handler) {
+                // the failure of the failed node is reported
+                if (handler.getThrowable() instanceof IllegalArgumentException) {
+                    canceled.addAll(handler.owner().tags());
+                }
+            }
+        });
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        TaskGraph graph = new TaskGraph();
+        TaskGraph.Node<Integer, Integer> failing = graph.add("failing", new AddTask(1));
+        TaskGraph.Node<Integer, Integer> downstream = graph.add("downstream", new RecordingTask("downstream", order));
+        TaskGraph.Node<Integer, Integer> last = graph.add("last", new RecordingTask("last", order));
+        graph.add("independent", new RecordingTask("independent", order));
+        graph.connect(failing, downstream).connect(downstream, last);
+
+        TaskHandler<Pack<?, ?>, Pack<?, ?>> handler = executor.execute(graph, new Pack<Object, Object>().put(failing.getKey(), -1));
+        Assert.assertTrue(handler.join(1000));
+        Assert.assertEquals(TaskHandler.State.FAILED, handler.getState());
+        Assert.assertTrue(handler.getThrowable() instanceof IllegalArgumentException);
+        Assert.assertEquals(Collections.singletonList("independent"), order);
+
+        // the skipped nodes are reported as canceled ones
+        Collections.sort(canceled);
+        Assert.assertEquals(Arrays.asList("downstream", "last"), canceled);
+        Assert.assertTrue(executor.queue().isEmpty());
+    }
+
+    @Test
+    public void testNodeKeys() throws Throwable {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        TaskGraph graph = new TaskGraph();
+        TaskGraph.Node<Integer, Integer> input = graph.add(Pack.INPUT, new AddTask(1));
+        TaskGraph.Node<Integer, Integer> output = graph.add(Pack.OUTPUT, new AddTask(2));
+        graph.connect(input, output);
+
+        // nodes named as the keys of a pack don't become its input or output
+        Pack<?, ?> outputs = executor.execute(graph, new Pack<Object, Object>().put(TaskGraph.key(Pack.INPUT), 0)).get();
+        Assert.assertEquals(1, (int) outputs.<Integer>get(input.getKey()));
+        Assert.assertEquals(3, (int) outputs.<Integer>get(output.getKey()));
+        Assert.assertNull(outputs.input());
+        Assert.assertNull(outputs.output());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCycleRejected() {
+        TaskGraph graph = new TaskGraph();
+        TaskGraph.Node<Integer, Integer> a = graph.add("a", new AddTask(1));
+        TaskGraph.Node<Integer, Integer> b = graph.add("b", new AddTask(1));
+        graph.connect(a, b).connect(b, a);
+    }
+
+}
@@ -0,0 +1,345 @@
+package com.noveogroup.android.task;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+public class TaskHandlerTest {
+
+    private static final int ITERATIONS = 500;
+
+    private static class CountingListener extends TaskListener.Default<Integer, Integer> {
+
+        final AtomicInteger started = new AtomicInteger();
+        final AtomicInteger canceled = new AtomicInteger();
+        final AtomicInteger destroyed = new AtomicInteger();
+
+        @Override
+        public void onStart(TaskHandler<Integer, Integer> handler) {
+            started.incrementAndGet();
+        }
+
+        @Override
+        public void onCanceled(TaskHandler<Integer, Integer> handler) {
+            canceled.incrementAndGet();
+        }
+
+        @Override
+        public void onDestroy(TaskHandler<Integer, Integer> handler) {
+            destroyed.incrementAndGet();
+        }
+
+    }
+
+    @Test
+    public void testInterruptRacingWithStart() throws InterruptedException {
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        TaskExecutor executor = new SimpleTaskExecutor(executorService);
+        final AtomicInteger runs = new AtomicInteger();
+        CountingListener listener = new CountingListener();
+
+        List<TaskHandler<Integer, Integer>> handlers = new ArrayList<TaskHandler<Integer, Integer>>();
+        for (int i = 0; i < ITERATIONS; i++) {
+            TaskHandler<Integer, Integer> handler = executor.execute(new Task<Integer, Integer>() {
+                @Override
+                public Integer run(Integer value, TaskEnvironment<Integer, Integer> env) throws Throwable {
+                    runs.incrementAndGet();
+                    return null;
+                }
+            }, 0, listener);
+            if (i % 2 == 0) {
+                Thread.yield();
+            }
+            handler.interrupt();
+            handlers.add(handler);
+        }
+
+        int canceled = 0;
+        for (TaskHandler<Integer, Integer> handler : handlers) {
+            handler.join();
+            Assert.assertTrue(handler.isInterrupted());
+            Assert.assertTrue(handler.getState().isDestroyed());
+            if (handler.getState() == TaskHandler.State.CANCELED) {
+                canceled++;
+            }
+        }
+
+        // wait for listeners of canceled tasks
+        executorService.shutdown();
+        Assert.assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+
+        // a canceled task is never started, a started task is never canceled
+        Assert.assertEquals(ITERATIONS - canceled, listener.started.get());
+        Assert.assertEquals(canceled, listener.canceled.get());
+        Assert.assertTrue(runs.get() <= ITERATIONS - canceled);
+        Assert.assertTrue(executor.queue().isEmpty());
+    }
+
+    @Test
+    public void testConcurrentInterrupts() throws InterruptedException {
+        // the only working thread is held by blocker task
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        TaskExecutor executor = new SimpleTaskExecutor(executorService);
+        final CountingListener listener = new CountingListener();
+
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final TaskHandler<Integer, Integer> blocker = executor.execute(new Task<Integer, Integer>() {
+            @Override
+            public Integer run(Integer value, TaskEnvironment<Integer, Integer> env) throws Throwable {
+                startLatch.await();
+                return null;
+            }
+        });
+        final TaskHandler<Integer, Integer> handler = executor.execute(new Task<Integer, Integer>() {
+            @Override
+            public Integer run(Integer value, TaskEnvironment<Integer, Integer> env) throws Throwable {
+                return null;
+            }
+        }, 0, listener);
+
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    handler.interrupt();
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        startLatch.countDown();
+
+        handler.join();
+        blocker.join();
+
+        // wait for listeners of canceled task
+        executorService.shutdown();
+        Assert.assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+
+        Assert.assertEquals(TaskHandler.State.CANCELED, handler.getState());
+        Assert.assertEquals(0, listener.started.get());
+        Assert.assertEquals(1, listener.canceled.get());
+        Assert.assertEquals(1, listener.destroyed.get());
+    }
+
+    @Test
+    public void testStatePolling() throws InterruptedException {
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        TaskExecutor executor = new SimpleTaskExecutor(executorService);
+
+        for (int i = 0; i < ITERATIONS / 10; i++) {
+            final TaskHandler<Integer, Integer> handler = executor.execute(new Task<Integer, Integer>() {
+                @Override
+                public Integer run(Integer value, TaskEnvironment<Integer, Integer> env) throws Throwable {
+                    for (int j = 0; j < 1000; j++) {
+                        env.checkInterrupted();
+                    }
+                    return null;
+                }
+            });
+
+            // states are observed in order: CREATED, STARTED, one of destroyed
+            TaskHandler.State previous = TaskHandler.State.CREATED;
+            while (!previous.isDestroyed()) {
+                TaskHandler.State state = handler.getState();
+                Assert.assertTrue(state.ordinal() >= previous.ordinal() || state.isDestroyed());
+                if (i % 3 == 0 && state == TaskHandler.State.STARTED) {
+                    handler.interrupt();
+                }
+                previous = state;
+            }
+            Assert.assertNotEquals(TaskHandler.State.CANCELED, previous);
+        }
+
+        executorService.shutdown();
+        Assert.assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    private static class RecordingListener extends TaskListener.Default<Integer, Integer> {
+
+        private final Helper helper;
+        private final String name;
+
+        public RecordingListener(Helper helper, String name) {
+            this.helper = helper;
+            this.name = name;
+        }
+
+        @Override
+        public void onCreate(TaskHandler<Integer, Integer> handler) {
+            helper.append("[%s:create]", name);
+        }
+
+        @Override
+        public void onQueueInsert(TaskHandler<Integer, Integer> handler) {
+            helper.append("[%s:insert]", name);
+        }
+
+        @Override
+        public void onStart(TaskHandler<Integer, Integer> handler) {
+            helper.append("[%s:start]", name);
+        }
+
+        @Override
+        public void onFinish(TaskHandler<Integer, Integer> handler) {
+            helper.append("[%s:finish]", name);
+        }
+
+        @Override
+        public void onCanceled(TaskHandler<Integer, Integer> handler) {
+            helper.append("[%s:canceled]", name);
+        }
+
+        @Override
+        public void onFailed(TaskHandler<Integer, Integer> handler) {
+            helper.append("[%s:failed]", name);
+        }
+
+        @Override
+        public void onSucceed(TaskHandler<Integer, Integer> handler) {
+            helper.append("[%s:succeed]", name);
+        }
+
+        @Override
+        public void onQueueRemove(TaskHandler<Integer, Integer> handler) {
+            helper.append("[%s:remove]", name);
+        }
+
+        @Override
+        public void onDestroy(TaskHandler<Integer, Integer> handler) {
+            helper.append("[%s:destroy]", name);
+        }
+
+    }
+
+    private static Helper runRecorded(TaskExecutor executor, Task<Integer, Integer> task, CountDownLatch interruptAndRelease) throws InterruptedException {
+        final Helper helper = new Helper();
+        List<TaskListener<Integer, Integer>> listeners = new ArrayList<TaskListener<Integer, Integer>>();
+        listeners.add(new RecordingListener(helper, "A"));
+        listeners.add(new RecordingListener(helper, "B"));
+        final CountDownLatch completed = new CountDownLatch(1);
+
+        TaskHandler<Integer, Integer> handler = executor.execute(task, 0, listeners);
+        if (interruptAndRelease != null) {
+            handler.interrupt();
+            interruptAndRelease.countDown();
+        }
+        handler.onComplete(new TaskCallback<Integer, Integer>() {
+            @Override
+            public void onComplete(TaskHandler<Integer, Integer> handler) {
+                helper.append("[callback]");
+                completed.countDown();
+            }
+        });
+        Assert.assertTrue(completed.await(1, TimeUnit.SECONDS));
+        return helper;
+    }
+
+    @Test
+    public void testListenerOrder() throws InterruptedException {
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        TaskExecutor executor = new SimpleTaskExecutor(executorService);
+
+        // listeners are called in direct order until the task is started and
+        // in reverse order then, callbacks are called after all of them
+        runRecorded(executor, new Task<Integer, Integer>() {
+            @Override
+            public Integer run(Integer value, TaskEnvironment<Integer, Integer> env) throws Throwable {
+                return value;
+            }
+        }, null).check("[A:create][B:create][A:insert][B:insert][A:start][B:start]"
+                + "[B:finish][A:finish][B:succeed][A:succeed][B:remove][A:remove][B:destroy][A:destroy][callback]");
+        runRecorded(executor, new Task<Integer, Integer>() {
+            @Override
+            public Integer run(Integer value, TaskEnvironment<Integer, Integer> env) throws Throwable {
+                throw new IllegalStateException();
+            }
+        }, null).check("[A:create][B:create][A:insert][B:insert][A:start][B:start]"
+                + "[B:finish][A:finish][B:failed][A:failed][B:remove][A:remove][B:destroy][A:destroy][callback]");
+
+        // the task is interrupted while the only working thread is held
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        TaskHandler<Integer, Integer> blocker = executor.execute(new Task<Integer, Integer>() {
+            @Override
+            public Integer run(Integer value, TaskEnvironment<Integer, Integer> env) throws Throwable {
+                startLatch.await();
+                return null;
+            }
+        });
+        Helper helper = runRecorded(executor, new Task<Integer, Integer>() {
+            @Override
+            public Integer run(Integer value, TaskEnvironment<Integer, Integer> env) throws Throwable {
+                return value;
+            }
+        }, startLatch);
+        blocker.join();
+        helper.check("[A:create][B:create][B:canceled][A:canceled][B:destroy][A:destroy][callback]");
+
+        executorService.shutdown();
+    }
+
+    @Test
+    public void testRunOnceWhileJoined() throws Throwable {
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        SimpleTaskExecutor executor = new SimpleTaskExecutor(executorService);
+        final AtomicIntegerArray runs = new AtomicIntegerArray(ITERATIONS);
+        CountingListener listener = new CountingListener();
+
+        // joining tasks hold two of the working threads and race with
+        // the rest of them taking the dispatched tasks
+        final CountDownLatch ready = new CountDownLatch(1);
+        final List<TaskHandler<Integer, Integer>> handlers = new CopyOnWriteArrayList<TaskHandler<Integer, Integer>>();
+        List<TaskHandler<Void, Void>> joiners = new ArrayList<TaskHandler<Void, Void>>();
+        for (int i = 0; i < 2; i++) {
+            final boolean reverse = i % 2 == 1;
+            joiners.add(executor.execute(new Task<Void, Void>() {
+                @Override
+                public Void run(Void value, TaskEnvironment<Void, Void> env) throws Throwable {
+                    ready.await();
+                    for (int j = 0; j < handlers.size(); j++) {
+                        handlers.get(reverse ? handlers.size() - 1 - j : j).join();
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (int i = 0; i < ITERATIONS; i++) {
+            handlers.add(executor.execute(new Task<Integer, Integer>() {
+                @Override
+                public Integer run(Integer value, TaskEnvironment<Integer, Integer> env) throws Throwable {
+                    runs.incrementAndGet(value);
+                    return value;
+                }
+            }, i, listener));
+        }
+        ready.countDown();
+
+        for (TaskHandler<Void, Void> joiner : joiners) {
+            Assert.assertTrue(joiner.join(10000));
+            Assert.assertEquals(TaskHandler.State.SUCCEED, joiner.getState());
+        }
+        for (int i = 0; i < ITERATIONS; i++) {
+            Assert.assertEquals(i, (int) handlers.get(i).get());
+            Assert.assertEquals(1, runs.get(i));
+        }
+        Assert.assertTrue(executor.queue().join(1000));
+        Assert.assertEquals(ITERATIONS, listener.started.get());
+        Assert.assertEquals(ITERATIONS, listener.destroyed.get());
+
+        executorService.shutdown();
+        Assert.assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+}
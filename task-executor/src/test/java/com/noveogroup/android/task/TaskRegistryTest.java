@@ -0,0 +1,87 @@
+package com.noveogroup.android.task;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class TaskRegistryTest {
+
+    private static Set<TaskHandler<?, ?>> set(TaskSet taskSet) {
+        Set<TaskHandler<?, ?>> set = new HashSet<TaskHandler<?, ?>>();
+        for (TaskHandler<?, ?> handler : taskSet) {
+            set.add(handler);
+        }
+        return set;
+    }
+
+    private static Set<TaskHandler<?, ?>> set(TaskHandler<?, ?>... handlers) {
+        Set<TaskHandler<?, ?>> set = new HashSet<TaskHandler<?, ?>>();
+        for (TaskHandler<?, ?> handler : handlers) {
+            set.add(handler);
+        }
+        return set;
+    }
+
+    @Test
+    public void testQueries() throws InterruptedException {
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        TaskExecutor executor = new SimpleTaskExecutor(executorService);
+
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final CountDownLatch finishLatch = new CountDownLatch(1);
+        Task<Void, Void> blockingTask = new Task<Void, Void>() {
+            @Override
+            public Void run(Void value, TaskEnvironment<Void, Void> env) throws Throwable {
+                startLatch.countDown();
+                finishLatch.await();
+                return null;
+            }
+        };
+        Task<Void, Void> task = Tasks.simple();
+
+        TaskHandler<?, ?> blocker = executor.execute(blockingTask, "net", "blocker");
+        startLatch.await();
+        TaskHandler<?, ?> a = executor.execute(task, "net");
+        TaskHandler<?, ?> b = executor.execute(task, "net", "image");
+        TaskHandler<?, ?> c = executor.execute(task, "image");
+        TaskHandler<?, ?> d = executor.execute(task);
+
+        Assert.assertEquals(5, executor.queue().size());
+        Assert.assertEquals(3, executor.queue("net").size());
+        Assert.assertEquals(2, executor.queue("image").size());
+        Assert.assertEquals(1, executor.queue("net", "image").size());
+        Assert.assertEquals(0, executor.queue("net", "image", "blocker").size());
+        Assert.assertEquals(0, executor.queue("unknown").size());
+        Assert.assertTrue(executor.queue("unknown").isEmpty());
+        Assert.assertTrue(executor.queue("net", "unknown").isEmpty());
+        Assert.assertFalse(executor.queue("net", "image").isEmpty());
+
+        Assert.assertEquals(set(blocker, a, b, c, d), set(executor.queue()));
+        Assert.assertEquals(set(blocker, a, b), set(executor.queue("net")));
+        Assert.assertEquals(set(b), set(executor.queue("image").sub("net")));
+        Assert.assertEquals(set(blocker), set(executor.queue().filter(TaskHandler.State.STARTED)));
+        Assert.assertEquals(set(a, b), set(executor.queue("net").filter(TaskHandler.State.CREATED)));
+        Assert.assertEquals(2, executor.queue("net").filter(TaskHandler.State.CREATED).size());
+        Assert.assertTrue(executor.queue().filter(TaskHandler.State.SUCCEED).isEmpty());
+
+        executor.queue("image").interrupt();
+        Assert.assertEquals(set(blocker, a, d), set(executor.queue()));
+        Assert.assertEquals(2, executor.queue("net").size());
+        Assert.assertEquals(0, executor.queue("image").size());
+
+        finishLatch.countDown();
+        executor.queue().join();
+        Assert.assertTrue(executor.queue().isEmpty());
+        Assert.assertEquals(0, executor.queue("net").size());
+
+        executorService.shutdown();
+        Assert.assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+}
@@ -0,0 +1,110 @@
+package com.noveogroup.android.task;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TaskScopeTest {
+
+    private static class SleepingTask implements Task<Integer, Integer> {
+
+        final CountDownLatch started = new CountDownLatch(1);
+
+        @Override
+        public Integer run(Integer input, TaskEnvironment<Integer, Integer> env) throws Throwable {
+            started.countDown();
+            Thread.sleep(input);
+            if (input < 0) {
+                throw new IllegalArgumentException();
+            }
+            return input;
+        }
+
+    }
+
+    private static class FailingTask implements Task<Integer, Integer> {
+
+        @Override
+        public Integer run(Integer input, TaskEnvironment<Integer, Integer> env) throws Throwable {
+            throw new IllegalArgumentException();
+        }
+
+    }
+
+    @Test
+    public void testShutdownOnFailure() throws InterruptedException {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        final SleepingTask slow = new SleepingTask();
+        final AtomicReference<TaskHandler<Integer, Integer>> slowHandler = new AtomicReference<TaskHandler<Integer, Integer>>();
+
+        TaskHandler<Void, Void> handler = executor.execute(new Task<Void, Void>() {
+            @Override
+            public Void run(Void input, TaskEnvironment<Void, Void> env) throws Throwable {
+                TaskScope scope = env.openScope(TaskScope.Policy.SHUTDOWN_ON_FAILURE, "scope");
+                slowHandler.set(scope.fork(slow, 10000));
+                Assert.assertTrue(slow.started.await(1, TimeUnit.SECONDS));
+                scope.fork(new FailingTask(), 0);
+                scope.join();
+                Assert.assertTrue(scope.isShutdown());
+                scope.throwIfFailed();
+                return null;
+            }
+        }, "parent");
+
+        Assert.assertTrue(handler.join(1000));
+        Assert.assertEquals(TaskHandler.State.FAILED, handler.getState());
+        Assert.assertTrue(handler.getThrowable() instanceof IllegalArgumentException);
+        Assert.assertTrue(slowHandler.get().getState().isDestroyed());
+        Assert.assertTrue(slowHandler.get().isInterrupted());
+        Assert.assertTrue(slowHandler.get().owner().tags().contains("parent"));
+        Assert.assertTrue(slowHandler.get().owner().tags().contains("scope"));
+    }
+
+    @Test
+    public void testShutdownOnSuccess() throws Throwable {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        final SleepingTask slow = new SleepingTask();
+        final AtomicReference<TaskHandler<Integer, Integer>> slowHandler = new AtomicReference<TaskHandler<Integer, Integer>>();
+
+        TaskHandler<Void, Integer> handler = executor.execute(new Task<Void, Integer>() {
+            @Override
+            public Integer run(Void input, TaskEnvironment<Void, Integer> env) throws Throwable {
+                TaskScope scope = env.openScope(TaskScope.Policy.SHUTDOWN_ON_SUCCESS);
+                slowHandler.set(scope.fork(slow, 10000));
+                scope.fork(new SleepingTask(), 10);
+                scope.join();
+                return scope.result();
+            }
+        });
+
+        Assert.assertEquals(10, (int) handler.get());
+        Assert.assertEquals(TaskHandler.State.FAILED, slowHandler.get().getState());
+        Assert.assertTrue(slowHandler.get().isInterrupted());
+    }
+
+    @Test
+    public void testScopeClosedOnReturn() throws InterruptedException {
+        TaskExecutor executor = new SimpleTaskExecutor();
+        final SleepingTask slow = new SleepingTask();
+        final AtomicReference<TaskHandler<Integer, Integer>> slowHandler = new AtomicReference<TaskHandler<Integer, Integer>>();
+
+        TaskHandler<Void, Void> handler = executor.execute(new Task<Void, Void>() {
+            @Override
+            public Void run(Void input, TaskEnvironment<Void, Void> env) throws Throwable {
+                TaskScope scope = env.openScope(TaskScope.Policy.SHUTDOWN_ON_FAILURE);
+                slowHandler.set(scope.fork(slow, 10000));
+                Assert.assertTrue(slow.started.await(1, TimeUnit.SECONDS));
+                return null;
+            }
+        });
+
+        Assert.assertTrue(handler.join(1000));
+        Assert.assertEquals(TaskHandler.State.SUCCEED, handler.getState());
+        // the subtask is finished before the task
+        Assert.assertTrue(slowHandler.get().getState().isDestroyed());
+    }
+
+}
@@ -1,12 +1,17 @@
 package com.noveogroup.android.task;
 
+import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 public class TaskTest {
 
     @Test
     public void runTest() throws InterruptedException {
         final Helper helper = new Helper();
+        final CountDownLatch destroyed = new CountDownLatch(1);
 
         TaskExecutor executor = new SimpleTaskExecutor();
 
@@ -22,7 +27,7 @@ public class TaskTest {
             }
         });
 
-        executor.execute(new Task<Integer, String>() {
+        TaskHandler<Integer, String> handler = executor.execute(new Task<Integer, String>() {
             @Override
             public String run(Integer input, TaskEnvironment<Integer, String> env) throws Throwable {
                 helper.append("[Task::run]");
@@ -37,9 +42,12 @@ public class TaskTest {
             @Override
             public void onDestroy(TaskHandler<Integer, String> handler) {
                 helper.append("[TaskListener::onDestroy{%d,%s}]", handler.vars().input(), handler.vars().output());
+                destroyed.countDown();
             }
         });
-        Thread.sleep(Utils.DT);
+        handler.join();
+        // the state is changed before the listeners are called
+        Assert.assertTrue(destroyed.await(1, TimeUnit.SECONDS));
 
         helper.check("[TaskListener::onCreate{100,null}][TaskListener::onStart{100,null}][Task::run][TaskListener::onFinish{100,100}][TaskListener::onDestroy{100,100}]");
     }
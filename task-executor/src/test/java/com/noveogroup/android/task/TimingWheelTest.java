@@ -0,0 +1,110 @@
+package com.noveogroup.android.task;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TimingWheelTest {
+
+    @Test
+    public void testExpiration() throws InterruptedException {
+        // a small wheel makes long delays take several rounds
+        TimingWheel wheel = new TimingWheel("test-timer", 5, TimeUnit.MILLISECONDS, 4);
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch latch = new CountDownLatch(3);
+
+        long time = System.nanoTime();
+        for (final int delay : new int[]{70, 10, 40}) {
+            wheel.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    order.add(delay);
+                    latch.countDown();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+        Assert.assertEquals(3, wheel.size());
+
+        Assert.assertTrue(latch.await(1, TimeUnit.SECONDS));
+        Assert.assertTrue(System.nanoTime() - time >= TimeUnit.MILLISECONDS.toNanos(70));
+        Assert.assertEquals("[10, 40, 70]", order.toString());
+        Assert.assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testCancel() throws InterruptedException {
+        TimingWheel wheel = new TimingWheel("test-timer", 5, TimeUnit.MILLISECONDS, 8);
+        final AtomicInteger runs = new AtomicInteger();
+        Runnable action = new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        };
+
+        List<TimingWheel.Timeout> timeouts = new ArrayList<TimingWheel.Timeout>();
+        for (int i = 0; i < 1000; i++) {
+            timeouts.add(wheel.schedule(action, 200 + i % 50, TimeUnit.MILLISECONDS));
+        }
+        for (int i = 0; i < timeouts.size(); i += 2) {
+            Assert.assertTrue(timeouts.get(i).cancel());
+            Assert.assertFalse(timeouts.get(i).cancel());
+        }
+        Assert.assertEquals(500, wheel.size());
+
+        for (int i = 0; i < 500 && wheel.size() > 0; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(500, runs.get());
+        Assert.assertEquals(0, wheel.size());
+        Assert.assertTrue(timeouts.get(1).isExpired());
+        Assert.assertFalse(timeouts.get(1).cancel());
+        Assert.assertTrue(timeouts.get(0).isCanceled());
+    }
+
+    private static boolean isAlive(String name) {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testStop() throws InterruptedException {
+        TimingWheel wheel = new TimingWheel("stopped-timer", 5, TimeUnit.MILLISECONDS, 8);
+        final CountDownLatch first = new CountDownLatch(1);
+        wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                first.countDown();
+            }
+        }, 10, TimeUnit.MILLISECONDS);
+        wheel.stop();
+
+        // the pending timeout is expired before the thread exits
+        Assert.assertTrue(first.await(1, TimeUnit.SECONDS));
+        for (int i = 0; i < 100 && isAlive("stopped-timer"); i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertFalse(isAlive("stopped-timer"));
+
+        // a timeout scheduled later starts the thread again
+        final CountDownLatch second = new CountDownLatch(1);
+        wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                second.countDown();
+            }
+        }, 10, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(second.await(1, TimeUnit.SECONDS));
+    }
+
+}
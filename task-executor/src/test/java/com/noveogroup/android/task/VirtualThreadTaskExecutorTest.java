@@ -0,0 +1,46 @@
+package com.noveogroup.android.task;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class VirtualThreadTaskExecutorTest {
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUnsupported() {
+        Assume.assumeFalse(VirtualThreadTaskExecutor.isSupported());
+        new VirtualThreadTaskExecutor();
+    }
+
+    @Test
+    public void testJoinAndInterrupt() throws Throwable {
+        Assume.assumeTrue(VirtualThreadTaskExecutor.isSupported());
+        TaskExecutor executor = new VirtualThreadTaskExecutor();
+
+        final TaskHandler<Void, Void> blocker = executor.execute(new Task<Void, Void>() {
+            @Override
+            public Void run(Void input, TaskEnvironment<Void, Void> env) throws Throwable {
+                while (!env.isInterrupted()) {
+                    Thread.sleep(1);
+                }
+                throw new InterruptedException();
+            }
+        });
+        TaskHandler<Void, Void> joiner = executor.execute(new Task<Void, Void>() {
+            @Override
+            public Void run(Void input, TaskEnvironment<Void, Void> env) throws Throwable {
+                blocker.join();
+                return null;
+            }
+        });
+
+        Assert.assertFalse(joiner.join(100));
+        blocker.interrupt();
+        Assert.assertTrue(joiner.join(1000));
+        Assert.assertEquals(TaskHandler.State.FAILED, blocker.getState());
+        Assert.assertEquals(TaskHandler.State.SUCCEED, joiner.getState());
+
+        executor.shutdown();
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.noveogroup.android.task;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class WorkStealingTaskExecutorTest {
+
+    private static class FanOutTask implements Task<Integer, Void> {
+
+        private final AtomicInteger counter;
+
+        public FanOutTask(AtomicInteger counter) {
+            this.counter = counter;
+        }
+
+        @Override
+        public Void run(Integer depth, TaskEnvironment<Integer, Void> env) throws Throwable {
+            counter.incrementAndGet();
+            if (depth > 0) {
+                for (int i = 0; i < 4; i++) {
+                    env.owner().execute(this, depth - 1);
+                }
+            }
+            return null;
+        }
+
+    }
+
+    @Test
+    public void testFanOut() throws InterruptedException {
+        TaskExecutor executor = new WorkStealingTaskExecutor(3);
+        AtomicInteger counter = new AtomicInteger();
+
+        executor.execute(new FanOutTask(counter), 5, "fan-out");
+        executor.queue("fan-out").join();
+
+        // 1 + 4 + 16 + 64 + 256 + 1024
+        Assert.assertEquals(1365, counter.get());
+    }
+
+    @Test
+    public void testLocalOrder() throws InterruptedException {
+        final Helper helper = new Helper();
+        TaskExecutor executor = new WorkStealingTaskExecutor(1);
+
+        executor.execute(new Task<Void, Void>() {
+            @Override
+            public Void run(Void value, TaskEnvironment<Void, Void> env) throws Throwable {
+                for (final String name : new String[]{"A", "B", "C"}) {
+                    env.owner().execute(new Task<Void, Void>() {
+                        @Override
+                        public Void run(Void value, TaskEnvironment<Void, Void> env) throws Throwable {
+                            helper.append("[%s]", name);
+                            return null;
+                        }
+                    });
+                }
+                helper.append("[parent]");
+                return null;
+            }
+        });
+        executor.queue().join();
+
+        // sub-tasks are taken from the local queue in LIFO order
+        helper.check("[parent][C][B][A]");
+    }
+
+    @Test
+    public void testShutdown() throws InterruptedException {
+        WorkStealingExecutorService executorService = new WorkStealingExecutorService(2);
+        final AtomicInteger counter = new AtomicInteger();
+        for (int i = 0; i < 100; i++) {
+            executorService.execute(new Runnable() {
+                @Override
+                public void run() {
+                    counter.incrementAndGet();
+                }
+            });
+        }
+        executorService.shutdown();
+
+        Assert.assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertTrue(executorService.isTerminated());
+        Assert.assertEquals(100, counter.get());
+    }
+
+    @Test
+    public void testJoinCompensated() throws Throwable {
+        WorkStealingTaskExecutor executor = new WorkStealingTaskExecutor(1);
+        Assert.assertEquals(1, executor.getMaxCompensationThreads());
+
+        TaskHandler<Integer, Integer> handler = executor.execute(new Task<Integer, Integer>() {
+            @Override
+            public Integer run(Integer input, TaskEnvironment<Integer, Integer> env) throws Throwable {
+                // the continuation waits for the sub-task queued to the only working thread
+                TaskHandler<Integer, Integer> first = env.owner().execute(new Task<Integer, Integer>() {
+                    @Override
+                    public Integer run(Integer input, TaskEnvironment<Integer, Integer> env) throws Throwable {
+                        return input + 1;
+                    }
+                }, input);
+                return first.thenExecute(new Task<Integer, Integer>() {
+                    @Override
+                    public Integer run(Integer input, TaskEnvironment<Integer, Integer> env) throws Throwable {
+                        return input * 10;
+                    }
+                }).get();
+            }
+        }, 1);
+
+        Assert.assertTrue(handler.join(1000));
+        Assert.assertEquals(20, (int) handler.get());
+        Assert.assertEquals(1, executor.getCompensationCount());
+    }
+
+}